@@ -0,0 +1,265 @@
+package dk.kb.kaltura.client;
+
+import com.kaltura.client.types.APIException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Uploads a file to a Kaltura upload token in chunks, using the {@code resume}, {@code resumeAt} and
+ * {@code finalChunk} parameters of {@code uploadToken.upload}.
+ * <p>
+ * The offset acknowledged by Kaltura ({@code uploadedFileSize}) is tracked after each chunk. If a chunk fails, only
+ * that chunk is retried: the acknowledged offset is requested from Kaltura, and the upload continues from there. An
+ * upload interrupted by a process restart can be continued by starting from the acknowledged offset of the token.
+ * <p>
+ * With a parallelism above 1, the first chunk is sent alone, as it creates the file at Kaltura. The chunks between the
+ * first and the last are then sent concurrently, as Kaltura accepts chunks out of order when {@code resumeAt} is
+ * given. The last chunk, with {@code finalChunk} set, is sent when all other chunks have been accepted.
+ */
+class ChunkedUpload {
+    private static final Logger log = LoggerFactory.getLogger(ChunkedUpload.class);
+
+    /**
+     * Sends a single chunk to the upload token.
+     */
+    @FunctionalInterface
+    interface ChunkSender {
+        /**
+         * @param data       the content of the chunk.
+         * @param length     the number of bytes in the chunk.
+         * @param resume     false for the first chunk of the file, else true.
+         * @param finalChunk true if this is the last chunk of the file.
+         * @param resumeAt   the offset of the chunk in the file.
+         * @return the number of bytes of the file acknowledged by Kaltura after the chunk, or -1 if unknown.
+         * @throws APIException if the request failed.
+         */
+        long send(InputStream data, long length, boolean resume, boolean finalChunk, long resumeAt) throws APIException;
+    }
+
+    /**
+     * Requests the number of bytes of the file acknowledged by Kaltura.
+     */
+    @FunctionalInterface
+    interface OffsetFetcher {
+        long getUploadedFileSize() throws APIException;
+    }
+
+    private final Path file;
+    private final long chunkSize;
+    private final int maxRetries;
+    private final long retryDelayMillis;
+    private final ChunkSender sender;
+    private final OffsetFetcher offsetFetcher;
+    private final int parallelism;
+    private final Executor executor;
+    private LongConsumer acknowledgedListener = bytes -> {};
+    private RateLimiter rateLimiter = null;
+    private UploadProgress progress;
+
+    /**
+     * Creates an upload sending one chunk at a time.
+     *
+     * @param file             the file to upload.
+     * @param chunkSize        the maximum number of bytes in a chunk.
+     * @param maxRetries       the maximum number of retries of a single chunk.
+     * @param retryDelayMillis the delay before the first retry of a chunk. Doubled for each following retry.
+     * @param sender           sends chunks to the upload token.
+     * @param offsetFetcher    requests the acknowledged offset after a failed chunk.
+     */
+    ChunkedUpload(Path file, long chunkSize, int maxRetries, long retryDelayMillis,
+                  ChunkSender sender, OffsetFetcher offsetFetcher) {
+        this(file, chunkSize, maxRetries, retryDelayMillis, sender, offsetFetcher, 1, Runnable::run);
+    }
+
+    /**
+     * Creates an upload sending up to {@code parallelism} chunks at a time.
+     *
+     * @param file             the file to upload.
+     * @param chunkSize        the maximum number of bytes in a chunk.
+     * @param maxRetries       the maximum number of retries of a single chunk.
+     * @param retryDelayMillis the delay before the first retry of a chunk. Doubled for each following retry.
+     * @param sender           sends chunks to the upload token. Must be safe for concurrent use.
+     * @param offsetFetcher    requests the acknowledged offset after a failed chunk.
+     * @param parallelism      the maximum number of chunks sent at the same time.
+     * @param executor         runs the concurrent chunk requests.
+     */
+    ChunkedUpload(Path file, long chunkSize, int maxRetries, long retryDelayMillis,
+                  ChunkSender sender, OffsetFetcher offsetFetcher, int parallelism, Executor executor) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1, but was " + chunkSize);
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1, but was " + parallelism);
+        }
+        this.file = file;
+        this.chunkSize = chunkSize;
+        this.maxRetries = maxRetries;
+        this.retryDelayMillis = retryDelayMillis;
+        this.sender = sender;
+        this.offsetFetcher = offsetFetcher;
+        this.parallelism = parallelism;
+        this.executor = executor;
+    }
+
+    /**
+     * Sets a listener for the number of bytes from the start of the file that have been acknowledged by Kaltura.
+     * Sequential uploads report after each chunk. Parallel uploads report after the first chunk, after the chunks
+     * between the first and the last, and after the last chunk.
+     */
+    void setAcknowledgedListener(LongConsumer acknowledgedListener) {
+        this.acknowledgedListener = acknowledgedListener;
+    }
+
+    /**
+     * Sets a limit of the bytes sent per second, shared with other uploads using the same limiter.
+     *
+     * @param rateLimiter the limiter taking a permit per byte, or null for no limit.
+     */
+    void setRateLimiter(@Nullable RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Uploads the file from the given offset to the end.
+     *
+     * @param startOffset the number of bytes already acknowledged by Kaltura, 0 for a new upload token.
+     * @throws APIException if a chunk failed more than {@code maxRetries} times.
+     * @throws IOException  if the file could not be read.
+     */
+    void upload(long startOffset) throws APIException, IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            progress = new UploadProgress(file.toString(), size - startOffset);
+            long remainingChunks = (size - startOffset + chunkSize - 1) / chunkSize;
+            if (parallelism > 1 && remainingChunks > 2) {
+                uploadParallel(channel, size, startOffset);
+            } else {
+                uploadSequential(channel, size, startOffset);
+            }
+            progress.done();
+        }
+    }
+
+    /**
+     * Sends the chunks one at a time. After a failed chunk, the upload continues from the offset acknowledged by
+     * Kaltura.
+     */
+    private void uploadSequential(FileChannel channel, long size, long offset) throws APIException {
+        int attempt = 0;
+        do {
+            long length = Math.min(chunkSize, size - offset);
+            try {
+                long acknowledged = send(channel, offset, length, size);
+                if (acknowledged >= 0 && acknowledged != offset + length) {
+                    log.warn("Kaltura acknowledged {} bytes of '{}' after chunk {}-{}. Continuing from {}",
+                            acknowledged, file, offset, offset + length, acknowledged);
+                    offset = acknowledged;
+                } else {
+                    offset += length;
+                }
+                attempt = 0;
+                acknowledgedListener.accept(offset);
+                log.debug("Uploaded {}/{} bytes of '{}'", offset, size, file);
+            } catch (APIException | RuntimeException e) {
+                if (!waitBeforeRetry(++attempt, offset, length, e)) {
+                    throw e;
+                }
+                offset = acknowledgedOffset(offset);
+            }
+        } while (offset < size);
+    }
+
+    /**
+     * Sends the first chunk alone, the chunks between the first and the last concurrently, and then the last chunk.
+     * Failed chunks are retried individually.
+     */
+    private void uploadParallel(FileChannel channel, long size, long offset) throws APIException {
+        if (offset == 0) {
+            sendWithRetries(channel, 0, chunkSize, size);
+            offset = chunkSize;
+            acknowledgedListener.accept(offset);
+        }
+        List<Long> middleOffsets = new ArrayList<>();
+        for (; offset + chunkSize < size; offset += chunkSize) {
+            middleOffsets.add(offset);
+        }
+        long lastOffset = offset;
+        log.debug("Uploading {} chunks of '{}' with parallelism {}", middleOffsets.size() + 1, file, parallelism);
+
+        ParallelBatches.run(middleOffsets, 1, parallelism, executor, chunk ->
+                sendWithRetries(channel, chunk.get(0), chunkSize, size));
+        acknowledgedListener.accept(lastOffset);
+        sendWithRetries(channel, lastOffset, size - lastOffset, size);
+        acknowledgedListener.accept(size);
+        log.debug("Uploaded {} bytes of '{}'", size, file);
+    }
+
+    private long sendWithRetries(FileChannel channel, long offset, long length, long size) throws APIException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return send(channel, offset, length, size);
+            } catch (APIException | RuntimeException e) {
+                if (!waitBeforeRetry(attempt, offset, length, e)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private long send(FileChannel channel, long offset, long length, long size) throws APIException {
+        try (FileRegionInputStream data = new FileRegionInputStream(channel, offset, length,
+                DirectBufferPool.SHARED, progress, rateLimiter)) {
+            return sender.send(data, length, offset > 0, offset + length >= size, offset);
+        }
+    }
+
+    /**
+     * Waits before the next attempt of a failed chunk.
+     *
+     * @return false if the chunk has failed more than {@code maxRetries} times and should not be retried.
+     */
+    private boolean waitBeforeRetry(int attempt, long offset, long length, Exception e) {
+        if (attempt > maxRetries) {
+            log.warn("Chunk {}-{} of '{}' failed {} times, giving up", offset, offset + length, file, attempt);
+            return false;
+        }
+        long delay = retryDelayMillis << (attempt - 1);
+        log.info("Chunk {}-{} of '{}' failed: '{}'. Retry {}/{} in {} ms",
+                offset, offset + length, file, e.getMessage(), attempt, maxRetries, delay);
+        try {
+            TimeUnit.MILLISECONDS.sleep(delay);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to retry upload", ie);
+        }
+        return true;
+    }
+
+    /**
+     * @return the offset acknowledged by Kaltura or {@code fallback} if it could not be requested.
+     */
+    private long acknowledgedOffset(long fallback) {
+        try {
+            long acknowledged = offsetFetcher.getUploadedFileSize();
+            if (acknowledged >= 0 && acknowledged != fallback) {
+                log.info("Kaltura acknowledged {} bytes of '{}', continuing from there", acknowledged, file);
+                return acknowledged;
+            }
+        } catch (APIException | RuntimeException e) {
+            log.debug("Unable to request acknowledged offset for '{}': '{}'", file, e.getMessage());
+        }
+        return fallback;
+    }
+}
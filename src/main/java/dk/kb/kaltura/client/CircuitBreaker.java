@@ -0,0 +1,184 @@
+package dk.kb.kaltura.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Stops requests to Kaltura for a while when too many of the recent requests have failed, so a degraded Kaltura is
+ * not kept busy with requests that are likely to fail, including retries.
+ * <p>
+ * The outcome of the last {@code windowSize} requests is kept. When at least {@code minimumRequests} outcomes are
+ * known and the share of failures reaches {@code failureRateThreshold}, the breaker opens and requests fail at once.
+ * After {@code openDuration}, a single request is let through: if it succeeds, the breaker closes and the outcomes
+ * are forgotten, otherwise it stays open for another {@code openDuration}.
+ * <p>
+ * Only transient failures count as failures, see {@link RetryPolicy}. A request rejected by Kaltura, e.g. for an
+ * unknown entry, shows that Kaltura is answering.
+ * <p>
+ * The breaker is safe for concurrent use.
+ */
+public class CircuitBreaker {
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final int minimumRequests;
+    private final double failureRateThreshold;
+    private final long openMillis;
+    private final LongSupplier clock;
+
+    // All guarded by this
+    private final boolean[] failures;
+    private int next = 0;
+    private int recorded = 0;
+    private int failureCount = 0;
+    private State state = State.CLOSED;
+    private long openedAt = 0;
+    private boolean probing = false;
+    private long trippedCount = 0;
+    private long rejectedCount = 0;
+
+    /**
+     * @param windowSize           the number of recent requests to compute the failure rate from.
+     * @param minimumRequests      the breaker does not open before this many outcomes are known.
+     * @param failureRateThreshold the share of failed requests, from 0 to 1, that opens the breaker.
+     * @param openDuration         the time requests fail at once before a request is let through again.
+     */
+    public CircuitBreaker(int windowSize, int minimumRequests, double failureRateThreshold, Duration openDuration) {
+        this(windowSize, minimumRequests, failureRateThreshold, openDuration, System::currentTimeMillis);
+    }
+
+    CircuitBreaker(int windowSize, int minimumRequests, double failureRateThreshold, Duration openDuration,
+                   LongSupplier clock) {
+        if (windowSize < 1 || minimumRequests < 1 || minimumRequests > windowSize) {
+            throw new IllegalArgumentException("Sizes must satisfy 1 <= minimumRequests <= windowSize, but were " +
+                    minimumRequests + " and " + windowSize);
+        }
+        if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+            throw new IllegalArgumentException(
+                    "failureRateThreshold must be above 0 and at most 1, but was " + failureRateThreshold);
+        }
+        this.failures = new boolean[windowSize];
+        this.minimumRequests = minimumRequests;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openMillis = openDuration.toMillis();
+        this.clock = clock;
+    }
+
+    /**
+     * Asks for permission to send a request. A permitted request must be followed by {@link #recordSuccess()},
+     * {@link #recordFailure()} or, if it ended without an outcome, {@link #release()}.
+     *
+     * @return true if the request may be sent, false if it should fail at once.
+     */
+    synchronized boolean tryAcquire() {
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= openMillis) {
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+        if (state == State.CLOSED || (state == State.HALF_OPEN && !probing)) {
+            probing = state == State.HALF_OPEN;
+            return true;
+        }
+        rejectedCount++;
+        return false;
+    }
+
+    /**
+     * Records a request that Kaltura answered.
+     */
+    synchronized void recordSuccess() {
+        if (state == State.HALF_OPEN) {
+            log.info("Kaltura is answering again, closing the circuit breaker");
+            state = State.CLOSED;
+            probing = false;
+            next = 0;
+            recorded = 0;
+            failureCount = 0;
+            return;
+        }
+        record(false);
+    }
+
+    /**
+     * Records a request that failed transiently.
+     */
+    synchronized void recordFailure() {
+        if (state == State.HALF_OPEN) {
+            log.warn("Request to Kaltura failed after the circuit breaker was half open, opening it for {} ms",
+                    openMillis);
+            open();
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && recorded >= minimumRequests &&
+                failureCount >= failureRateThreshold * recorded) {
+            log.warn("{} of the last {} requests to Kaltura failed, opening the circuit breaker for {} ms",
+                    failureCount, recorded, openMillis);
+            open();
+        }
+    }
+
+    /**
+     * Ends a permitted request without recording an outcome, e.g. when it failed before being sent. A half open
+     * breaker lets the next request through as its probe.
+     */
+    synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            probing = false;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return the share of failed requests among the recent requests, from 0 to 1.
+     */
+    public synchronized double getFailureRate() {
+        return recorded == 0 ? 0 : failureCount / (double) recorded;
+    }
+
+    /**
+     * @return the number of times the breaker has opened.
+     */
+    public synchronized long getTrippedCount() {
+        return trippedCount;
+    }
+
+    /**
+     * @return the number of requests failed at once because the breaker was open.
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = clock.getAsLong();
+        probing = false;
+        trippedCount++;
+    }
+
+    private void record(boolean failure) {
+        if (recorded == failures.length && failures[next]) {
+            failureCount--;
+        }
+        failures[next] = failure;
+        if (failure) {
+            failureCount++;
+        }
+        next = (next + 1) % failures.length;
+        recorded = Math.min(recorded + 1, failures.length);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CircuitBreaker(state=" + state + ", failureRate=" + getFailureRate() + ", tripped=" + trippedCount +
+                ", rejected=" + rejectedCount + ")";
+    }
+}
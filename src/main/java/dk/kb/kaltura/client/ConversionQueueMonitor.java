@@ -0,0 +1,258 @@
+package dk.kb.kaltura.client;
+
+import com.kaltura.client.types.APIException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Admits uploads so the conversion queue at Kaltura is kept near a threshold, shared by all upload threads of a
+ * client.
+ * <p>
+ * The queue length is estimated as the length last measured at Kaltura, plus the uploads admitted since, minus the
+ * conversions expected to have completed since, based on the rate at which Kaltura has been converting. An upload is
+ * admitted as soon as the estimate is below the threshold, so near the threshold uploads are paced by the conversion
+ * rate instead of starting in bursts after each measurement.
+ * <p>
+ * The queue is measured in the background, by a single task for all threads, while the estimate is near the
+ * threshold or uploads are waiting. Below that, no requests are made, as uploads are admitted without waiting.
+ * <p>
+ * If the queue cannot be measured, conversions are only projected for a couple of refresh intervals after the last
+ * measurement, and failed measurements count as measurements where the queue did not decrease.
+ */
+class ConversionQueueMonitor {
+    private static final Logger log = LoggerFactory.getLogger(ConversionQueueMonitor.class);
+
+    // Measuring starts when the estimate reaches this fraction of the threshold and stops below half of it
+    private static final double MONITOR_START_FRACTION = 0.75;
+    private static final double MONITOR_STOP_FRACTION = 0.5;
+    // Weight of the newest measurement of the conversion rate
+    private static final double RATE_SMOOTHING = 0.5;
+    private static final long MIN_WAIT_MILLIS = 10;
+    // Conversions are projected for at most this many refresh intervals after the last successful measurement
+    private static final int MAX_PROJECTED_REFRESHES = 2;
+
+    /**
+     * Requests the length of the conversion queue from Kaltura.
+     */
+    @FunctionalInterface
+    interface QueueLengthFetcher {
+        int fetch() throws APIException;
+    }
+
+    private final QueueLengthFetcher fetcher;
+    private final int threshold;
+    private final long refreshIntervalMillis;
+    private final int maxStalledRefreshes;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+    private final LongSupplier clock;
+
+    // All guarded by this
+    private int measured;
+    private long measuredAt;
+    private int admittedSinceMeasure = 0;
+    private double conversionsPerMilli = 0;
+    private int stalledRefreshes = 0;
+    private int waiting = 0;
+    private boolean monitoring = false;
+    private boolean closed = false;
+
+    /**
+     * @param fetcher               requests the queue length from Kaltura.
+     * @param threshold             the queue length to stay below.
+     * @param refreshIntervalMillis the time between measurements while monitoring.
+     * @param maxStalledRefreshes   waiting uploads fail if the queue is full and has not decreased, or could not be
+     *                              measured, for this many measurements in a row.
+     * @param scheduler             schedules the measurements. The measurements themselves run on {@code executor}.
+     * @param executor              runs the requests for the queue length.
+     * @param initialLength         the queue length measured when the client was created.
+     * @param clock                 the current time in milliseconds.
+     */
+    ConversionQueueMonitor(QueueLengthFetcher fetcher, int threshold, long refreshIntervalMillis,
+                           int maxStalledRefreshes, ScheduledExecutorService scheduler, Executor executor,
+                           int initialLength, LongSupplier clock) {
+        if (refreshIntervalMillis < 1) {
+            throw new IllegalArgumentException(
+                    "refreshIntervalMillis must be at least 1, but was " + refreshIntervalMillis);
+        }
+        this.fetcher = fetcher;
+        this.threshold = threshold;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.maxStalledRefreshes = maxStalledRefreshes;
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.clock = clock;
+        this.measured = initialLength;
+        this.measuredAt = clock.getAsLong();
+    }
+
+    /**
+     * Waits until an upload can be added to the conversion queue and counts it as added. Call {@link #release()} if
+     * the upload fails.
+     *
+     * @throws RuntimeException      if the queue has been full without decreasing, or could not be measured, for the
+     *                               configured number of measurements.
+     * @throws IllegalStateException if the monitor is closed while waiting.
+     */
+    synchronized void acquire() {
+        boolean logged = false;
+        waiting++;
+        try {
+            while (true) {
+                if (closed) {
+                    throw new IllegalStateException("The client was closed while waiting for the conversion queue");
+                }
+                double estimate = estimate();
+                if (estimate < threshold) {
+                    admittedSinceMeasure++;
+                    if (estimate + 1 >= threshold * MONITOR_START_FRACTION) {
+                        startMonitoring();
+                    }
+                    return;
+                }
+                if (stalledRefreshes >= maxStalledRefreshes) {
+                    throw new RuntimeException("The conversion queue (" + measured + ") has been above the " +
+                            "threshold (" + threshold + ") without decreasing or could not be measured for " +
+                            stalledRefreshes + " measurements in a row");
+                }
+                startMonitoring();
+                if (!logged) {
+                    log.info("Kaltura conversion queue (estimated length: {}) is at threshold " +
+                            "(conversionQueueThreshold: {}), waiting", Math.round(estimate), threshold);
+                    logged = true;
+                }
+                // Wait until the expected conversions make room, or until the next measurement
+                long waitMillis = conversionsPerMilli > 0 ?
+                        (long) Math.ceil((estimate - threshold + 1) / conversionsPerMilli) : refreshIntervalMillis;
+                try {
+                    wait(Math.max(MIN_WAIT_MILLIS, Math.min(waitMillis, refreshIntervalMillis)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for Kaltura conversion queue", e);
+                }
+            }
+        } finally {
+            waiting--;
+        }
+    }
+
+    /**
+     * Takes back an upload counted by {@link #acquire()} that did not reach the conversion queue.
+     */
+    synchronized void release() {
+        admittedSinceMeasure--;
+        notifyAll();
+    }
+
+    /**
+     * @return the estimated length of the conversion queue.
+     */
+    synchronized int getEstimatedLength() {
+        return (int) Math.round(estimate());
+    }
+
+    /**
+     * Wakes up waiting uploads, which will fail, and stops measuring.
+     */
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    private double estimate() {
+        long projectedMillis = Math.min(clock.getAsLong() - measuredAt,
+                MAX_PROJECTED_REFRESHES * refreshIntervalMillis);
+        double converted = conversionsPerMilli * projectedMillis;
+        return Math.max(0, measured + admittedSinceMeasure - converted);
+    }
+
+    private void startMonitoring() {
+        if (monitoring || closed) {
+            return;
+        }
+        monitoring = true;
+        log.debug("Starting to monitor the conversion queue every {} ms", refreshIntervalMillis);
+        scheduleRefresh(0);
+    }
+
+    private void scheduleRefresh(long delayMillis) {
+        try {
+            scheduler.schedule(this::startRefresh, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.debug("Unable to schedule conversion queue measurement, the client is closed");
+            monitoring = false;
+        }
+    }
+
+    /**
+     * Hands the measurement off to the executor, as the scheduler is only for light tasks.
+     */
+    private void startRefresh() {
+        try {
+            executor.execute(this::refresh);
+        } catch (RejectedExecutionException e) {
+            log.debug("Unable to measure the conversion queue, the client is closed");
+            synchronized (this) {
+                monitoring = false;
+            }
+        }
+    }
+
+    /**
+     * Measures the queue, updates the conversion rate, wakes up waiting uploads and schedules the next measurement if
+     * still needed.
+     */
+    void refresh() {
+        int admittedBefore;
+        synchronized (this) {
+            admittedBefore = admittedSinceMeasure;
+        }
+        int length;
+        try {
+            length = fetcher.fetch();
+        } catch (APIException | RuntimeException e) {
+            log.warn("Unable to measure the Kaltura conversion queue: '{}'", e.getMessage());
+            synchronized (this) {
+                stalledRefreshes++;
+                notifyAll(); // Waiting uploads may have to give up
+                if (!closed) {
+                    scheduleRefresh(refreshIntervalMillis);
+                }
+            }
+            return;
+        }
+
+        synchronized (this) {
+            long now = clock.getAsLong();
+            long elapsed = now - measuredAt;
+            // Uploads admitted while measuring may not be counted by Kaltura yet, so they are kept in the estimate
+            int converted = measured + admittedBefore - length;
+            if (elapsed > 0) {
+                double rate = Math.max(0, converted) / (double) elapsed;
+                conversionsPerMilli = conversionsPerMilli == 0 ? rate :
+                        RATE_SMOOTHING * rate + (1 - RATE_SMOOTHING) * conversionsPerMilli;
+            }
+            stalledRefreshes = length >= threshold && converted <= 0 ? stalledRefreshes + 1 : 0;
+            measured = length;
+            measuredAt = now;
+            admittedSinceMeasure -= admittedBefore;
+            log.debug("Conversion queue length is {}, converting {} entries/minute",
+                    length, Math.round(conversionsPerMilli * 60_000));
+            notifyAll();
+
+            if (closed || (waiting == 0 && estimate() < threshold * MONITOR_STOP_FRACTION)) {
+                log.debug("Stopping monitoring of the conversion queue");
+                monitoring = false;
+                conversionsPerMilli = 0; // Not projected while not measured, so the estimate can only be too high
+            } else {
+                scheduleRefresh(refreshIntervalMillis);
+            }
+        }
+    }
+}
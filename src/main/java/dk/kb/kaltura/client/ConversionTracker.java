@@ -0,0 +1,268 @@
+package dk.kb.kaltura.client;
+
+import com.kaltura.client.enums.EntryStatus;
+import com.kaltura.client.types.APIException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tracks the conversion of uploaded entries until they are ready or have failed, polling the status of all tracked
+ * entries in bulk instead of one request per entry.
+ * <p>
+ * Each tracked entry has a future completing with its final {@link EntryStatus}: {@code READY}, or a status telling
+ * why it will never be ready, such as {@code ERROR_CONVERTING}. Callers can react to completions with the methods of
+ * {@link CompletableFuture} or wait for all entries with {@link #awaitAll(long, TimeUnit)}.
+ * <p>
+ * The statuses are polled in batches of up to {@link DsKalturaClientBase#MAX_BATCH_SIZE} entries. While entries are
+ * completing, the poll interval is the minimum interval. It doubles for every poll where no entry completes, up to
+ * the maximum interval, so the last few slow conversions are polled less often.
+ * <p>
+ * Create trackers with {@link DsKalturaClient#createConversionTracker()}. Close the tracker to stop polling.
+ */
+public class ConversionTracker implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ConversionTracker.class);
+
+    /**
+     * Statuses after which an entry will not change without action from a user.
+     */
+    static final Set<EntryStatus> FINAL_STATUSES = EnumSet.of(EntryStatus.READY, EntryStatus.ERROR_CONVERTING,
+            EntryStatus.ERROR_IMPORTING, EntryStatus.DELETED, EntryStatus.BLOCKED, EntryStatus.SCAN_FAILURE,
+            EntryStatus.INFECTED);
+
+    // Entries not returned by this many polls in a row are completed as DELETED. New entries may not be listed at once
+    static final int MAX_MISSES = 3;
+
+    /**
+     * Requests the status of entries.
+     */
+    @FunctionalInterface
+    interface StatusFetcher {
+        /**
+         * @param entryIds at most {@link DsKalturaClientBase#MAX_BATCH_SIZE} entry IDs.
+         * @return the status of the entries that exist.
+         */
+        Map<String, EntryStatus> fetch(List<String> entryIds) throws APIException;
+    }
+
+    private final StatusFetcher fetcher;
+    private final int batchSize;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+
+    // All guarded by this
+    private final Map<String, Tracked> tracked = new LinkedHashMap<>();
+    private long intervalMillis;
+    private boolean scheduled = false;
+    private boolean closed = false;
+
+    /**
+     * @param fetcher           requests the status of entries.
+     * @param batchSize         the maximum number of entries per status request.
+     * @param minIntervalMillis the poll interval while entries are completing.
+     * @param maxIntervalMillis the longest poll interval when no entries complete.
+     * @param scheduler         schedules the polls. The polls themselves run on {@code executor}.
+     * @param executor          runs the status requests.
+     */
+    ConversionTracker(StatusFetcher fetcher, int batchSize, long minIntervalMillis, long maxIntervalMillis,
+                      ScheduledExecutorService scheduler, Executor executor) {
+        if (minIntervalMillis < 1 || maxIntervalMillis < minIntervalMillis) {
+            throw new IllegalArgumentException("Intervals must satisfy 1 <= minIntervalMillis <= " +
+                    "maxIntervalMillis, but were " + minIntervalMillis + " and " + maxIntervalMillis);
+        }
+        this.fetcher = fetcher;
+        this.batchSize = batchSize;
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.intervalMillis = minIntervalMillis;
+    }
+
+    /**
+     * Starts tracking the conversion of an entry. Tracking an entry that is already tracked returns the same future.
+     *
+     * @param entryId the Kaltura ID of the entry, as returned by {@code uploadMedia}.
+     * @return a future completing with the final status of the entry. It is cancelled if the tracker is closed first.
+     */
+    public synchronized CompletableFuture<EntryStatus> track(String entryId) {
+        if (closed) {
+            throw new IllegalStateException("The conversion tracker is closed");
+        }
+        Tracked entry = tracked.computeIfAbsent(entryId, id -> new Tracked());
+        intervalMillis = minIntervalMillis; // New entries are likely to complete
+        if (!scheduled) {
+            schedulePoll();
+        }
+        return entry.future;
+    }
+
+    /**
+     * @return the number of entries that are not converted yet.
+     */
+    public synchronized int getPendingCount() {
+        return tracked.size();
+    }
+
+    /**
+     * Waits until all tracked entries have reached a final status, including entries tracked while waiting. When it
+     * returns true, the futures of all entries have completed.
+     *
+     * @return true if all entries completed, false if the timeout was reached, the tracker was closed first or the
+     * future of an entry was cancelled.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean awaitAll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            CompletableFuture<?>[] pending;
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+                // Completed entries are removed after their futures complete
+                pending = tracked.values().stream()
+                        .map(entry -> entry.future)
+                        .filter(future -> !future.isDone())
+                        .toArray(CompletableFuture[]::new);
+            }
+            if (pending.length == 0) {
+                return true;
+            }
+            try {
+                CompletableFuture.allOf(pending).get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                return false;
+            } catch (ExecutionException | CancellationException e) {
+                // The futures only complete exceptionally when cancelled
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Stops polling and cancels the futures of the entries that have not completed.
+     */
+    @Override
+    public void close() {
+        List<Tracked> cancelled;
+        synchronized (this) {
+            closed = true;
+            cancelled = new ArrayList<>(tracked.values());
+            tracked.clear();
+        }
+        cancelled.forEach(entry -> entry.future.cancel(false));
+    }
+
+    private void schedulePoll() {
+        try {
+            scheduler.schedule(this::startPoll, intervalMillis, TimeUnit.MILLISECONDS);
+            scheduled = true;
+        } catch (RejectedExecutionException e) {
+            log.debug("Unable to schedule conversion status poll, the client is closed");
+            scheduled = false;
+        }
+    }
+
+    /**
+     * Hands the poll off to the executor, as the scheduler is only for light tasks.
+     */
+    private void startPoll() {
+        try {
+            executor.execute(this::poll);
+        } catch (RejectedExecutionException e) {
+            log.debug("Unable to poll conversion status, the client is closed");
+            synchronized (this) {
+                scheduled = false;
+            }
+        }
+    }
+
+    /**
+     * Requests the status of all tracked entries, completes the entries with a final status and schedules the next
+     * poll if entries are still pending.
+     */
+    void poll() {
+        List<String> ids;
+        synchronized (this) {
+            ids = new ArrayList<>(tracked.keySet());
+        }
+        Map<String, EntryStatus> completed = new LinkedHashMap<>();
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<String> batch = ids.subList(from, Math.min(ids.size(), from + batchSize));
+            Map<String, EntryStatus> statuses;
+            try {
+                statuses = fetcher.fetch(batch);
+            } catch (APIException | RuntimeException e) {
+                log.warn("Unable to request the status of {} entries: '{}'", batch.size(), e.getMessage());
+                continue;
+            }
+            synchronized (this) {
+                for (String id : batch) {
+                    Tracked entry = tracked.get(id);
+                    if (entry == null) {
+                        continue;
+                    }
+                    EntryStatus status = statuses.get(id);
+                    if (status != null) {
+                        entry.misses = 0;
+                    } else if (++entry.misses >= MAX_MISSES) {
+                        log.warn("Entry '{}' was not found in {} polls, completing it as deleted", id, MAX_MISSES);
+                        status = EntryStatus.DELETED;
+                    }
+                    if (status != null && FINAL_STATUSES.contains(status)) {
+                        completed.put(id, status);
+                    }
+                }
+            }
+        }
+
+        // The futures are completed before the entries are removed, so that awaitAll does not return while futures
+        // are pending. Outside the lock, as callers may run code on completion
+        List<Runnable> completions = new ArrayList<>(completed.size());
+        synchronized (this) {
+            completed.forEach((id, status) -> {
+                Tracked entry = tracked.get(id);
+                if (entry != null) {
+                    completions.add(() -> entry.future.complete(status));
+                }
+            });
+        }
+        completions.forEach(Runnable::run);
+
+        synchronized (this) {
+            completed.keySet().forEach(tracked::remove);
+            intervalMillis = completed.isEmpty() ? Math.min(maxIntervalMillis, intervalMillis * 2) : minIntervalMillis;
+            log.debug("Conversion status poll: {} entries completed, {} pending, next poll in {} ms",
+                    completed.size(), tracked.size(), intervalMillis);
+            scheduled = false;
+            if (!tracked.isEmpty() && !closed) {
+                schedulePoll();
+            }
+        }
+    }
+
+    /**
+     * A tracked entry.
+     */
+    private static class Tracked {
+        final CompletableFuture<EntryStatus> future = new CompletableFuture<>();
+        int misses = 0;
+    }
+}
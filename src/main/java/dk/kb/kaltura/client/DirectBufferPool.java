@@ -0,0 +1,83 @@
+package dk.kb.kaltura.client;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed number of reusable direct buffers for reading files.
+ * <p>
+ * Reading a file channel into a heap buffer makes the JDK copy through a temporary direct buffer cached per thread,
+ * sized after the largest read on that thread. With many upload threads, possibly virtual, that cache is not
+ * bounded. Reading into buffers from this pool keeps the memory used for file reads at {@code maxBuffers *
+ * bufferSize}, independent of file sizes and the number of threads.
+ */
+final class DirectBufferPool {
+
+    /**
+     * Pool shared by all uploads in the JVM: 32 buffers of 64 KB.
+     */
+    static final DirectBufferPool SHARED = new DirectBufferPool(32, 64 * 1024);
+
+    private final BlockingQueue<ByteBuffer> available;
+    private final int maxBuffers;
+    private final int bufferSize;
+    private final AtomicInteger created = new AtomicInteger();
+
+    /**
+     * @param maxBuffers the maximum number of buffers. Buffers are allocated when first needed.
+     * @param bufferSize the size of each buffer in bytes.
+     */
+    DirectBufferPool(int maxBuffers, int bufferSize) {
+        if (maxBuffers < 1 || bufferSize < 1) {
+            throw new IllegalArgumentException(
+                    "maxBuffers and bufferSize must be at least 1, but were " + maxBuffers + " and " + bufferSize);
+        }
+        this.available = new ArrayBlockingQueue<>(maxBuffers);
+        this.maxBuffers = maxBuffers;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Takes a cleared buffer from the pool, waiting for one to be released if all buffers are in use.
+     * The buffer must be returned with {@link #release(ByteBuffer)}.
+     *
+     * @return a buffer of {@link #getBufferSize()} bytes.
+     */
+    ByteBuffer acquire() {
+        ByteBuffer buffer = available.poll();
+        if (buffer == null) {
+            if (created.incrementAndGet() <= maxBuffers) {
+                return ByteBuffer.allocateDirect(bufferSize);
+            }
+            created.decrementAndGet();
+            try {
+                buffer = available.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for a read buffer", e);
+            }
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer taken with {@link #acquire()} to the pool.
+     */
+    void release(ByteBuffer buffer) {
+        available.offer(buffer);
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return the number of buffers allocated so far.
+     */
+    int getCreated() {
+        return created.get();
+    }
+}
@@ -4,27 +4,45 @@ import com.kaltura.client.enums.*;
 import com.kaltura.client.services.BaseEntryService;
 import com.kaltura.client.services.ESearchService;
 import com.kaltura.client.services.MediaService;
-import com.kaltura.client.services.MediaService.AddContentMediaBuilder;
 import com.kaltura.client.services.MediaService.DeleteMediaBuilder;
 import com.kaltura.client.services.MediaService.RejectMediaBuilder;
 import com.kaltura.client.services.UploadTokenService;
 import com.kaltura.client.types.*;
 import com.kaltura.client.utils.request.BaseRequestBuilder;
 import com.kaltura.client.utils.request.MultiRequestBuilder;
-import com.kaltura.client.utils.response.base.Response;
+import com.kaltura.client.utils.request.RequestBuilder;
 import dk.kb.kaltura.enums.FileExtension;
 import dk.kb.kaltura.enums.MimeType;
 
 import javax.annotation.Nullable;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 
 /**
@@ -34,15 +52,38 @@ import java.util.stream.Collectors;
  * <li> API lookup and map external ID to internal Kaltura ID
  * <li> Upload a media entry (video, audio etc.) to Kaltura with meta data.
  * </ul><p>
+ * The client is safe for concurrent use and a single instance, with a single Kaltura session, is intended to be
+ * shared between all worker threads.
  */
 public class DsKalturaClient extends DsKalturaClientBase {
 
     private static final Integer MAX_RETRY_COUNT = 3;
-
-    private final Integer conversionQueueThreshold;
-    private final Integer conversionQueueRetryDelaySeconds;
-
-    private Integer estimatedQueueLength;
+    public static final long DEFAULT_LOOKUP_BATCH_WINDOW_MILLIS = 10;
+    public static final int DEFAULT_LOOKUP_PARALLELISM = 4;
+    public static final int DEFAULT_BULK_REQUEST_SIZE = 50;
+    public static final int DEFAULT_BULK_PARALLELISM = 4;
+    private static final int CHUNK_MAX_RETRIES = 3;
+    private static final long CHUNK_RETRY_DELAY_MILLIS = 1000;
+    // eSearch returns at most the first 10,000 hits of a search, no matter the paging
+    static final int ESEARCH_MAX_RESULTS = 10000;
+    private static final String ALL_ENTRY_STATUSES = Arrays.stream(EntryStatus.values())
+            .map(EntryStatus::getValue)
+            .collect(Collectors.joining(","));
+    public static final Duration DEFAULT_CONVERSION_POLL_MIN = Duration.ofSeconds(10);
+    public static final Duration DEFAULT_CONVERSION_POLL_MAX = Duration.ofMinutes(5);
+
+    // Shared by all upload threads, so the queue is measured once for all of them
+    private final ConversionQueueMonitor conversionQueue;
+
+    private volatile long lookupBatchWindowMillis = DEFAULT_LOOKUP_BATCH_WINDOW_MILLIS;
+    private volatile LookupBatcher<String, List<String>> referenceIdBatcher = null; // Created when first needed
+    private volatile IdCache idCache = null;
+    private volatile int lookupParallelism = DEFAULT_LOOKUP_PARALLELISM;
+    private volatile long uploadChunkSize = 0; // 0 means upload in a single request
+    private volatile int uploadParallelism = 1;
+    private volatile int bulkRequestSize = DEFAULT_BULK_REQUEST_SIZE;
+    private volatile int bulkParallelism = DEFAULT_BULK_PARALLELISM;
+    private volatile boolean lookupResponseProfiles = false;
 
 
     /**
@@ -60,20 +101,168 @@ public class DsKalturaClient extends DsKalturaClientBase {
      * @param sessionRefreshThreshold          The threshold in seconds for session renewal.
      * @param conversionQueueThreshold         The threshold for the size of the conversionQueue. If queue gets larger than
      *                                         this threshold, upload will wait and retry.
-     * @param conversionQueueRetryDelaySeconds the delay in seconds to wait for a retry if the
-     *                                         conversionQueueLength is larger than or equal to
-     *                                         conversionQueueThreshold.
+     * @param conversionQueueRetryDelaySeconds the interval in seconds between measurements of the
+     *                                         conversionQueueLength while it is near conversionQueueThreshold.
      * @throws APIException If session could not be created at Kaltura
      */
     public DsKalturaClient(String kalturaUrl, String userId, int partnerId, String token, String tokenId,
                            String adminSecret, int sessionDurationSeconds, int sessionRefreshThreshold,
                            int conversionQueueThreshold, int conversionQueueRetryDelaySeconds) throws APIException {
+        this(kalturaUrl, userId, partnerId, token, tokenId, adminSecret, sessionDurationSeconds,
+                sessionRefreshThreshold, conversionQueueThreshold, conversionQueueRetryDelaySeconds, null);
+    }
+
+    /**
+     * Instantiate a session to Kaltura that can be used. The sessions can be reused between Kaltura calls without
+     * authenticating again. Either a token/tokenId a adminSecret must be provided for authentication.
+     *
+     * @param kalturaUrl                       The Kaltura API url. Using the baseUrl will automatic append the API service part to the URL.
+     * @param userId                           The userId that must be defined in the kaltura, userId is email xxx@kb.dk in our kaltura
+     * @param partnerId                        The partner id for kaltura. Kind of a collectionId.
+     * @param token                            The application token used for generating client sessions
+     * @param tokenId                          The id of the application token
+     * @param adminSecret                      The adminsecret used as password for authenticating. Must not be shared.
+     * @param sessionDurationSeconds           The duration of Kaltura Session in seconds. Beware that when using AppTokens
+     *                                         this might have an upper bound tied to the AppToken.
+     * @param sessionRefreshThreshold          The threshold in seconds for session renewal.
+     * @param conversionQueueThreshold         The threshold for the size of the conversionQueue. If queue gets larger than
+     *                                         this threshold, upload will wait and retry.
+     * @param conversionQueueRetryDelaySeconds the interval in seconds between measurements of the
+     *                                         conversionQueueLength while it is near conversionQueueThreshold.
+     * @param sessionCache                     Optional cache of sessions shared between processes. If a cached
+     *                                         session is still within its keep-alive time, it is used instead of
+     *                                         authenticating again.
+     * @throws APIException If session could not be created at Kaltura
+     */
+    public DsKalturaClient(String kalturaUrl, String userId, int partnerId, String token, String tokenId,
+                           String adminSecret, int sessionDurationSeconds, int sessionRefreshThreshold,
+                           int conversionQueueThreshold, int conversionQueueRetryDelaySeconds,
+                           @Nullable KalturaSessionCache sessionCache) throws APIException {
         super(kalturaUrl, userId, partnerId, token, tokenId, adminSecret, sessionDurationSeconds,
-                sessionRefreshThreshold, MAX_BATCH_SIZE);
-        this.conversionQueueThreshold = conversionQueueThreshold;
-        this.conversionQueueRetryDelaySeconds = conversionQueueRetryDelaySeconds;
+                sessionRefreshThreshold, MAX_BATCH_SIZE, sessionCache);
+        int initialConversionQueueLength;
+        try {
+            initialConversionQueueLength = getConversionQueueLength();
+        } catch (APIException | RuntimeException e) {
+            // Stop the session refresher and unregister the metrics started by the base constructor
+            super.close();
+            throw e;
+        }
+        // The async executor is looked up per measurement, as it is replaced if the async parallelism is changed
+        conversionQueue = new ConversionQueueMonitor(this::getConversionQueueLength, conversionQueueThreshold,
+                Math.max(1, conversionQueueRetryDelaySeconds * 1000L), MAX_RETRY_COUNT, getScheduler(),
+                task -> getAsyncExecutor().execute(task), initialConversionQueueLength, System::currentTimeMillis);
+    }
+
+    /**
+     * Enable caching of the mapping between referenceIds and Kaltura IDs for {@link #getKalturaInternalId(String)},
+     * {@link #getKalturaInternalIdAsync(String)}, {@link #getKalturaIds(List)} and {@link #getReferenceIds(List)}.
+     * Mappings are invalidated when entries are uploaded or deleted through this client, but not when other clients
+     * change entries, so the time to live of the cache should be set accordingly.
+     *
+     * @param idCache the cache to use or null to disable caching.
+     */
+    public void setIdCache(@Nullable IdCache idCache) {
+        this.idCache = idCache;
+    }
+
+    /**
+     * @return the cache of the mapping between referenceIds and Kaltura IDs, null if caching is not enabled.
+     */
+    public IdCache getIdCache() {
+        return idCache;
+    }
+
+    /**
+     * Set the maximum number of concurrent requests used by {@link #getKalturaIds(List)} and
+     * {@link #getReferenceIds(List)} when resolving more than {@link #getBatchSize()} IDs.
+     *
+     * @param parallelism maximum number of concurrent requests for a single call. Must be at least 1.
+     */
+    public void setLookupParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The lookup parallelism must be at least 1, but was " + parallelism);
+        }
+        lookupParallelism = parallelism;
+    }
+
+    /**
+     * Upload files larger than {@code chunkSize} in chunks of {@code chunkSize} bytes. If a chunk fails, only that
+     * chunk is retried, and an upload interrupted by a restart can be continued with
+     * {@link #resumeUploadMedia}.
+     *
+     * @param chunkSize the maximum number of bytes in a chunk, or 0 to upload files in a single request.
+     */
+    public void setUploadChunkSize(long chunkSize) {
+        if (chunkSize < 0) {
+            throw new IllegalArgumentException("The upload chunk size must not be negative, but was " + chunkSize);
+        }
+        uploadChunkSize = chunkSize;
+    }
+
+    /**
+     * Set the number of chunks of a single file sent at the same time when uploading in chunks, see
+     * {@link #setUploadChunkSize(long)}. More than 1 uses several connections to Kaltura, which raises throughput
+     * when a single connection is limited by latency. The chunks are sent on the asynchronous executor, see
+     * {@link #setAsyncParallelism(int)}.
+     *
+     * @param parallelism the maximum number of chunks sent at the same time. Must be at least 1.
+     */
+    public void setUploadParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The upload parallelism must be at least 1, but was " + parallelism);
+        }
+        uploadParallelism = parallelism;
+    }
+
+    /**
+     * Set the number of operations sent in one multirequest by the bulk operations, such as
+     * {@link #deleteStreamsByEntryIds(Collection)}.
+     *
+     * @param requestSize the number of entries per multirequest, from 1 to {@link #MAX_BATCH_SIZE}.
+     */
+    public void setBulkRequestSize(int requestSize) {
+        if (requestSize < 1 || requestSize > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("The bulk request size must be between 1 and " + MAX_BATCH_SIZE +
+                    ", but was " + requestSize);
+        }
+        bulkRequestSize = requestSize;
+    }
+
+    /**
+     * Set the maximum number of concurrent multirequests used by a single bulk operation, such as
+     * {@link #deleteStreamsByEntryIds(Collection)}.
+     *
+     * @param parallelism maximum number of concurrent requests for a single call. Must be at least 1.
+     */
+    public void setBulkParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The bulk parallelism must be at least 1, but was " + parallelism);
+        }
+        bulkParallelism = parallelism;
+    }
+
+    /**
+     * Ask Kaltura for only the fields needed by ID lookups, conversion tracking and bulk operations by filter, using
+     * {@link ResponseProfiles}, instead of full entries. For batches of {@value #MAX_BATCH_SIZE} entries this cuts the
+     * size of the responses and the objects parsed from them considerably.
+     * <p>
+     * Disabled by default, until verified against the Kaltura installation in use. The response sizes measured by
+     * {@link KalturaTransport#getResponseBytes(String)} and the latencies in the {@link #getRequestMetrics() request
+     * metrics} can be compared with and without the profiles, as done by the {@code responseProfileSavings}
+     * integration test.
+     *
+     * @param enabled true to request only the needed fields, false to request full entries.
+     */
+    public void setLookupResponseProfiles(boolean enabled) {
+        lookupResponseProfiles = enabled;
+    }
 
-        estimatedQueueLength = getConversionQueueLength();
+    /**
+     * @return the estimated length of the conversion queue at Kaltura.
+     */
+    int getEstimatedQueueLength() {
+        return conversionQueue.getEstimatedLength();
     }
 
     /**
@@ -93,6 +282,111 @@ public class DsKalturaClient extends DsKalturaClientBase {
         return handleRequest(BaseEntryService.get(entryId));
     }
 
+    /**
+     * Asynchronous version of {@link #getEntry(String)}.
+     *
+     * @param entryId the ID of the entry to be retrieved
+     * @return a future completing with the requested entry or exceptionally with an {@link APIException} as cause
+     */
+    public CompletableFuture<BaseEntry> getEntryAsync(String entryId) {
+        return handleRequestAsync(BaseEntryService.get(entryId));
+    }
+
+    /**
+     * Get the entries with the given IDs. Unlike calling {@link #getEntry(String)} for each ID, the entries are
+     * requested with list requests of {@link #getBatchSize()} entries, with up to
+     * {@link #setLookupParallelism(int) lookupParallelism} concurrent requests.
+     * <p>
+     * Entries are returned in any status, as {@link #getEntry(String)} does. IDs that are not found, e.g. because the
+     * entry has been deleted permanently, are listed in {@link Entries#getMissing()} instead of failing the request.
+     *
+     * @param entryIds the Kaltura IDs of the entries. Duplicates are requested once.
+     * @return the entries found and the IDs not found, both in the order of {@code entryIds}.
+     * @throws APIException if a request failed.
+     */
+    public Entries getEntries(Collection<String> entryIds) throws APIException {
+        return getEntries(entryIds, null);
+    }
+
+    /**
+     * Get the entries with the given IDs, with only the fields of the response profile, e.g.
+     * {@code ResponseProfiles.includeFields("id", "name", "duration")}. See {@link #getEntries(Collection)}.
+     *
+     * @param entryIds the Kaltura IDs of the entries. Duplicates are requested once.
+     * @param profile  the fields to return, which must include {@code id}, or null for full entries.
+     * @return the entries found and the IDs not found, both in the order of {@code entryIds}.
+     * @throws APIException if a request failed.
+     */
+    public Entries getEntries(Collection<String> entryIds, @Nullable BaseResponseProfile profile)
+            throws APIException {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(entryIds));
+        if (ids.isEmpty()) {
+            return new Entries(Collections.emptyMap(), Collections.emptyList());
+        }
+        List<List<BaseEntry>> batchResults = ParallelBatches.run(ids, getBatchSize(), lookupParallelism,
+                task -> getAsyncExecutor().execute(task), batch -> {
+                    BaseEntryFilter filter = new BaseEntryFilter();
+                    setIdIn(filter, batch);
+                    return handleRequest(withProfile(BaseEntryService.list(filter, createPager(batch.size())),
+                            profile)).getObjects();
+                });
+
+        Map<String, BaseEntry> byId = new HashMap<>(ids.size());
+        batchResults.forEach(batch -> batch.forEach(entry -> byId.put(entry.getId(), entry)));
+        Map<String, BaseEntry> found = new LinkedHashMap<>(byId.size());
+        List<String> missing = new ArrayList<>();
+        for (String id : ids) {
+            BaseEntry entry = byId.get(id);
+            if (entry == null) {
+                missing.add(id);
+            } else {
+                found.put(id, entry);
+            }
+        }
+        if (!missing.isEmpty()) {
+            log.debug("getEntries: {} of {} entries were not found", missing.size(), ids.size());
+        }
+        return new Entries(found, missing);
+    }
+
+    /**
+     * Asynchronous version of {@link #getEntries(Collection)}.
+     *
+     * @param entryIds the Kaltura IDs of the entries.
+     * @return a future completing with the entries found and the IDs not found or exceptionally with an
+     * {@link APIException} as cause.
+     */
+    public CompletableFuture<Entries> getEntriesAsync(Collection<String> entryIds) {
+        return supplyAsync(() -> getEntries(entryIds));
+    }
+
+    /**
+     * The result of {@link #getEntries(Collection)}.
+     */
+    public static final class Entries {
+        private final Map<String, BaseEntry> found;
+        private final List<String> missing;
+
+        Entries(Map<String, BaseEntry> found, List<String> missing) {
+            this.found = Collections.unmodifiableMap(found);
+            this.missing = Collections.unmodifiableList(missing);
+        }
+
+        /**
+         * @return the entries found, keyed by Kaltura ID.
+         */
+        public Map<String, BaseEntry> getFound() {
+            return found;
+        }
+
+        /**
+         * @return the requested IDs that were not found.
+         */
+        public List<String> getMissing() {
+            return missing;
+        }
+    }
+
     /**
      * <p>
      * Delete a stream and all meta-data for the record in Kaltura.
@@ -105,6 +399,10 @@ public class DsKalturaClient extends DsKalturaClientBase {
      */
     public boolean deleteStreamByEntryId(String entryId) throws APIException {
         DeleteMediaBuilder request = MediaService.delete(entryId);
+        IdCache cache = idCache;
+        if (cache != null) {
+            cache.invalidateKalturaId(entryId);
+        }
         return buildAndExecute(request, true).isSuccess(); // no object in response. Only status
     }
 
@@ -124,20 +422,348 @@ public class DsKalturaClient extends DsKalturaClientBase {
         return buildAndExecute(request, true).isSuccess();
     }
 
+    /**
+     * Delete many streams, see {@link #deleteStreamByEntryId(String)}. The deletes are sent in multirequests of
+     * {@link #setBulkRequestSize(int) bulkRequestSize} entries, with up to
+     * {@link #setBulkParallelism(int) bulkParallelism} concurrent requests.
+     * <p>
+     * A failure only affects the entries it concerns, so the result must be checked for entries that were not deleted.
+     *
+     * @param entryIds the unique ids in the Kaltura platform for the streams. Duplicates are deleted once.
+     * @return the entries that were deleted and the failures for the entries that were not.
+     */
+    public BulkResult deleteStreamsByEntryIds(Collection<String> entryIds) {
+        BulkResult result = runBulk(entryIds, "Delete", MediaService::delete);
+        IdCache cache = idCache;
+        if (cache != null) {
+            result.getSucceeded().forEach(cache::invalidateKalturaId);
+        }
+        return result;
+    }
+
+    /**
+     * Delete all streams matching the filter, e.g. all entries with a given tag using
+     * {@link MediaEntryFilter#setTagsMultiLikeOr(String)}. The matching entries are listed with
+     * {@link #streamMediaEntries(MediaEntryFilter)} before any are deleted, and then deleted as
+     * {@link #deleteStreamsByEntryIds(Collection)} does.
+     *
+     * @param filter the filter for the entries to delete. It must not be used by other threads while listing.
+     * @return the entries that were deleted and the failures for the entries that were not.
+     */
+    public BulkResult deleteStreamsByFilter(MediaEntryFilter filter) {
+        return deleteStreamsByEntryIds(listEntryIds(filter));
+    }
+
+    /**
+     * Block many streams, see {@link #blockStreamByEntryId(String)}. The blocks are sent in multirequests of
+     * {@link #setBulkRequestSize(int) bulkRequestSize} entries, with up to
+     * {@link #setBulkParallelism(int) bulkParallelism} concurrent requests.
+     * <p>
+     * A failure only affects the entries it concerns, so the result must be checked for entries that were not blocked.
+     *
+     * @param entryIds the unique ids in the Kaltura platform for the streams. Duplicates are blocked once.
+     * @return the entries that were blocked and the failures for the entries that were not.
+     */
+    public BulkResult blockStreamsByEntryIds(Collection<String> entryIds) {
+        return runBulk(entryIds, "Block", MediaService::reject);
+    }
+
+    /**
+     * Block all streams matching the filter. The matching entries are listed with
+     * {@link #streamMediaEntries(MediaEntryFilter)} before any are blocked, and then blocked as
+     * {@link #blockStreamsByEntryIds(Collection)} does.
+     *
+     * @param filter the filter for the entries to block. It must not be used by other threads while listing.
+     * @return the entries that were blocked and the failures for the entries that were not.
+     */
+    public BulkResult blockStreamsByFilter(MediaEntryFilter filter) {
+        return blockStreamsByEntryIds(listEntryIds(filter));
+    }
+
+    private List<String> listEntryIds(MediaEntryFilter filter) {
+        try (Stream<MediaEntry> entries = streamMediaEntries(filter,
+                lookupResponseProfiles ? ResponseProfiles.forStreaming() : null)) {
+            return entries.map(MediaEntry::getId).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Runs an operation for each entry in multirequests, collecting the outcome per entry. A failed multirequest
+     * fails the entries in it, but not the other multirequests.
+     *
+     * @param entryIds  the entries to run the operation for.
+     * @param operation the name of the operation, for logging.
+     * @param request   creates the request for an entry.
+     * @return the entries that succeeded and the failures for the entries that did not.
+     */
+    private BulkResult runBulk(Collection<String> entryIds, String operation,
+                               Function<String, RequestBuilder<?, ?, ?>> request) {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(entryIds));
+        List<BulkResult> batchResults = ParallelBatches.run(ids, bulkRequestSize, bulkParallelism,
+                task -> getAsyncExecutor().execute(task), batch -> runBulkBatch(batch, operation, request));
+
+        List<String> succeeded = new ArrayList<>(ids.size());
+        Map<String, APIException> failed = new LinkedHashMap<>();
+        for (BulkResult batchResult : batchResults) {
+            succeeded.addAll(batchResult.getSucceeded());
+            failed.putAll(batchResult.getFailed());
+        }
+        log.info("{} of {} entries: {} succeeded, {} failed", operation, ids.size(), succeeded.size(), failed.size());
+        return new BulkResult(succeeded, failed);
+    }
+
+    private BulkResult runBulkBatch(List<String> batch, String operation,
+                                    Function<String, RequestBuilder<?, ?, ?>> request) {
+        List<String> succeeded = new ArrayList<>(batch.size());
+        Map<String, APIException> failed = new LinkedHashMap<>();
+        RequestBuilder<?, ?, ?>[] requests = batch.stream().map(request).toArray(RequestBuilder<?, ?, ?>[]::new);
+        try {
+            List<Object> results = handleRequest(new MultiRequestBuilder(requests));
+            for (int i = 0; i < batch.size(); i++) {
+                if (results.get(i) instanceof APIException) {
+                    APIException e = (APIException) results.get(i);
+                    log.debug("{} of entry '{}' failed because: '{}'", operation, batch.get(i), e.getMessage());
+                    failed.put(batch.get(i), e);
+                } else {
+                    succeeded.add(batch.get(i));
+                }
+            }
+        } catch (APIException e) {
+            log.warn("{} of {} entries failed because: '{}'", operation, batch.size(), e.getMessage());
+            batch.forEach(entryId -> failed.put(entryId, e));
+        }
+        return new BulkResult(succeeded, failed);
+    }
+
+    /**
+     * The outcome per entry of a bulk operation, such as {@link #deleteStreamsByEntryIds(Collection)}.
+     */
+    public static final class BulkResult {
+        private final List<String> succeeded;
+        private final Map<String, APIException> failed;
+
+        BulkResult(List<String> succeeded, Map<String, APIException> failed) {
+            this.succeeded = Collections.unmodifiableList(succeeded);
+            this.failed = Collections.unmodifiableMap(failed);
+        }
+
+        /**
+         * @return the entries the operation succeeded for, in the order they were given.
+         */
+        public List<String> getSucceeded() {
+            return succeeded;
+        }
+
+        /**
+         * @return the failure for each entry the operation failed for, such as {@code ENTRY_ID_NOT_FOUND}.
+         */
+        public Map<String, APIException> getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return true if the operation succeeded for all entries.
+         */
+        public boolean isAllSucceeded() {
+            return failed.isEmpty();
+        }
+    }
+
     public ListResponse<MediaEntry> listMediaEntry(MediaEntryFilter filter) throws APIException {
-        return handleRequest(MediaService.list(filter));
+        return listMediaEntry(filter, null);
+    }
+
+    /**
+     * List the first page of media entries matching the filter, with only the fields of the response profile.
+     *
+     * @param filter  the filter for the entries to list.
+     * @param profile the fields to return, or null for full entries.
+     * @return the first page of matching entries.
+     * @throws APIException if the request failed.
+     */
+    public ListResponse<MediaEntry> listMediaEntry(MediaEntryFilter filter, @Nullable BaseResponseProfile profile)
+            throws APIException {
+        return handleRequest(withProfile(MediaService.list(filter), profile));
+    }
+
+    /**
+     * Streams all media entries matching the filter, ordered by ascending {@code createdAt}. Unlike
+     * {@link #listMediaEntry(MediaEntryFilter)} this is not limited to the first 10,000 results, so it can be used
+     * for walking the full catalog.
+     * <p>
+     * Pages of {@link #getBatchSize()} entries are fetched lazily, with the next page requested in the background while
+     * the current one is consumed, so at most two pages are held in memory. Close the stream to stop early.
+     * <p>
+     * Each page is requested after the {@code createdAt} of the last entry received, excluding the entries received
+     * from that second with {@code idNotIn}. If more than 2000 entries were created in the same second, the stream
+     * fails with an {@link IllegalStateException} rather than sending ever larger requests.
+     * <p>
+     * A {@code createdAtGreaterThanOrEqual} set on the filter is used as the starting point. {@code orderBy} and
+     * {@code idNotIn} are used for paging, so they must not be set. The filter is changed while a page is requested
+     * and restored afterwards, so it must not be used by other threads while the stream is consumed. If a page
+     * request fails while the stream is consumed, a {@link RuntimeException} is thrown with the {@link APIException}
+     * as cause.
+     *
+     * @param filter the filter for the entries to stream.
+     * @return a stream of all matching entries.
+     * @throws IllegalArgumentException if the filter has {@code idNotIn} or an {@code orderBy} other than ascending
+     *                                  {@code createdAt}.
+     */
+    public Stream<MediaEntry> streamMediaEntries(MediaEntryFilter filter) {
+        return streamMediaEntries(filter, null);
+    }
+
+    /**
+     * Streams all media entries matching the filter, with only the fields of the response profile. See
+     * {@link #streamMediaEntries(MediaEntryFilter)}.
+     *
+     * @param filter  the filter for the entries to stream, see {@link #streamMediaEntries(MediaEntryFilter)}.
+     * @param profile the fields to return, which must include {@code id} and {@code createdAt} as they are used for
+     *                paging, e.g. {@link ResponseProfiles#forStreaming()}. Null for full entries.
+     * @return a stream of all matching entries.
+     */
+    public Stream<MediaEntry> streamMediaEntries(MediaEntryFilter filter, @Nullable BaseResponseProfile profile) {
+        String orderBy = filter.getOrderBy();
+        if (filter.getIdNotIn() != null ||
+                (orderBy != null && !orderBy.equals(MediaEntryOrderBy.CREATED_AT_ASC.getValue()))) {
+            throw new IllegalArgumentException("The filter must not have idNotIn or an orderBy other than " +
+                    MediaEntryOrderBy.CREATED_AT_ASC.getValue() + ", as they are used for paging");
+        }
+        Long createdAtStart = filter.getCreatedAtGreaterThanOrEqual();
+        int pageSize = getBatchSize();
+        MediaEntryCursor cursor = new MediaEntryCursor((createdAtFrom, excludedIds) -> {
+            FilterPager pager = new FilterPager();
+            pager.setPageSize(pageSize);
+            pager.setPageIndex(1);
+            // Pages are requested one at a time, so the filter of the caller can be used and restored
+            try {
+                filter.setOrderBy(MediaEntryOrderBy.CREATED_AT_ASC.getValue());
+                filter.setCreatedAtGreaterThanOrEqual(createdAtFrom);
+                filter.setIdNotIn(excludedIds.isEmpty() ? null : String.join(",", excludedIds));
+                return handleRequest(withProfile(MediaService.list(filter, pager), profile)).getObjects();
+            } finally {
+                filter.setOrderBy(orderBy);
+                filter.setCreatedAtGreaterThanOrEqual(createdAtStart);
+                filter.setIdNotIn(null);
+            }
+        }, createdAtStart, pageSize, getAsyncExecutor());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor,
+                        Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(cursor::close);
     }
 
     public int countMediaEntry(MediaEntryFilter filter) throws APIException {
         return handleRequest(MediaService.count(filter));
     }
 
+    /**
+     * Asynchronous version of {@link #countMediaEntry(MediaEntryFilter)}.
+     *
+     * @param filter the filter for the entries to count
+     * @return a future completing with the count or exceptionally with an {@link APIException} as cause
+     */
+    public CompletableFuture<Integer> countMediaEntryAsync(MediaEntryFilter filter) {
+        return handleRequestAsync(MediaService.count(filter));
+    }
+
+    /**
+     * Creates a tracker for waiting on the conversion of uploaded entries, polling their status every 10 seconds
+     * while entries complete and backing off to every 5 minutes when none do.
+     *
+     * @return a tracker polling with this client. Close it when done.
+     * @see #createConversionTracker(Duration, Duration)
+     */
+    public ConversionTracker createConversionTracker() {
+        return createConversionTracker(DEFAULT_CONVERSION_POLL_MIN, DEFAULT_CONVERSION_POLL_MAX);
+    }
+
+    /**
+     * Creates a tracker for waiting on the conversion of uploaded entries. The status of all tracked entries is
+     * requested in batches of {@link #getBatchSize()} entries, so tracking thousands of entries costs a few requests
+     * per poll.
+     *
+     * @param minInterval the poll interval while entries are completing.
+     * @param maxInterval the poll interval is doubled up to this when no entries complete.
+     * @return a tracker polling with this client. Close it when done.
+     */
+    public ConversionTracker createConversionTracker(Duration minInterval, Duration maxInterval) {
+        return new ConversionTracker(this::getEntryStatuses, getBatchSize(), minInterval.toMillis(),
+                maxInterval.toMillis(), getScheduler(), task -> getAsyncExecutor().execute(task));
+    }
+
+    /**
+     * Requests the status of entries with one list request.
+     *
+     * @param entryIds at most {@link #getBatchSize()} Kaltura IDs.
+     * @return the status of the entries found, keyed by Kaltura ID.
+     */
+    private Map<String, EntryStatus> getEntryStatuses(List<String> entryIds) throws APIException {
+        MediaEntryFilter filter = new MediaEntryFilter();
+        setIdIn(filter, entryIds);
+        List<MediaEntry> entries = handleRequest(withProfile(MediaService.list(filter, createPager(entryIds.size())),
+                lookupResponseProfiles ? ResponseProfiles.forStatus() : null)).getObjects();
+        Map<String, EntryStatus> statuses = new HashMap<>(entries.size());
+        for (MediaEntry entry : entries) {
+            statuses.put(entry.getId(), entry.getStatus());
+        }
+        return statuses;
+    }
+
+    /**
+     * Lists the entries with the given referenceId, in any status. Unlike {@link #getKalturaInternalId(String)},
+     * which searches the eSearch index, this finds entries created moments ago and entries without content, such as
+     * entries left by an upload that was interrupted before the file was sent.
+     *
+     * @param referenceId the referenceId given when uploading.
+     * @return the IDs of the entries with the referenceId, empty if none.
+     * @throws APIException if the request failed.
+     */
+    public List<String> getEntryIdsByReferenceId(String referenceId) throws APIException {
+        BaseEntryFilter filter = new BaseEntryFilter();
+        filter.setReferenceIdEqual(referenceId);
+        filter.setStatusIn(ALL_ENTRY_STATUSES);
+        return handleRequest(withProfile(BaseEntryService.list(filter, createPager(getBatchSize())),
+                lookupResponseProfiles ? ResponseProfiles.forIdLookup() : null)).getObjects().stream()
+                .map(BaseEntry::getId)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Sets the filter to match the given entries, in any status.
+     */
+    private static void setIdIn(BaseEntryFilter filter, List<String> entryIds) {
+        filter.setIdIn(String.join(",", entryIds));
+        // Kaltura only lists ready and converting entries unless told otherwise
+        filter.setStatusIn(ALL_ENTRY_STATUSES);
+    }
+
+    /**
+     * Attaches the response profile to the request, if given.
+     */
+    private static <R extends RequestBuilder<?, ?, ?>> R withProfile(R request, @Nullable BaseResponseProfile profile) {
+        if (profile != null) {
+            request.setResponseProfile(profile);
+        }
+        return request;
+    }
+
+    private static FilterPager createPager(int pageSize) {
+        FilterPager pager = new FilterPager();
+        pager.setPageSize(pageSize);
+        pager.setPageIndex(1);
+        return pager;
+    }
+
 
     /**
      * Search Kaltura for a referenceId. The referenceId was given to Kaltura when uploading the record.<br>
      * We use filenames (file_id) as refereceIds. Example: b16bc5cb-1ea9-48d4-8e3c-2a94abae501b <br>
      * <br>
-     * The Kaltura response contains a lot more information that is required, so it is not a light weight call against Kaltura.
+     * Only the IDs of the entry are requested, unless disabled with {@link #setLookupResponseProfiles(boolean)}.
+     * <p>
+     * Concurrent calls, synchronous or {@link #getKalturaInternalIdAsync(String) asynchronous}, are coalesced into
+     * batch lookups, which adds up to {@link #setLookupBatchWindowMillis(long) the lookup batch window} to the time
+     * of each call.
      *
      * @param referenceId External reference ID given when uploading the entry to Kaltura.
      * @return The Kaltura id (internal id). Return null if the refId is not found.
@@ -146,23 +772,141 @@ public class DsKalturaClient extends DsKalturaClientBase {
      *                      unsuccessful.
      */
     public String getKalturaInternalId(String referenceId) throws IOException, APIException {
-        List<ESearchEntryBaseItem> items = List.of(createReferenceIdItem(referenceId));
-        ESearchEntryResponse response = handleRequest(getSearchEntryESearchBuilder(items));
-        int numberResults = response.getTotalCount();
+        IdCache cache = idCache;
+        IdCache.Lookup cached = cache == null ? null : cache.getKalturaId(referenceId);
+        if (cached != null) {
+            return cached.value;
+        }
+
+        List<String> kalturaIds;
+        try {
+            kalturaIds = getReferenceIdBatcher().lookupAndWait(referenceId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while looking up referenceId '" + referenceId + "'", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof APIException) {
+                throw (APIException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Lookup of referenceId '" + referenceId + "' failed", e.getCause());
+        }
+        return toKalturaId(referenceId, kalturaIds, cache);
+    }
 
-        if (numberResults == 0) {
+    /**
+     * Checks the result of looking up a single referenceId and caches it.
+     *
+     * @param kalturaIds all Kaltura IDs for the referenceId, null or empty if none.
+     * @param cache      the cache to update, if any.
+     * @return the Kaltura ID, or null if there is none.
+     * @throws IOException if more than 1 entry was found with the referenceId.
+     */
+    private String toKalturaId(String referenceId, @Nullable List<String> kalturaIds, @Nullable IdCache cache)
+            throws IOException {
+        if (kalturaIds == null || kalturaIds.isEmpty()) {
             log.info("No entry found at Kaltura for referenceId:'{}'", referenceId);
+            if (cache != null) {
+                cache.putMissingReferenceId(referenceId);
+            }
             return null;
-        } else if (numberResults > 1) { //Sanity, has not happened yet.
+        }
+        if (kalturaIds.size() > 1) { //Sanity, has not happened yet.
             log.error("More that one entry was found at Kaltura for referenceId:'{}'", referenceId); // if this happens there is a logic error with uploading records
             throw new IOException("More than 1 entry found at Kaltura for referenceId:" + referenceId);
         }
+        if (cache != null) {
+            cache.put(referenceId, kalturaIds.get(0));
+        }
+        return kalturaIds.get(0);
+    }
+
+    /**
+     * Asynchronous version of {@link #getKalturaInternalId(String)}, where concurrent calls are coalesced into batch
+     * lookups. Calls within {@link #setLookupBatchWindowMillis(long) the lookup batch window}, default
+     * {@value DEFAULT_LOOKUP_BATCH_WINDOW_MILLIS} ms, are resolved with a single eSearch request of up to
+     * {@link #getBatchSize()} referenceIds.
+     * <p>
+     * This is intended for services resolving single referenceIds from many threads, e.g. during bulk indexing.
+     *
+     * @param referenceId External reference ID given when uploading the entry to Kaltura.
+     * @return a future completing with the Kaltura id (internal id) or null if the referenceId is not found. The
+     * future completes exceptionally with an {@link IOException} as cause if more than 1 entry was found with the
+     * referenceId or with an {@link APIException} as cause if the request was unsuccessful.
+     */
+    public CompletableFuture<String> getKalturaInternalIdAsync(String referenceId) {
+        IdCache cache = idCache;
+        IdCache.Lookup cached = cache == null ? null : cache.getKalturaId(referenceId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached.value);
+        }
 
-        return response.getObjects().get(0).getObject().getId();
+        return getReferenceIdBatcher().lookup(referenceId).thenApply(kalturaIds -> {
+            try {
+                return toKalturaId(referenceId, kalturaIds, cache);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Set the time to collect calls to {@link #getKalturaInternalIdAsync(String)} before resolving them as a batch.
+     * Longer windows give larger batches and fewer requests at the cost of added latency for each lookup.
+     *
+     * @param windowMillis the window in milliseconds. 0 means that calls are only batched while a batch is waiting
+     *                     to be sent.
+     */
+    public synchronized void setLookupBatchWindowMillis(long windowMillis) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("The lookup batch window must not be negative, but was " + windowMillis);
+        }
+        LookupBatcher<String, List<String>> previous = referenceIdBatcher;
+        lookupBatchWindowMillis = windowMillis;
+        referenceIdBatcher = null;
+        if (previous != null) {
+            previous.flush();
+        }
+    }
+
+    private LookupBatcher<String, List<String>> getReferenceIdBatcher() {
+        LookupBatcher<String, List<String>> batcher = referenceIdBatcher;
+        if (batcher == null) {
+            synchronized (this) {
+                if (referenceIdBatcher == null) {
+                    referenceIdBatcher = new LookupBatcher<>(this::resolveReferenceIds, getBatchSize(),
+                            lookupBatchWindowMillis, getScheduler(), task -> getAsyncExecutor().execute(task));
+                }
+                batcher = referenceIdBatcher;
+            }
+        }
+        return batcher;
+    }
+
+    /**
+     * Resolve all Kaltura IDs for each of the given referenceIDs. Unlike {@link #getKalturaIds(List)}, multiple
+     * Kaltura IDs for the same referenceID are all returned.
+     *
+     * @param referenceIds at most {@link #getBatchSize()} referenceIds.
+     * @return a map from {@code referenceID} to all matching {@code kalturaIDs}.
+     * Unresolvable {@code referenceIDs} will not be present in the map.
+     * @throws APIException if the request was unsuccessful.
+     */
+    private Map<String, List<String>> resolveReferenceIds(List<String> referenceIds) throws APIException {
+        Map<String, List<String>> kalturaIds = new HashMap<>(referenceIds.size());
+        searchEntries(referenceIds, this::createReferenceIdItem)
+                .forEach(entry -> kalturaIds.computeIfAbsent(entry.getReferenceId(), key -> new ArrayList<>(1))
+                        .add(entry.getId()));
+        return kalturaIds;
     }
 
     /**
      * Resolve Kaltura IDs for a list of referenceIDs.
+     * <p>
+     * The list can be of any size. It is split into batches of {@link #getBatchSize()}, which are resolved with up to
+     * {@link #setLookupParallelism(int) lookupParallelism} concurrent requests.
      *
      * @param referenceIds a list of {@code referenceIDs}, typically UUIDs from stream filenames.
      * @return a map from {@code referenceID} to {@code kalturaID}.
@@ -176,27 +920,69 @@ public class DsKalturaClient extends DsKalturaClientBase {
             return Collections.emptyMap();
         }
 
-        List<ESearchEntryBaseItem> items = referenceIds.stream()
-                .map(this::createReferenceIdItem)
-                .collect(Collectors.toList());
-        Response<ESearchEntryResponse> response = searchMulti(items);
+        final Map<String, String> pairs = new LinkedHashMap<>(referenceIds.size());
+        IdCache cache = idCache;
+        List<String> uncached = referenceIds;
+        if (cache != null) {
+            uncached = new ArrayList<>(referenceIds.size());
+            for (String referenceId : referenceIds) {
+                IdCache.Lookup cached = cache.getKalturaId(referenceId);
+                if (cached == null) {
+                    uncached.add(referenceId);
+                } else if (!cached.isMissing()) {
+                    pairs.put(referenceId, cached.value);
+                }
+            }
+            if (uncached.isEmpty()) {
+                return pairs;
+            }
+        }
+
+        List<List<BaseEntry>> batchResults = ParallelBatches.run(uncached, getBatchSize(), lookupParallelism,
+                task -> getAsyncExecutor().execute(task), batch -> searchEntries(batch, this::createReferenceIdItem));
 
         // Collect result while checking for duplicates
-        final Map<String, String> pairs = new LinkedHashMap<>(referenceIds.size());
-        response.results.getObjects().stream()
-                .map(ESearchEntryResult::getObject)
+        final Set<String> duplicates = new HashSet<>();
+        batchResults.stream()
+                .flatMap(List::stream)
                 .forEach(entry -> {
                     String previousID;
                     if ((previousID = pairs.put(entry.getReferenceId(), entry.getId())) != null) {
                         log.warn("Warning: referenceID '{}' resolved to multiple kalturaIDs ['{}', '{}']",
                                 entry.getReferenceId(), previousID, entry.getId());
+                        duplicates.add(entry.getReferenceId());
                     }
                 });
+
+        if (cache != null) {
+            for (String referenceId : uncached) {
+                String kalturaId = pairs.get(referenceId);
+                if (kalturaId == null) {
+                    cache.putMissingReferenceId(referenceId);
+                } else if (!duplicates.contains(referenceId)) {
+                    cache.put(referenceId, kalturaId);
+                }
+            }
+        }
         return pairs;
     }
 
+    /**
+     * Asynchronous version of {@link #getKalturaIds(List)}.
+     *
+     * @param referenceIds a list of {@code referenceIDs}, typically UUIDs from stream filenames.
+     * @return a future completing with a map from {@code referenceID} to {@code kalturaID} or exceptionally with an
+     * {@link APIException} as cause.
+     */
+    public CompletableFuture<Map<String, String>> getKalturaIdsAsync(List<String> referenceIds) {
+        return supplyAsync(() -> getKalturaIds(referenceIds));
+    }
+
     /**
      * Resolve referenceIDs for a list of Kaltura IDs.
+     * <p>
+     * The list can be of any size. It is split into batches of {@link #getBatchSize()}, which are resolved with up to
+     * {@link #setLookupParallelism(int) lookupParallelism} concurrent requests.
      *
      * @param kalturaIDs a list of {@code kalturaIDs}.
      * @return a map from {@code kalturaID} to {@code referenceID}.
@@ -209,14 +995,52 @@ public class DsKalturaClient extends DsKalturaClientBase {
             return Collections.emptyMap();
         }
 
-        List<ESearchEntryBaseItem> items = kalturaIDs.stream()
-                .map(this::createKalturaIdItem)
-                .collect(Collectors.toList());
-        Response<ESearchEntryResponse> response = searchMulti(items);
+        final Map<String, String> pairs = new LinkedHashMap<>(kalturaIDs.size());
+        IdCache cache = idCache;
+        List<String> uncached = kalturaIDs;
+        if (cache != null) {
+            uncached = new ArrayList<>(kalturaIDs.size());
+            for (String kalturaID : kalturaIDs) {
+                IdCache.Lookup cached = cache.getReferenceId(kalturaID);
+                if (cached == null) {
+                    uncached.add(kalturaID);
+                } else if (!cached.isMissing()) {
+                    pairs.put(kalturaID, cached.value);
+                }
+            }
+            if (uncached.isEmpty()) {
+                return pairs;
+            }
+        }
 
-        return response.results.getObjects().stream()
-                .map(ESearchEntryResult::getObject)
-                .collect(Collectors.toMap(BaseEntry::getId, BaseEntry::getReferenceId));
+        List<List<BaseEntry>> batchResults = ParallelBatches.run(uncached, getBatchSize(), lookupParallelism,
+                task -> getAsyncExecutor().execute(task), batch -> searchEntries(batch, this::createKalturaIdItem));
+
+        batchResults.stream()
+                .flatMap(List::stream)
+                .forEach(entry -> pairs.put(entry.getId(), entry.getReferenceId()));
+
+        if (cache != null) {
+            for (String kalturaID : uncached) {
+                if (!pairs.containsKey(kalturaID)) {
+                    cache.putMissingKalturaId(kalturaID);
+                } else if (pairs.get(kalturaID) != null) {
+                    cache.putReferenceId(kalturaID, pairs.get(kalturaID));
+                }
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Asynchronous version of {@link #getReferenceIds(List)}.
+     *
+     * @param kalturaIDs a list of {@code kalturaIDs}.
+     * @return a future completing with a map from {@code kalturaID} to {@code referenceID} or exceptionally with an
+     * {@link APIException} as cause.
+     */
+    public CompletableFuture<Map<String, String>> getReferenceIdsAsync(List<String> kalturaIDs) {
+        return supplyAsync(() -> getReferenceIds(kalturaIDs));
     }
 
     /**
@@ -227,41 +1051,149 @@ public class DsKalturaClient extends DsKalturaClientBase {
      * @throws APIException if the remote request failed.
      */
     public List<String> searchTerm(String term) throws APIException {
+        ESearchEntryResponse response = searchPage(List.of(createTermItem(term)), 1);
+        if (response.getTotalCount() > response.getObjects().size()) {
+            log.info("searchTerm('{}') returns the first {} of {} hits. Use searchTermStream to get all hits",
+                    term, response.getObjects().size(), response.getTotalCount());
+        }
+        return response.getObjects().stream()
+                .map(ESearchEntryResult::getObject)
+                .map(BaseEntry::getId)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Simple free form term search in Kaltura, returning the hits in ascending order of creation. The hits are
+     * fetched lazily, one page of {@link #getBatchSize()} hits at a time as the stream is consumed.
+     * <p>
+     * eSearch returns at most the first 10,000 hits of a search. The stream ends there, fewer if the batch size does
+     * not divide 10,000, and the number of hits left out is logged. Use
+     * {@link #streamMediaEntries(MediaEntryFilter)} to get all entries matching a filter.
+     * <p>
+     * eSearch cannot order by ID, so entries created in the same second are ordered by their update time. If such
+     * entries are updated while the stream is consumed they can move between pages, so the IDs returned so far are
+     * kept to leave out repeated hits.
+     * <p>
+     * If a page request fails while the stream is consumed, a {@link RuntimeException} is thrown with the
+     * {@link APIException} as cause.
+     *
+     * @param term a search term, such as {@code dr} or {@code tv avisen}.
+     * @return a stream of Kaltura IDs for matching records, empty if no hits.
+     */
+    public Stream<String> searchTermStream(String term) {
+        List<ESearchEntryBaseItem> items = List.of(createTermItem(term));
+        int maxPages = getMaxSearchPages();
+        Iterator<BaseEntry> entries = new PagedIterator<>(pageIndex -> {
+            if (pageIndex > maxPages) {
+                return new PagedIterator.Page<>(Collections.emptyList(), 0);
+            }
+            ESearchEntryResponse response = searchPage(items, pageIndex);
+            if (pageIndex == maxPages && response.getTotalCount() > maxPages * getBatchSize()) {
+                log.warn("searchTermStream('{}') returns the first {} of {} hits, as eSearch returns at most {} hits",
+                        term, maxPages * getBatchSize(), response.getTotalCount(), ESEARCH_MAX_RESULTS);
+            }
+            return new PagedIterator.Page<>(toEntries(response), response.getTotalCount());
+        });
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(entries,
+                        Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .map(BaseEntry::getId)
+                .distinct();
+    }
+
+    /**
+     * @return the number of pages of {@link #getBatchSize()} hits that can be requested from eSearch before reaching
+     * its limit of 10,000 hits.
+     */
+    private int getMaxSearchPages() {
+        return Math.max(1, ESEARCH_MAX_RESULTS / getBatchSize());
+    }
+
+    private ESearchUnifiedItem createTermItem(String term) {
         ESearchUnifiedItem item = new ESearchUnifiedItem();
         item.setItemType(ESearchItemType.EXACT_MATCH);
         item.searchTerm(term);
+        return item;
+    }
 
-        return searchMulti(List.of(item)).results.getObjects().stream()
-                .map(ESearchEntryResult::getObject)
-                .map(BaseEntry::getId)
+    /**
+     * Search for the entries matching any of the given IDs.
+     *
+     * @param ids        at most {@link #getBatchSize()} IDs.
+     * @param itemFactory creates a search item for an ID.
+     * @return the matching entries.
+     * @throws APIException if the remote request failed.
+     */
+    private List<BaseEntry> searchEntries(List<String> ids, Function<String, ESearchEntryItem> itemFactory)
+            throws APIException {
+        List<ESearchEntryBaseItem> items = ids.stream()
+                .map(itemFactory)
                 .collect(Collectors.toList());
+        return searchMulti(items);
     }
 
     /**
-     * Generic multi search for a list of {@link ESearchEntryBaseItem items},
-     * returning at most {@link #getBatchSize()} results.
+     * Generic multi search for a list of {@link ESearchEntryBaseItem items}, returning all results. Pages of
+     * {@link #getBatchSize()} results are requested until {@code totalCount} results have been received, so hits
+     * are not lost if some of the items match more than one entry. Paging stops at the 10,000 hits eSearch returns at
+     * most, with a warning.
      *
      * @param items at least 1 search item.
-     * @return the response from a Kaltura search for the given items.
+     * @return the entries found by a Kaltura search for the given items.
+     * @throws APIException if the remote request failed.
+     */
+    private List<BaseEntry> searchMulti(List<ESearchEntryBaseItem> items) throws APIException {
+        ESearchEntryResponse response = searchPage(items, 1);
+        List<BaseEntry> entries = toEntries(response);
+        int pageIndex = 2;
+        int maxPages = getMaxSearchPages();
+        while (entries.size() < response.getTotalCount()) {
+            if (pageIndex > maxPages) {
+                log.warn("Got the first {} of {} results for search with {} items, as eSearch returns at most {} hits",
+                        entries.size(), response.getTotalCount(), items.size(), ESEARCH_MAX_RESULTS);
+                break;
+            }
+            ESearchEntryResponse page = searchPage(items, pageIndex++);
+            if (page.getObjects().isEmpty()) {
+                log.warn("Expected {} results but got only {} for search with {} items",
+                        response.getTotalCount(), entries.size(), items.size());
+                break;
+            }
+            entries.addAll(toEntries(page));
+        }
+        return entries;
+    }
+
+    /**
+     * Request a single page of results for a multi search.
+     *
+     * @param items     at least 1 search item.
+     * @param pageIndex the page to request, starting at 1.
+     * @return the response for the page.
      * @throws APIException if the remote request failed.
      */
-    @SuppressWarnings("unchecked")
-    private Response<ESearchEntryResponse> searchMulti(List<ESearchEntryBaseItem> items) throws APIException {
-        Response<?> response = buildAndExecute(getSearchEntryESearchBuilder(items), true);
-        return (Response<ESearchEntryResponse>) response;
+    private ESearchEntryResponse searchPage(List<ESearchEntryBaseItem> items, int pageIndex) throws APIException {
+        return handleRequest(getSearchEntryESearchBuilder(items, pageIndex));
+    }
+
+    private List<BaseEntry> toEntries(ESearchEntryResponse response) {
+        return response.getObjects().stream()
+                .map(ESearchEntryResult::getObject)
+                .collect(Collectors.toCollection(ArrayList::new));
     }
 
     /**
-     * Creates a search entry builder for the given list of ESearchEntryBaseItems.
+     * Creates a search entry builder for a page of results for the given list of ESearchEntryBaseItems.
      *
      * <p>Validates that the list size does not exceed the current batch size limit.
      * Configures search parameters with an OR operator and sets up pagination.</p>
      *
-     * @param items a list of {@link ESearchEntryBaseItem} to search. Must not exceed the batch size limit.
+     * @param items     a list of {@link ESearchEntryBaseItem} to search. Must not exceed the batch size limit.
+     * @param pageIndex the page of results to request, starting at 1.
      * @return an instance of {@link ESearchService.SearchEntryESearchBuilder} configured for the search.
      * @throws IllegalArgumentException if the size of {@code items} exceeds the batch size limit.
      */
-    private ESearchService.SearchEntryESearchBuilder getSearchEntryESearchBuilder(List<ESearchEntryBaseItem> items) {
+    private ESearchService.SearchEntryESearchBuilder getSearchEntryESearchBuilder(List<ESearchEntryBaseItem> items,
+                                                                                  int pageIndex) {
         if (items.size() > getBatchSize()) {
             throw new IllegalArgumentException(
                     "Request for " + items.size() + " items exceeds current limit of " + getBatchSize());
@@ -273,10 +1205,35 @@ public class DsKalturaClient extends DsKalturaClientBase {
         operator.setOperator(ESearchOperatorType.OR_OP);
         searchParams.setSearchOperator(operator);
         operator.setSearchItems(items);
+        searchParams.setOrderBy(createStableOrder());
         FilterPager pager = new FilterPager();
         pager.setPageSize(getBatchSize());
+        pager.setPageIndex(pageIndex);
 
-        return ESearchService.searchEntry(searchParams, pager);
+        // All searches here only use the IDs of the entries found
+        return withProfile(ESearchService.searchEntry(searchParams, pager),
+                lookupResponseProfiles ? ResponseProfiles.forIdLookup() : null);
+    }
+
+    /**
+     * Orders search results by creation and then update time, so that the pages of a search do not overlap or leave
+     * out hits when the results have equal relevance. eSearch has no ID field to order by.
+     *
+     * @return the order for search requests.
+     */
+    private static ESearchOrderBy createStableOrder() {
+        ESearchOrderBy orderBy = new ESearchOrderBy();
+        orderBy.setOrderItems(List.of(
+                createOrderItem(ESearchEntryOrderByFieldName.CREATED_AT),
+                createOrderItem(ESearchEntryOrderByFieldName.UPDATED_AT)));
+        return orderBy;
+    }
+
+    private static ESearchEntryOrderByItem createOrderItem(ESearchEntryOrderByFieldName field) {
+        ESearchEntryOrderByItem item = new ESearchEntryOrderByItem();
+        item.setSortField(field);
+        item.setSortOrder(ESearchSortOrder.ORDER_BY_ASC);
+        return item;
     }
 
     /**
@@ -307,50 +1264,47 @@ public class DsKalturaClient extends DsKalturaClientBase {
         return item;
     }
 
-    /**
-     * Create empty upload token to be filled later.
-     *
-     * @return uploadTokenId of empty uploadToken
-     * @throws APIException If request fails
-     */
-    private String addUploadToken() throws APIException {
-        //Get a token that will allow upload
-        UploadToken uploadToken = new UploadToken();
-        try {
-            UploadToken results = handleRequest(UploadTokenService.add(uploadToken));
-            log.debug("UploadToken '{}' successfully added.", results.getId());
-            return results.getId();
-        } catch (Exception e) {
-            log.warn("Adding uploadToken failed because: '{}'", e.getMessage());
-            throw e;
-        }
-    }
-
     /**
      * Uploads file to Kaltura uploadToken.
      *
      * @param uploadTokenId The uploadToken created beforehand
      * @param filePath      The path of file to be uploaded
+     * @param acknowledged  receives the number of bytes acknowledged by Kaltura during the upload
      * @return The UploadTokenId when upload is complete
      * @throws APIException if request fails
      */
     private String uploadFile(String uploadTokenId, String filePath, MimeType mimeType,
-                              String kalturaFileName) throws APIException,
+                              String kalturaFileName, LongConsumer acknowledged) throws APIException,
             IOException {
-        //Upload the file using the upload token.
-        File fileData = new File(filePath);
-        FileInputStream fileInputStream = new FileInputStream(fileData);
-
-        boolean resume = false;
-        boolean finalChunk = true;
-
-        if (!fileData.exists() & !fileData.canRead()) {
+        Path file = Path.of(filePath);
+        if (!Files.isReadable(file)) {
             throw new IOException(filePath + " not accessible");
         }
+        long size = Files.size(file);
+        long chunkSize = uploadChunkSize;
+        if (chunkSize > 0 && size > chunkSize) {
+            uploadFileChunked(uploadTokenId, filePath, mimeType, kalturaFileName, chunkSize, 0, acknowledged);
+            return uploadTokenId;
+        }
 
-        try {
-            UploadToken results = handleRequest(UploadTokenService.upload(uploadTokenId, fileInputStream,
-                    mimeType.getValue(), kalturaFileName, resume, finalChunk));
+        //Upload the file using the upload token. The file is streamed, so heap usage does not depend on its size
+        boolean resume = false;
+        boolean finalChunk = true;
+        UploadProgress progress = new UploadProgress(filePath, size);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            FileRegionInputStream fileData =
+                    new FileRegionInputStream(channel, 0, size, DirectBufferPool.SHARED, progress,
+                            getUploadRateLimiter());
+            UploadTokenService.UploadUploadTokenBuilder request = UploadTokenService.upload(uploadTokenId, fileData,
+                    mimeType.getValue(), kalturaFileName, size, resume, finalChunk, -1);
+            UploadToken results;
+            try {
+                results = handleRequest(request);
+            } finally {
+                getRequestMetrics().addBytes(getMetricsTag(request), progress.getBytesSent());
+            }
+            progress.done();
+            acknowledged.accept(size);
 
             log.debug("File '{}' uploaded successfully to upload token '{}'.", filePath,
                     results.getId());
@@ -363,19 +1317,167 @@ public class DsKalturaClient extends DsKalturaClientBase {
     }
 
     /**
-     * Adds en Entry to Kaltura containing only metadata.
+     * Uploads the file to the upload token in chunks, starting at {@code startOffset}.
+     *
+     * @param uploadTokenId   the upload token created beforehand.
+     * @param filePath        the path of file to be uploaded.
+     * @param chunkSize       the maximum number of bytes in a chunk.
+     * @param startOffset     the number of bytes already uploaded to the token.
+     * @param acknowledged    receives the number of bytes acknowledged by Kaltura during the upload.
+     * @throws APIException if a chunk failed after retries.
+     * @throws IOException  if the file could not be read.
+     */
+    private void uploadFileChunked(String uploadTokenId, String filePath, MimeType mimeType, String kalturaFileName,
+                                   long chunkSize, long startOffset, LongConsumer acknowledged)
+            throws APIException, IOException {
+        log.debug("Uploading '{}' to upload token '{}' in chunks of {} bytes from offset {} with parallelism {}",
+                filePath, uploadTokenId, chunkSize, startOffset, uploadParallelism);
+        ChunkedUpload upload = new ChunkedUpload(Path.of(filePath), chunkSize, CHUNK_MAX_RETRIES,
+                CHUNK_RETRY_DELAY_MILLIS,
+                (data, length, resume, finalChunk, resumeAt) -> {
+                    UploadTokenService.UploadUploadTokenBuilder request = UploadTokenService.upload(uploadTokenId,
+                            data, mimeType.getValue(), kalturaFileName, length, resume, finalChunk, resumeAt);
+                    try {
+                        return toOffset(handleRequest(request));
+                    } finally {
+                        getRequestMetrics().addBytes(getMetricsTag(request), length);
+                    }
+                },
+                () -> toOffset(getUploadToken(uploadTokenId)),
+                uploadParallelism, getAsyncExecutor());
+        upload.setAcknowledgedListener(acknowledged);
+        upload.setRateLimiter(getUploadRateLimiter());
+        try {
+            upload.upload(startOffset);
+            log.debug("File '{}' uploaded successfully to upload token '{}'.", filePath, uploadTokenId);
+        } catch (APIException e) {
+            log.warn("Failed to upload file '{}' to upload token '{}' because: '{}'. The upload can be resumed " +
+                    "with resumeUploadMedia", filePath, uploadTokenId, e.getMessage());
+            throw e;
+        }
+    }
+
+    private UploadToken getUploadToken(String uploadTokenId) throws APIException {
+        return handleRequest(UploadTokenService.get(uploadTokenId));
+    }
+
+    /**
+     * @return the number of bytes acknowledged for the upload token or -1 if unknown.
+     */
+    private static long toOffset(UploadToken uploadToken) {
+        return uploadToken.getUploadedFileSize() == null ? -1 : uploadToken.getUploadedFileSize().longValue();
+    }
+
+    /**
+     * Creates an upload token and an entry containing only metadata, with the upload token attached as content, in a
+     * single multirequest. The request for attaching the token refers to the results of the first two requests with
+     * result tokens. Kaltura processes the entry when the file has been uploaded to the token.
      *
      * @param mediaType   Intended type of media. Either MediaType.AUDIO or MediaType.VIDEO
      * @param title       Title of video/audio
      * @param description description
      * @param referenceId Id external from Kaltura
      * @param tag         Tags on Entry. Used for ease of searching and grouping of entries within KMC.
-     * @return EntryId
-     * @throws APIException if request fails
+     * @param listener    receives the steps that succeeded.
+     * @return the IDs of the upload token and the entry
+     * @throws APIException if one of the requests fails
+     */
+    private UploadTarget addUploadTokenAndEntry(MediaType mediaType, String title, String description,
+                                                String referenceId, String tag, Integer conversionProfileId,
+                                                UploadListener listener) throws APIException {
+        UploadedFileTokenResource resource = new UploadedFileTokenResource();
+        resource.setToken("{1:result:id}");
+        MultiRequestBuilder requestBuilder = UploadTokenService.add(new UploadToken())
+                .add(MediaService.add(createEntry(mediaType, title, description, referenceId, tag,
+                        conversionProfileId)))
+                .add(MediaService.addContent("{2:result:id}", resource));
+        List<Object> results = handleRequest(requestBuilder);
+
+        if (results.get(0) instanceof APIException) {
+            APIException e = (APIException) results.get(0);
+            log.warn("Adding uploadToken failed because: '{}'", e.getMessage());
+            throw e;
+        }
+        String uploadTokenId = ((UploadToken) results.get(0)).getId();
+        log.debug("UploadToken '{}' successfully added.", uploadTokenId);
+
+        String entryId = checkEntryAndContent(results, 1, uploadTokenId, referenceId, listener);
+        return new UploadTarget(uploadTokenId, entryId);
+    }
+
+    /**
+     * Creates an entry containing only metadata, with an existing upload token attached as content, in a single
+     * multirequest.
+     *
+     * @return the ID of the entry
+     * @throws APIException if one of the requests fails
+     */
+    private String addEntryForUploadToken(String uploadTokenId, MediaType mediaType, String title,
+                                          String description, String referenceId, String tag,
+                                          Integer conversionProfileId, UploadListener listener)
+            throws APIException {
+        UploadedFileTokenResource resource = new UploadedFileTokenResource();
+        resource.setToken(uploadTokenId);
+        MultiRequestBuilder requestBuilder = MediaService.add(createEntry(mediaType, title, description, referenceId,
+                        tag, conversionProfileId))
+                .add(MediaService.addContent("{1:result:id}", resource));
+        return checkEntryAndContent(handleRequest(requestBuilder), 0, uploadTokenId, referenceId, listener);
+    }
+
+    /**
+     * Attaches an upload token as content to an existing entry, which was created by an upload where attaching the
+     * token failed.
+     */
+    private void attachUploadToken(String uploadTokenId, String entryId, String referenceId,
+                                   UploadListener listener) throws APIException {
+        UploadedFileTokenResource resource = new UploadedFileTokenResource();
+        resource.setToken(uploadTokenId);
+        try {
+            handleRequest(MediaService.addContent(entryId, resource));
+        } catch (APIException e) {
+            log.warn("UploadToken '{}' was not added to entry '{}' because: '{}'", uploadTokenId, entryId,
+                    e.getMessage());
+            throw e;
+        }
+        log.info("Attached upload token '{}' to entry '{}'", uploadTokenId, entryId);
+        listener.entryCreated(referenceId, uploadTokenId, entryId, true);
+    }
+
+    /**
+     * Checks the results of adding an entry and attaching an upload token to it in a multirequest, logging the step
+     * that failed, if any.
+     *
+     * @param results    the results of the multirequest.
+     * @param entryIndex the index of the result of adding the entry. Attaching the upload token must be next.
+     * @param listener   receives the steps that succeeded.
+     * @return the ID of the entry
+     * @throws APIException if one of the requests failed
      */
-    private String addEmptyEntry(MediaType mediaType, String title, String description, String referenceId,
-                                 String tag, Integer conversionProfileId) throws APIException {
-        //Create entry with meta data
+    private String checkEntryAndContent(List<Object> results, int entryIndex, String uploadTokenId,
+                                        String referenceId, UploadListener listener) throws APIException {
+        if (results.get(entryIndex) instanceof APIException) {
+            APIException e = (APIException) results.get(entryIndex);
+            log.warn("Failed to add entry with reference ID '{}' because: '{}'", referenceId,
+                    e.getMessage());
+            listener.tokenCreated(referenceId, uploadTokenId);
+            throw e;
+        }
+        String entryId = ((MediaEntry) results.get(entryIndex)).getId();
+        log.debug("Added entry '{}' successfully.", entryId);
+
+        if (results.get(entryIndex + 1) instanceof APIException) {
+            APIException e = (APIException) results.get(entryIndex + 1);
+            log.warn("UploadToken '{}' was not added to entry '{}' because: '{}'", uploadTokenId, entryId,
+                    e.getMessage());
+            listener.entryCreated(referenceId, uploadTokenId, entryId, false);
+            throw e;
+        }
+        listener.entryCreated(referenceId, uploadTokenId, entryId, true);
+        return entryId;
+    }
+
+    private MediaEntry createEntry(MediaType mediaType, String title, String description, String referenceId,
+                                   String tag, Integer conversionProfileId) {
         MediaEntry entry = new MediaEntry();
         entry.setMediaType(mediaType);
         entry.setName(title);
@@ -386,63 +1488,50 @@ public class DsKalturaClient extends DsKalturaClientBase {
         if (tag != null) {
             entry.setTags(tag);
         }
+        return entry;
+    }
 
-        try {
-            MediaEntry results = handleRequest(MediaService.add(entry));
-            log.debug("Added entry '{}' successfully.", results.getId());
-            return results.getId();
-        } catch (APIException e) {
-            log.warn("Failed to add entry with reference ID '{}' because: '{}'", referenceId,
-                    e.getMessage());
-            throw e;
+    /**
+     * Registers an upload that has been completed for the ID cache. It was added to the conversion queue estimate when
+     * admitted by {@link #conversionQueueCheckAndWait()}.
+     */
+    private void registerUpload(String referenceId) {
+        IdCache cache = idCache;
+        if (cache != null) {
+            cache.invalidateReferenceId(referenceId); // Might be cached as missing
         }
     }
 
-
     /**
-     * Adds content from an uploadToken to an Entry and return entryId. If flavorParamID is not
-     * null,
-     * content is added to specified flavor within the Entry. If FlavorParamID is null content is added as source
-     * flavor.
-     *
-     * @param uploadtokenId Upload token with content
-     * @param entryId       Entry to receive content
-     * @return EntryId of updated entry
-     * @throws APIException if request fails
+     * Used when no listener is given for an upload.
      */
-    private String addUploadTokenToEntry(String uploadtokenId, String entryId)
-            throws APIException {
-
-        //Connect uploaded file with meta data entry
-        UploadedFileTokenResource resource = new UploadedFileTokenResource();
-        resource.setToken(uploadtokenId);
-        AddContentMediaBuilder requestBuilder;
+    private static final UploadListener NO_LISTENER = new UploadListener() {
+    };
 
-        requestBuilder = MediaService.addContent(entryId, resource);
+    /**
+     * The upload token and entry created for an upload.
+     */
+    private static final class UploadTarget {
+        final String uploadTokenId;
+        final String entryId;
 
-        try {
-            return handleRequest(requestBuilder).getId();
-        } catch (APIException e) {
-            log.warn("UploadToken '{}' was not added to entry '{}' because: '{}'", uploadtokenId, entryId,
-                    e.getMessage());
-            throw e;
+        UploadTarget(String uploadTokenId, String entryId) {
+            this.uploadTokenId = uploadTokenId;
+            this.entryId = entryId;
         }
     }
 
     /**
      * Upload a video or audio file to Kaltura.
-     * The upload require 4 API calls to Kaltura
+     * The upload requires 2 round trips to Kaltura
      * <p><ul>
-     * <li> Request a upload token
-     * <li> Upload file using the upload token. Get a tokenID for the upload
-     * <li> Create the metadata record in Kaltura
-     * <li> Connect the metadata record with the tokenID
-     * </ul><p>
-     * <p>
+     * <li> A multirequest that requests an upload token, creates the metadata record in Kaltura and connects the
+     * metadata record with the upload token
+     * <li> Upload file using the upload token, in chunks if {@link #setUploadChunkSize(long)} is set
      * </ul><p>
-     * <p>
-     * If there for some reason happens an error after the file is uploaded and not connected to the metadata record, it does not
-     * seem possible to later see the file in the kaltura administration gui. This error has only happened because I forced it.
+     * Kaltura processes the record when the upload is complete. If the upload fails, the metadata record exists
+     * without content. The upload can then be completed with {@link #resumeUploadMedia} using the logged upload
+     * token ID.
      *
      * @param filePath            File path to the media file to upload.
      * @param referenceId         Use our internal ID's there. This referenceId can be used to find the record at Kaltura and also map to internal KalturaId.
@@ -462,6 +1551,23 @@ public class DsKalturaClient extends DsKalturaClientBase {
                               String title, String description, String tag,
                               FileExtension fileExtension, @Nullable Integer conversionProfileId)
             throws IOException, APIException {
+        return uploadMedia(filePath, referenceId, mediaType, title, description, tag, fileExtension,
+                conversionProfileId, null);
+    }
+
+    /**
+     * Upload a video or audio file to Kaltura as {@link #uploadMedia(String, String, MediaType, String, String, String,
+     * FileExtension, Integer)}, reporting the steps of the upload to a listener.
+     *
+     * @param listener optional receiver of the upload steps, e.g. an {@link UploadJournal}.
+     * @return The internal id for the Kaltura record. Example format: '0_jqmzfljb'
+     */
+    public String uploadMedia(String filePath, String referenceId, MediaType mediaType,
+                              String title, String description, String tag,
+                              FileExtension fileExtension, @Nullable Integer conversionProfileId,
+                              @Nullable UploadListener listener)
+            throws IOException, APIException {
+        UploadListener steps = listener == null ? NO_LISTENER : listener;
 
         if (referenceId == null) {
             throw new IllegalArgumentException("referenceId must be defined");
@@ -474,61 +1580,154 @@ public class DsKalturaClient extends DsKalturaClientBase {
             throw new IllegalArgumentException("fileExtension must be defined");
         }
 
-        conversionQueueCheckAndWait();
-
         FileExtension.checkExtension(filePath, fileExtension);
-
-        MimeType mimeType = MimeType.fromFileExtension(fileExtension);
-        String kalturaFileName = referenceId + fileExtension.getExtension();
-
-        String uploadTokenId = addUploadToken();
-        uploadFile(uploadTokenId, filePath, mimeType, kalturaFileName);
-        String entryId = addEmptyEntry(mediaType, title, description, referenceId, tag, conversionProfileId);
-        addUploadTokenToEntry(uploadTokenId, entryId);
-        estimatedQueueLength++; // Add 1 to conversion queue
-        return entryId;
+        conversionQueueCheckAndWait();
+        UploadTarget target;
+        try {
+            MimeType mimeType = MimeType.fromFileExtension(fileExtension);
+            String kalturaFileName = referenceId + fileExtension.getExtension();
+
+            steps.uploadStarting(referenceId);
+            target = addUploadTokenAndEntry(mediaType, title, description, referenceId, tag,
+                    conversionProfileId, steps);
+            log.info("Uploading '{}' with referenceId '{}' to upload token '{}' for entry '{}'",
+                    filePath, referenceId, target.uploadTokenId, target.entryId);
+            uploadFile(target.uploadTokenId, filePath, mimeType, kalturaFileName,
+                    bytes -> steps.bytesAcknowledged(referenceId, target.uploadTokenId, bytes));
+        } catch (IOException | APIException | RuntimeException e) {
+            conversionQueue.release(); // Did not reach the conversion queue
+            throw e;
+        }
+        // The entry is in the conversion queue now, so it keeps its place even if the listener fails
+        registerUpload(referenceId);
+        steps.uploaded(referenceId, target.uploadTokenId, target.entryId);
+        return target.entryId;
     }
 
+    /**
+     * Continue an upload started by {@link #uploadMedia} that was interrupted, e.g. by a process restart. The upload
+     * token ID is logged by {@code uploadMedia} when the upload starts.
+     * <p>
+     * The bytes not yet acknowledged by Kaltura are uploaded, in chunks if {@link #setUploadChunkSize(long)} is set.
+     * If the upload token is not attached to an entry yet, the entry is created as by {@code uploadMedia}. Kaltura
+     * removes upload tokens that have been unused for a while, so the upload must be resumed within hours.
+     *
+     * @param uploadTokenId       the upload token of the interrupted upload.
+     * @param filePath            File path to the media file to upload. Must be the same file as for the upload.
+     * @param referenceId         Use our internal ID's there. This referenceId can be used to find the record at
+     *                            Kaltura and also map to internal KalturaId.
+     * @param mediaType           MediaType.AUDIO or MediaType.VIDEO
+     * @param title               Name/titel for the resource in Kaltura
+     * @param description         Optional description
+     * @param tag                 Optional tag.
+     * @param fileExtension       file extension appended to filename if not present in filepath when uploading to
+     *                            Kaltura
+     * @param conversionProfileId Optional conversionProfileId that match conversion/transcoding profile in Kaltura.
+     * @return The internal id for the Kaltura record. Example format: '0_jqmzfljb'
+     * @throws IOException           if the file could not be read.
+     * @throws IllegalStateException if the upload token can no longer be used.
+     * @throws APIException          Thrown when API request goes wrong.
+     */
+    public String resumeUploadMedia(String uploadTokenId, String filePath, String referenceId, MediaType mediaType,
+                                    String title, String description, String tag,
+                                    FileExtension fileExtension, @Nullable Integer conversionProfileId)
+            throws IOException, APIException {
+        return resumeUploadMedia(uploadTokenId, null, filePath, referenceId, mediaType, title, description, tag,
+                fileExtension, conversionProfileId, null);
+    }
 
     /**
-     * Checks the conversionQueue and waits if too long. This method first looks at the estimated queue and only
-     * checks the actual queue length if the estimated queue surpasses the conversionQueueThreshold. If so, it
-     * updates the estimatedQueueLength with the actual queueLength.
+     * Continue an interrupted upload as {@link #resumeUploadMedia(String, String, String, MediaType, String, String,
+     * String, FileExtension, Integer)}, reporting the steps of the upload to a listener.
+     * <p>
+     * If the upload token is not attached to an entry and {@code entryId} is given, the token is attached to that
+     * entry instead of creating a new one. This is for entries created by an upload where attaching the token failed.
      *
-     * @throws APIException     If Api request fails.
-     * @throws RuntimeException is thrown if the queue length keeps being full after {@value MAX_RETRY_COUNT}
+     * @param uploadTokenId the upload token of the interrupted upload.
+     * @param entryId       optional entry created for the upload token by the interrupted upload.
+     * @param listener      optional receiver of the upload steps, e.g. an {@link UploadJournal}.
+     * @return The internal id for the Kaltura record. Example format: '0_jqmzfljb'
      */
-    private void conversionQueueCheckAndWait() throws APIException {
-        if (estimatedQueueLength < conversionQueueThreshold) {
-            return;
+    public String resumeUploadMedia(String uploadTokenId, @Nullable String entryId, String filePath,
+                                    String referenceId, MediaType mediaType, String title, String description,
+                                    String tag, FileExtension fileExtension, @Nullable Integer conversionProfileId,
+                                    @Nullable UploadListener listener)
+            throws IOException, APIException {
+        UploadListener steps = listener == null ? NO_LISTENER : listener;
+        if (referenceId == null) {
+            throw new IllegalArgumentException("referenceId must be defined");
         }
+        if (mediaType == null) {
+            throw new IllegalArgumentException("Kaltura mediaType must be defined");
+        }
+        if (fileExtension == null) {
+            throw new IllegalArgumentException("fileExtension must be defined");
+        }
+        FileExtension.checkExtension(filePath, fileExtension);
+        conversionQueueCheckAndWait();
 
-        int retryCount = 1;
-        while (retryCount <= MAX_RETRY_COUNT) {
-            estimatedQueueLength = getConversionQueueLength(); // update estimated with actual queue length from Kaltura
-            if (estimatedQueueLength < conversionQueueThreshold) {
-                return;
+        String attachedEntryId;
+        try {
+            UploadToken uploadToken = getUploadToken(uploadTokenId);
+            UploadTokenStatus status = uploadToken.getStatus();
+            if (status == UploadTokenStatus.PENDING || status == UploadTokenStatus.PARTIAL_UPLOAD) {
+                long uploaded = Math.max(0, toOffset(uploadToken));
+                long size = Files.size(Path.of(filePath));
+                log.info("Resuming upload of '{}' to upload token '{}' at {}/{} bytes", filePath, uploadTokenId,
+                        uploaded, size);
+                long chunkSize = uploadChunkSize > 0 ? uploadChunkSize : Long.MAX_VALUE;
+                uploadFileChunked(uploadTokenId, filePath, MimeType.fromFileExtension(fileExtension),
+                        referenceId + fileExtension.getExtension(), chunkSize, uploaded,
+                        bytes -> steps.bytesAcknowledged(referenceId, uploadTokenId, bytes));
+            } else if (status == UploadTokenStatus.FULL_UPLOAD ||
+                    (status == UploadTokenStatus.CLOSED && uploadToken.getAttachedObjectId() != null)) {
+                // Tokens attached to an entry are closed when the upload is complete
+                log.info("Upload token '{}' already holds all of '{}'", uploadTokenId, filePath);
+            } else {
+                throw new IllegalStateException("Upload token '" + uploadTokenId + "' for '" + filePath +
+                        "' can not be resumed as its status is " + status);
             }
-
-            log.info("Kaltura Conversion Queue (conversionQueueLength: {}), larger than threshold"
-                            + "(conversionQueueThreshold: {}), retry {} in {} seconds",
-                    estimatedQueueLength,
-                    conversionQueueThreshold,
-                    retryCount,
-                    conversionQueueRetryDelaySeconds);
-
-            try {
-                TimeUnit.SECONDS.sleep(conversionQueueRetryDelaySeconds);
-            } catch (InterruptedException ie) {
-                log.error("Thread was interrupted while waiting for Kaltura conversion queue to decrease");
-                Thread.currentThread().interrupt();
+            attachedEntryId = uploadToken.getAttachedObjectId();
+            if (attachedEntryId != null && !attachedEntryId.isEmpty()) {
+                log.info("Upload token '{}' is attached to entry '{}'", uploadTokenId, attachedEntryId);
+            } else if (entryId != null) {
+                attachUploadToken(uploadTokenId, entryId, referenceId, steps);
+                attachedEntryId = entryId;
+            } else {
+                attachedEntryId = addEntryForUploadToken(uploadTokenId, mediaType, title, description, referenceId, tag,
+                        conversionProfileId, steps);
             }
-
-            retryCount++;
+        } catch (IOException | APIException | RuntimeException e) {
+            conversionQueue.release(); // Did not reach the conversion queue
+            throw e;
         }
+        // The entry is in the conversion queue now, so it keeps its place even if the listener fails
+        registerUpload(referenceId);
+        steps.uploaded(referenceId, uploadTokenId, attachedEntryId);
+        return attachedEntryId;
+    }
+
 
-        throw new RuntimeException("Maximum retry count (" + MAX_RETRY_COUNT + ") was reached while waiting for " +
-                "conversion queue");
+    /**
+     * Waits until the conversion queue has room for an upload and counts the upload as added to it. The wait is
+     * shared with all other upload threads of the client: the queue is measured by a single background task while
+     * it is near the conversionQueueThreshold, and uploads are admitted at the rate Kaltura converts entries.
+     * The upload must be taken back with {@code conversionQueue.release()} if it fails.
+     *
+     * @throws RuntimeException is thrown if the queue stays full without decreasing for {@value MAX_RETRY_COUNT}
+     *                          measurements
+     */
+    private void conversionQueueCheckAndWait() {
+        conversionQueue.acquire();
+    }
+
+    /**
+     * Stops the conversion queue monitor, failing uploads waiting for the queue, and closes the client.
+     */
+    @Override
+    public void close() {
+        conversionQueue.close();
+        super.close();
     }
 
     /**
@@ -20,15 +20,60 @@ import javax.annotation.Nullable;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
-
-public abstract class DsKalturaClientBase {
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Maintains a Kaltura session and generically builds, sends and unpacks API requests.
+ * <p>
+ * The Kaltura session (KS) is renewed by a background thread before {@code sessionKeepAliveSeconds} runs out. A new
+ * session is always created on a fresh {@link Client} and swapped in when ready, so request threads only perform a
+ * volatile read and never block on session creation. Only if the background refresh has failed for long enough to
+ * put the session at risk of expiring will a request thread refresh the session itself.
+ * <p>
+ * Requests can also be run asynchronously with {@link #handleRequestAsync(BaseRequestBuilder)}, using a bounded
+ * executor with at most {@link #DEFAULT_ASYNC_PARALLELISM} concurrent requests, adjustable with
+ * {@link #setAsyncParallelism(int)}. When too many requests are waiting for the executor, the calling thread sends
+ * the request itself, so the asynchronous methods then block until it is done. After {@link #close()} they throw a
+ * {@link RejectedExecutionException}.
+ * <p>
+ * Requests that only read are retried with exponential backoff after transient failures, and a request with a
+ * rejected session is sent again once after refreshing the session, see {@link RetryPolicy}. A
+ * {@link CircuitBreaker} stops requests for a while when many recent requests have failed. Optional
+ * {@link RateLimiter}s limit the rate of requests and of upload data. Latencies and errors per request tag are
+ * recorded in the {@link #getRequestMetrics() request metrics}.
+ * <p>
+ * Call {@link #close()} when the client is no longer needed to stop the background refresher and executor.
+ */
+public abstract class DsKalturaClientBase implements AutoCloseable {
 
     // Kaltura-default: 30, maximum 500: https://developer.kaltura.com/api-docs/service/eSearch/action/searchEntry
     public static final int MAX_BATCH_SIZE = 500;
     public static final int MIN_BATCH_SIZE = 1;
+    public static final int DEFAULT_ASYNC_PARALLELISM = 8;
+    // The default circuit breaker opens for 30 seconds when half of the last 50 requests failed
+    public static final int DEFAULT_BREAKER_WINDOW = 50;
+    public static final int DEFAULT_BREAKER_MINIMUM_REQUESTS = 20;
+    public static final double DEFAULT_BREAKER_FAILURE_RATE = 0.5;
+    public static final Duration DEFAULT_BREAKER_OPEN_DURATION = Duration.ofSeconds(30);
+    public static final Duration DEFAULT_METRICS_SUMMARY_INTERVAL = Duration.ofMinutes(15);
 
 
     static {
@@ -36,8 +81,20 @@ public abstract class DsKalturaClientBase {
         System.setProperty("log4j2.loggerContextFactory", "org.apache.logging.log4j.simple.SimpleLoggerContextFactory");
     }
 
-    private Client client = null; //Client having a Kaltura session  that can be reused between API calls.
+    // Delay before retrying a failed background session refresh
+    private static final int SESSION_REFRESH_RETRY_SECONDS = 60;
+    private static final Pattern ACTION = Pattern.compile("/action/([^/?]+)");
+    // Distinguishes the request metrics of clients in the same JVM
+    private static final AtomicInteger CLIENT_COUNT = new AtomicInteger();
+
     static final Logger log = LoggerFactory.getLogger(DsKalturaClientBase.class);
+    private volatile Session session = null; //Client having a Kaltura session that can be reused between API calls.
+    // Held while starting a new session, so that the client itself is never locked during the request
+    private final Object sessionRefreshLock = new Object();
+    private final ScheduledExecutorService scheduler; // Background session refresh and other light periodic tasks
+    private volatile ExecutorService asyncExecutor = null; // Created when first needed
+    private int asyncParallelism = DEFAULT_ASYNC_PARALLELISM;
+    private boolean closed = false; // Guarded by this
     private final String kalturaUrl;
     private final String userId;
     private final int partnerId;
@@ -45,9 +102,21 @@ public abstract class DsKalturaClientBase {
     private final String tokenId;
     private final String adminSecret;
     private final int sessionKeepAliveSeconds;
-    private long lastSessionStart = 0;
+    private final int sessionRefreshThreshold;
     private final int sessionDurationSeconds;
-    private int batchSize;
+    private final KalturaSessionCache sessionCache;
+    private volatile int batchSize;
+    private volatile RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+    private volatile CircuitBreaker circuitBreaker = new CircuitBreaker(DEFAULT_BREAKER_WINDOW,
+            DEFAULT_BREAKER_MINIMUM_REQUESTS, DEFAULT_BREAKER_FAILURE_RATE, DEFAULT_BREAKER_OPEN_DURATION);
+    private volatile RateLimiter requestRateLimiter = null;
+    private volatile RateLimiter uploadRateLimiter = null;
+    private volatile APIOkRequestsExecutor requestsExecutor = null; // null means the shared executor of the SDK
+    private final RequestMetrics metrics;
+    private ScheduledFuture<?> metricsSummary = null; // Guarded by this
+    private long callsAtLastSummary = 0; // Only used by the scheduler
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong sessionRefreshRetries = new AtomicLong();
 
     /**
      * Instantiate a session to Kaltura that can be used. The sessions can be reused between Kaltura calls without
@@ -66,14 +135,40 @@ public abstract class DsKalturaClientBase {
     public DsKalturaClientBase(String kalturaUrl, String userId, int partnerId, String token, String tokenId,
                                String adminSecret, int sessionDurationSeconds, int sessionRefreshThreshold,
                                int batchSize) throws APIException {
+        this(kalturaUrl, userId, partnerId, token, tokenId, adminSecret, sessionDurationSeconds,
+                sessionRefreshThreshold, batchSize, null);
+    }
+
+    /**
+     * Instantiate a session to Kaltura that can be used. The sessions can be reused between Kaltura calls without
+     * authenticating again. Either a token/tokenId a adminSecret must be provided for authentication.
+     *
+     * @param kalturaUrl              The Kaltura API url. Using the baseUrl will automatic append the API service part to the URL.
+     * @param userId                  The userId that must be defined in the kaltura, userId is email xxx@kb.dk in our kaltura
+     * @param partnerId               The partner id for kaltura. Kind of a collectionId.
+     * @param token                   The application token used for generating client sessions
+     * @param tokenId                 The id of the application token
+     * @param adminSecret             The adminsecret used as password for authenticating. Must not be shared.
+     * @param sessionDurationSeconds  The duration of Kaltura Session in seconds. Beware that when using AppTokens
+     *                                this might have an upper bound tied to the AppToken.
+     * @param sessionRefreshThreshold The threshold in seconds for session renewal.
+     * @param sessionCache            Optional cache of sessions shared between processes. If a cached session is
+     *                                still within its keep-alive time, it is used instead of authenticating again.
+     */
+    public DsKalturaClientBase(String kalturaUrl, String userId, int partnerId, String token, String tokenId,
+                               String adminSecret, int sessionDurationSeconds, int sessionRefreshThreshold,
+                               int batchSize, @Nullable KalturaSessionCache sessionCache) throws APIException {
+        this.sessionCache = sessionCache;
         this.sessionDurationSeconds = sessionDurationSeconds;
         this.sessionKeepAliveSeconds = sessionDurationSeconds - sessionRefreshThreshold;
+        this.sessionRefreshThreshold = sessionRefreshThreshold;
         this.kalturaUrl = kalturaUrl;
         this.userId = userId;
         this.token = token;
         this.tokenId = tokenId;
         this.adminSecret = adminSecret;
         this.partnerId = partnerId;
+        this.metrics = new RequestMetrics(partnerId + "-" + CLIENT_COUNT.incrementAndGet(), true);
         setBatchSize(batchSize);
 
         if (sessionKeepAliveSeconds < 600) { //Enforce some kind of reuse of session since authenticating sessions
@@ -81,7 +176,19 @@ public abstract class DsKalturaClientBase {
             throw new IllegalArgumentException("The difference between the configured sessionDurationSeconds and " +
                     "sessionRefreshThreshold (SessionKeepAliveSession) must be at least 600 seconds (10 minutes) ");
         }
-        initializeKalturaClient();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "KalturaScheduler_" + partnerId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            initializeKalturaClient();
+        } catch (APIException | RuntimeException e) {
+            scheduler.shutdownNow();
+            metrics.close();
+            throw e;
+        }
+        setMetricsSummaryInterval(DEFAULT_METRICS_SUMMARY_INTERVAL);
     }
 
     protected int getBatchSize() {
@@ -97,7 +204,103 @@ public abstract class DsKalturaClientBase {
     }
 
     /**
-     * Builds and executes a request using the specified request builder.
+     * Set the maximum number of requests running at the same time when using the asynchronous methods. Requests
+     * already submitted finish on the previous executor.
+     *
+     * @param parallelism maximum number of concurrent asynchronous requests. Must be at least 1.
+     */
+    public synchronized void setAsyncParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The async parallelism must be at least 1, but was " + parallelism);
+        }
+        asyncParallelism = parallelism;
+        ExecutorService previous = asyncExecutor;
+        asyncExecutor = null;
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    /**
+     * The scheduler is single threaded and also refreshes the session, so scheduled tasks must be short and should
+     * hand off any requests to {@link #getAsyncExecutor()}.
+     *
+     * @return the scheduler for light background tasks.
+     */
+    protected ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @return the executor for asynchronous requests, creating it if needed.
+     * @throws RejectedExecutionException if the client has been closed.
+     */
+    protected ExecutorService getAsyncExecutor() {
+        ExecutorService executor = asyncExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                if (closed) {
+                    throw new RejectedExecutionException("The Kaltura client has been closed");
+                }
+                if (asyncExecutor == null) {
+                    asyncExecutor = KalturaExecutors.newBoundedExecutor(asyncParallelism, "KalturaAsync_" + partnerId);
+                }
+                executor = asyncExecutor;
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Runs the given call on the executor for asynchronous requests. Exceptions thrown by the call, such as
+     * {@link APIException}, complete the future exceptionally.
+     * <p>
+     * If the queue of the executor is full, the call is run by the calling thread before returning.
+     *
+     * @param call the call to run.
+     * @param <T>  the type of the result.
+     * @return a future completing with the result of the call.
+     * @throws RejectedExecutionException if the client has been closed.
+     */
+    protected <T> CompletableFuture<T> supplyAsync(Callable<T> call) {
+        Supplier<T> supplier = () -> {
+            try {
+                return call.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        };
+        try {
+            return CompletableFuture.supplyAsync(supplier, getAsyncExecutor());
+        } catch (RejectedExecutionException e) {
+            // The executor may have been replaced by setAsyncParallelism after it was looked up
+            return CompletableFuture.supplyAsync(supplier, getAsyncExecutor());
+        }
+    }
+
+    /**
+     * Asynchronous version of {@link #handleRequest(BaseRequestBuilder)}. Errors are wrapped as for the synchronous
+     * version and complete the future exceptionally with the {@link APIException} as cause.
+     * <p>
+     * If more requests are waiting than the executor queues, the request is sent by the calling thread, which then
+     * blocks until it is done. This slows down producers instead of using unbounded memory.
+     *
+     * @param requestBuilder the request builder to create and execute the request
+     * @param <ReturnedType> the type of the response expected from the request
+     * @param <SelfType>     the type of request
+     * @return a future completing with the result of the executed request
+     * @throws RejectedExecutionException if the client has been closed.
+     */
+    public <ReturnedType, SelfType extends BaseRequestBuilder<ReturnedType, SelfType>>
+    CompletableFuture<ReturnedType> handleRequestAsync(SelfType requestBuilder) {
+        return supplyAsync(() -> handleRequest(requestBuilder));
+    }
+
+    /**
+     * Builds and executes a request using the specified request builder, waiting for the
+     * {@link #setRequestRateLimiter(RateLimiter) request rate limit} if needed.
      *
      * @param requestBuilder the request builder to create and execute the request
      * @param refreshSession if true, refresh the session before executing the request
@@ -108,11 +311,104 @@ public abstract class DsKalturaClientBase {
      */
     protected <ReturnedType, SelfType extends BaseRequestBuilder<ReturnedType, SelfType>> Response<?> buildAndExecute(SelfType requestBuilder, boolean refreshSession) throws
             APIException {
-        if (refreshSession) {
-            getClientInstance();
+        acquireRequestPermit(requestBuilder, true);
+        return executeWithSession(requestBuilder, refreshSession);
+    }
+
+    private <ReturnedType, SelfType extends BaseRequestBuilder<ReturnedType, SelfType>> Response<?> executeWithSession(
+            SelfType requestBuilder, boolean refreshSession) throws APIException {
+        Client client = refreshSession ? getClientInstance() : session.client;
+        return execute(requestBuilder, client);
+    }
+
+    /**
+     * Takes a permit for a request from the request rate limiter, if any.
+     *
+     * @param wait if true, wait for the permit. If false, fail if no permit is available now.
+     * @throws APIException if {@code wait} is false and the rate limit has been reached.
+     */
+    private void acquireRequestPermit(BaseRequestBuilder<?, ?> requestBuilder, boolean wait) throws APIException {
+        RateLimiter limiter = requestRateLimiter;
+        if (limiter == null) {
+            return;
+        }
+        if (!wait) {
+            if (!limiter.tryAcquire(1)) {
+                throw new APIException("Request '" + requestBuilder.getTag() + "' was not sent, as the request " +
+                        "rate limit (" + limiter.getPermitsPerSecond() + "/second) has been reached");
+            }
+            return;
+        }
+        try {
+            limiter.acquire(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the Kaltura request rate limit", e);
         }
+    }
+
+    /**
+     * Builds and executes a request against the given client.
+     *
+     * @param requestBuilder the request builder to create and execute the request
+     * @param client         the client holding the Kaltura session to use for the request
+     * @return a Response object containing the results of the executed request
+     */
+    private <ReturnedType, SelfType extends BaseRequestBuilder<ReturnedType, SelfType>> Response<?> execute(
+            SelfType requestBuilder, Client client) {
         RequestElement<ReturnedType> request = requestBuilder.build(client);
-        return APIOkRequestsExecutor.getExecutor().execute(request);
+        long start = System.nanoTime();
+        Response<?> response = null;
+        try {
+            APIOkRequestsExecutor executor = requestsExecutor;
+            response = (executor == null ? APIOkRequestsExecutor.getExecutor() : executor).execute(request);
+            return response;
+        } finally {
+            metrics.record(getMetricsTag(requestBuilder), System.nanoTime() - start,
+                    response != null && response.isSuccess());
+        }
+    }
+
+    /**
+     * @return the tag the request is recorded under in the {@link #getRequestMetrics() request metrics}.
+     */
+    protected static String getMetricsTag(BaseRequestBuilder<?, ?> requestBuilder) {
+        String tag = requestBuilder.getTag();
+        return tag == null ? "unknown" : tag;
+    }
+
+    /**
+     * @return the counts, errors, latencies and upload bytes per request tag for the requests sent by this client.
+     */
+    public RequestMetrics getRequestMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Log a summary of the {@link #getRequestMetrics() request metrics} at regular intervals, if requests have been
+     * sent since the last summary.
+     *
+     * @param interval the time between summaries, or {@link Duration#ZERO} to stop logging summaries.
+     */
+    public synchronized void setMetricsSummaryInterval(Duration interval) {
+        if (metricsSummary != null) {
+            metricsSummary.cancel(false);
+            metricsSummary = null;
+        }
+        if (interval.isZero() || interval.isNegative() || scheduler.isShutdown()) {
+            return;
+        }
+        long millis = interval.toMillis();
+        metricsSummary = scheduler.scheduleAtFixedRate(this::logMetricsSummary, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    private void logMetricsSummary() {
+        long calls = metrics.getAll().stream().mapToLong(RequestMetrics.RequestStats::getCalls).sum();
+        if (calls == callsAtLastSummary) {
+            return;
+        }
+        callsAtLastSummary = calls;
+        log.info("Kaltura requests: {}", metrics.getSummary());
     }
 
     /**
@@ -132,6 +428,9 @@ public abstract class DsKalturaClientBase {
 
     /**
      * Handles a request using the specified request builder with options to refresh the session.
+     * <p>
+     * Failed requests are retried as decided by the {@link #setRetryPolicy(RetryPolicy) retry policy}, and requests
+     * fail at once without being sent while the {@link #setCircuitBreaker(CircuitBreaker) circuit breaker} is open.
      *
      * @param requestBuilder the request builder to create and execute the request
      * @param refreshSession if true, refresh the session before executing the request
@@ -141,13 +440,212 @@ public abstract class DsKalturaClientBase {
      * @throws APIException          if an API error occurs during the request execution
      * @throws IllegalStateException if the request builder type is null
      */
-    @SuppressWarnings("unchecked")
     protected <ReturnedType, SelfType extends BaseRequestBuilder<ReturnedType, SelfType>>
     ReturnedType handleRequest(SelfType requestBuilder, boolean refreshSession)
             throws APIException {
-        try {
-            Response<?> response = buildAndExecute(requestBuilder, refreshSession);
+        return handleRequest(requestBuilder, refreshSession, true);
+    }
 
+    /**
+     * Version of {@link #handleRequest(BaseRequestBuilder)} for latency sensitive requests, such as lookups for a
+     * user, that fails at once instead of waiting when the {@link #setRequestRateLimiter(RateLimiter) request rate
+     * limit} has been reached. Transient failures are not retried, as a retry would wait.
+     *
+     * @param requestBuilder the request builder to create and execute the request
+     * @param <ReturnedType> the type of the response expected from the request
+     * @param <SelfType>     the type of request
+     * @return the result of the executed request
+     * @throws APIException if the rate limit has been reached or an API error occurs during the request execution
+     */
+    public <ReturnedType, SelfType extends BaseRequestBuilder<ReturnedType, SelfType>>
+    ReturnedType handleRequestWithoutWaiting(SelfType requestBuilder) throws APIException {
+        return handleRequest(requestBuilder, true, false);
+    }
+
+    private <ReturnedType, SelfType extends BaseRequestBuilder<ReturnedType, SelfType>>
+    ReturnedType handleRequest(SelfType requestBuilder, boolean refreshSession, boolean wait)
+            throws APIException {
+        RetryPolicy policy = wait ? retryPolicy : RetryPolicy.NONE;
+        CircuitBreaker breaker = circuitBreaker;
+        boolean sessionRetried = false;
+        for (int attempt = 1; ; attempt++) {
+            // Before the breaker, which must not hand out its half open probe to a request that is not sent
+            acquireRequestPermit(requestBuilder, wait);
+            if (breaker != null && !breaker.tryAcquire()) {
+                throw new APIException("Request '" + requestBuilder.getTag() + "' was not sent, as the circuit " +
+                        "breaker is open after too many failed requests to Kaltura");
+            }
+            Session used = session;
+            APIException error;
+            RetryPolicy.ErrorType type;
+            boolean outcomeRecorded = false;
+            try {
+                ReturnedType result = unpackResponse(requestBuilder,
+                        executeWithSession(requestBuilder, refreshSession));
+                if (breaker != null) {
+                    breaker.recordSuccess();
+                }
+                outcomeRecorded = true;
+                return result;
+            } catch (APIException e) {
+                error = e;
+                type = RetryPolicy.classify(error);
+                if (breaker != null) {
+                    if (type == RetryPolicy.ErrorType.TRANSIENT) {
+                        breaker.recordFailure();
+                    } else {
+                        breaker.recordSuccess(); // Kaltura answered
+                    }
+                }
+                outcomeRecorded = true;
+            } finally {
+                if (breaker != null && !outcomeRecorded) {
+                    // Anything else escaping must not keep the probe of a half open breaker
+                    breaker.release();
+                }
+            }
+
+            if (type == RetryPolicy.ErrorType.SESSION && !sessionRetried) {
+                log.info("Kaltura session was rejected, refreshing it and retrying: '{}'", error.getMessage());
+                sessionRetried = true;
+                refreshSession(used);
+                sessionRefreshRetries.incrementAndGet();
+                attempt--; // Kaltura did not process the request
+                continue;
+            }
+            if (type != RetryPolicy.ErrorType.TRANSIENT || attempt >= policy.getMaxAttempts() ||
+                    !RetryPolicy.isReadAction(getAction(requestBuilder))) {
+                throw error;
+            }
+            long backoff = policy.getBackoffMillis(attempt);
+            log.warn("Attempt {} of {} failed, retrying in {} ms: '{}'",
+                    attempt, policy.getMaxAttempts(), backoff, error.getMessage());
+            retries.incrementAndGet();
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw error;
+            }
+        }
+    }
+
+    /**
+     * @return the action of the request, such as {@code list}, or null for multirequests.
+     */
+    private static String getAction(BaseRequestBuilder<?, ?> requestBuilder) {
+        Matcher matcher = ACTION.matcher(requestBuilder.getUrlTail());
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * Set how failed requests are retried. Requests that read are retried after transient failures, and requests
+     * with a rejected session are retried once after refreshing the session, see {@link RetryPolicy}.
+     *
+     * @param policy the retry policy. {@link RetryPolicy#NONE} disables retries of transient failures.
+     */
+    public void setRetryPolicy(RetryPolicy policy) {
+        retryPolicy = Objects.requireNonNull(policy, "policy");
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Set the circuit breaker that stops requests for a while when many requests have failed.
+     *
+     * @param breaker the circuit breaker, or null to always send requests.
+     */
+    public void setCircuitBreaker(@Nullable CircuitBreaker breaker) {
+        circuitBreaker = breaker;
+    }
+
+    /**
+     * @return the circuit breaker, for inspecting its state, or null if disabled.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @return the number of times requests have been retried after a transient failure.
+     */
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    /**
+     * @return the number of times requests have been retried after the session was rejected and refreshed.
+     */
+    public long getSessionRefreshRetryCount() {
+        return sessionRefreshRetries.get();
+    }
+
+    /**
+     * Limit the rate of requests sent by this client. Share the limiter between clients to limit their combined rate,
+     * e.g. to stay below the throttling at Kaltura when several jobs run in the same process.
+     *
+     * @param limiter the limiter taking a permit per request, or null for no limit.
+     */
+    public void setRequestRateLimiter(@Nullable RateLimiter limiter) {
+        requestRateLimiter = limiter;
+    }
+
+    public RateLimiter getRequestRateLimiter() {
+        return requestRateLimiter;
+    }
+
+    /**
+     * Limit the rate of upload data sent by this client, separately from the request rate.
+     *
+     * @param limiter the limiter taking a permit per byte, or null for no limit.
+     */
+    public void setUploadRateLimiter(@Nullable RateLimiter limiter) {
+        uploadRateLimiter = limiter;
+    }
+
+    public RateLimiter getUploadRateLimiter() {
+        return uploadRateLimiter;
+    }
+
+    /**
+     * Send the requests of this client through the transport, with its connection pool and timeouts, instead of the
+     * shared executor of the Kaltura SDK. Requests made before, such as starting the first session, use the SDK.
+     *
+     * @param transport the transport, or null to use the Kaltura SDK defaults.
+     */
+    public void setTransport(@Nullable KalturaTransport transport) {
+        requestsExecutor = transport == null ? null : transport.createExecutor();
+        log.info("Using {} for Kaltura requests", transport == null ? "the Kaltura SDK defaults" : transport);
+    }
+
+    /**
+     * Handles a request using the specified request builder against the given client. Used while creating sessions,
+     * where the client is not yet available to other threads.
+     *
+     * @param requestBuilder the request builder to create and execute the request
+     * @param client         the client holding the Kaltura session to use for the request
+     * @return the result of the executed request
+     * @throws APIException if an API error occurs during the request execution
+     */
+    private <ReturnedType, SelfType extends BaseRequestBuilder<ReturnedType, SelfType>>
+    ReturnedType handleSessionRequest(SelfType requestBuilder, Client client) throws APIException {
+        return unpackResponse(requestBuilder, execute(requestBuilder, client));
+    }
+
+    /**
+     * Unpacks the result of a response, throwing the response error if the request was unsuccessful.
+     *
+     * @param requestBuilder the request builder used for the request. Used for error messages
+     * @param response       the response from the executed request
+     * @return the result of the executed request
+     * @throws APIException if the response was unsuccessful
+     */
+    @SuppressWarnings("unchecked")
+    private <ReturnedType, SelfType extends BaseRequestBuilder<ReturnedType, SelfType>>
+    ReturnedType unpackResponse(SelfType requestBuilder, Response<?> response) throws APIException {
+        try {
             if (!response.isSuccess()) {
                 throw response.error;
             }
@@ -163,13 +661,13 @@ public abstract class DsKalturaClientBase {
     /**
      * Starts widgetSession with using a client.
      *
+     * @param client A client without a session, used for starting the widget session.
      * @param expiry The session duration in seconds. Should not be under 600 due to caching of response on Kaltura
      *               server.
      * @return Kaltura Session
      */
-    private String startWidgetSession(@Nullable Integer expiry) throws APIException {
+    private String startWidgetSession(Client client, @Nullable Integer expiry) throws APIException {
         log.debug("Generating Widget Session...");
-        client.setKs(null); //reset session in case it ran out, else this will cause an API error.
         String widgetId = "_" + client.getPartnerId();
         SessionService.StartWidgetSessionSessionBuilder requestBuilder;
         if (expiry == null) {
@@ -177,7 +675,7 @@ public abstract class DsKalturaClientBase {
         } else {
             requestBuilder = SessionService.startWidgetSession(widgetId, expiry);
         }
-        StartWidgetSessionResponse results = handleRequest(requestBuilder, false);
+        StartWidgetSessionResponse results = handleSessionRequest(requestBuilder, client);
         log.debug("Widget Session started successfully");
 
         return results.getKs();
@@ -207,32 +705,130 @@ public abstract class DsKalturaClientBase {
      * @throws APIException
      */
     public void logSessionInfo() throws APIException {
-        logSessionInfo(client.getKs());
+        logSessionInfo(session.client.getKs());
+    }
+
+    /**
+     * Starts a new session and swaps it in immediately. Requests in flight keep using the session they started with.
+     *
+     * @throws APIException if the new session could not be started
+     */
+    protected void forceSessionRefresh() throws APIException {
+        refreshSession(session);
+    }
+
+    /**
+     * Stops the background session refresher and the executor for asynchronous requests, and unregisters the request
+     * metrics from JMX. Asynchronous requests already submitted are completed. Synchronous requests can still be made
+     * after close, but the session will then only be refreshed when it is about to expire.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        metrics.close();
+        if (asyncExecutor != null) {
+            asyncExecutor.shutdown();
+        }
     }
 
     private void initializeKalturaClient() throws APIException {
         log.info("Initializing Kaltura client");
+        Session cached = loadCachedSession();
+        //Start session now to fail now rather than later if config is wrong.
+        session = cached != null ? cached : startClientSession();
+        long ageSeconds = (System.currentTimeMillis() - session.startedAt) / 1000;
+        scheduleSessionRefresh(Math.max(0, sessionKeepAliveSeconds - ageSeconds));
+    }
+
+    /**
+     * @return a session from the session cache or null if there is no cache or no usable session in the cache.
+     */
+    private Session loadCachedSession() {
+        if (sessionCache == null) {
+            return null;
+        }
+        KalturaSessionCache.CachedSession cached =
+                sessionCache.load(kalturaUrl, partnerId, tokenId, userId, sessionKeepAliveSeconds * 1000L);
+        if (cached == null) {
+            return null;
+        }
+        Client client = createClient();
+        client.setKs(cached.ks);
+        return new Session(client, cached.startedAt);
+    }
+
+    /**
+     * Creates a new client without a Kaltura session.
+     */
+    private Client createClient() {
         Configuration config = new Configuration();
         config.setEndpoint(kalturaUrl);
-        client = new Client(config);
+        Client client = new Client(config);
         client.setPartnerId(partnerId);
-        startClientSession();//Start session now to fail now rather than later if config is wrong.
+        return client;
+    }
+
+    /**
+     * Schedules a background refresh of the Kaltura session.
+     *
+     * @param delaySeconds seconds until the refresh is started
+     */
+    private void scheduleSessionRefresh(long delaySeconds) {
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        scheduler.schedule(this::refreshSessionInBackground, delaySeconds, TimeUnit.SECONDS);
     }
 
     /**
-     * Will return a kaltura client and refresh session every sessionKeepAliveSeconds.
-     * Synchronized to avoid race condition if using the DsKalturaClient class multi-threaded
+     * Replaces the current session with a new one and schedules the next refresh. If the refresh fails, it is retried
+     * after {@value SESSION_REFRESH_RETRY_SECONDS} seconds. Requests keep using the current session meanwhile.
      */
-    private synchronized Client getClientInstance() throws APIException {
+    private void refreshSessionInBackground() {
         try {
-            if (System.currentTimeMillis() - lastSessionStart >= sessionKeepAliveSeconds * 1000L || client.getKs().isEmpty()) {
-                log.info("Refreshing Kaltura client session, millis since last refresh:" +
-                        (System.currentTimeMillis() - lastSessionStart));
-                //Create the client
-                startClientSession();
-                log.info("Refreshed Kaltura client session");
+            refreshSession(session);
+            scheduleSessionRefresh(sessionKeepAliveSeconds);
+        } catch (Exception e) {
+            log.warn("Background refresh of Kaltura session failed. Retrying in {} seconds. KalturaUrl={},error={}",
+                    SESSION_REFRESH_RETRY_SECONDS, kalturaUrl, e.getMessage());
+            scheduleSessionRefresh(SESSION_REFRESH_RETRY_SECONDS);
+        }
+    }
+
+    /**
+     * Starts a new session and replaces the current session with it, unless the current session has already been
+     * replaced by another thread since {@code expected} was read.
+     *
+     * @param expected the session that should be replaced
+     * @throws APIException if the new session could not be started
+     */
+    private void refreshSession(Session expected) throws APIException {
+        synchronized (sessionRefreshLock) {
+            if (session != expected) {
+                return; // Already refreshed by another thread
             }
-            return client;
+            log.info("Refreshing Kaltura client session, millis since last refresh:" +
+                    (System.currentTimeMillis() - expected.startedAt));
+            session = startClientSession();
+            log.info("Refreshed Kaltura client session");
+        }
+    }
+
+    /**
+     * Will return a kaltura client with a valid session. The session is normally refreshed in the background every
+     * sessionKeepAliveSeconds. If the background refresh has not succeeded within half of the sessionRefreshThreshold
+     * after that, the calling thread refreshes the session itself.
+     */
+    private Client getClientInstance() throws APIException {
+        Session current = session;
+        long age = System.currentTimeMillis() - current.startedAt;
+        if (age < (sessionKeepAliveSeconds + sessionRefreshThreshold / 2) * 1000L) {
+            return current.client;
+        }
+        try {
+            refreshSession(current);
+            return session.client;
         } catch (APIException e) {
             log.warn("Connecting to Kaltura failed. KalturaUrl={},error={}", kalturaUrl, e.getMessage());
             throw e;
@@ -240,17 +836,18 @@ public abstract class DsKalturaClientBase {
     }
 
     /**
-     * Start a creates a new Kaltura session and add it to client. If secret is available in conf, it will take
-     * precedent over appTokens.
+     * Creates a new Kaltura session on a new client. If secret is available in conf, it will take precedent over
+     * appTokens.
      *
-     * @throws Exception
+     * @return the new session
+     * @throws APIException if the session could not be started
      */
-    private void startClientSession() throws APIException {
-
+    private Session startClientSession() throws APIException {
+        Client client = createClient();
         String ks = null;
         if (StringUtils.isEmpty(adminSecret)) {
             log.info("Starting KalturaSession from appToken");
-            ks = startAppTokenSession(SessionType.ADMIN);
+            ks = startAppTokenSession(client, SessionType.ADMIN);
         } else {
             log.warn("Starting KalturaSession from adminsecret. Use appToken instead unless you are generating " +
                     "appTokens.");
@@ -262,7 +859,11 @@ public abstract class DsKalturaClientBase {
             }
         }
         client.setKs(ks);
-        lastSessionStart = System.currentTimeMillis(); //Reset timer
+        Session newSession = new Session(client, System.currentTimeMillis());
+        if (sessionCache != null) {
+            sessionCache.store(kalturaUrl, partnerId, tokenId, userId, ks, newSession.startedAt);
+        }
+        return newSession;
     }
 
     /**
@@ -300,20 +901,35 @@ public abstract class DsKalturaClientBase {
      * request using the AppTokenService. The request is executed, and if successful,
      * the method returns the kaltura session (ks).
      *
-     * @param type The type of session being created, represented by a
-     *             {@link SessionType} enumeration.
+     * @param client The client used for starting the session. Its session is set to the widget session.
+     * @param type   The type of session being created, represented by a
+     *               {@link SessionType} enumeration.
      * @return Kaltura Session with privileges inherited from token
      * @throws APIException
      */
-    private String startAppTokenSession(SessionType type) throws APIException {
-        String widgetSession = startWidgetSession(sessionDurationSeconds);
+    private String startAppTokenSession(Client client, SessionType type) throws APIException {
+        String widgetSession = startWidgetSession(client, sessionDurationSeconds);
         client.setKs(widgetSession);
 
         String hash = computeHash(token, widgetSession);
         AppTokenService.StartSessionAppTokenBuilder sessionBuilder =
                 AppTokenService.startSession(tokenId, hash, null, type, sessionDurationSeconds);
-        return handleRequest(sessionBuilder, false).getKs();
+        return handleSessionRequest(sessionBuilder, client).getKs();
+
+    }
 
+    /**
+     * A client with a Kaltura session and the time the session was started. Never changed after creation, so that
+     * it can be replaced atomically.
+     */
+    private static final class Session {
+        private final Client client;
+        private final long startedAt;
+
+        private Session(Client client, long startedAt) {
+            this.client = client;
+            this.startedAt = startedAt;
+        }
     }
 
 }
@@ -0,0 +1,119 @@
+package dk.kb.kaltura.client;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a region of a file with positional reads on a shared {@link FileChannel}. The position of the channel is not
+ * changed, so streams for different regions of the same channel can be read concurrently. Closing the stream does
+ * not close the channel.
+ * <p>
+ * The file is read through a {@link DirectBufferPool} directly into the caller's array, so no memory is held by the
+ * stream itself and heap usage does not depend on the size of the region.
+ */
+class FileRegionInputStream extends InputStream {
+    private final FileChannel channel;
+    private final long end;
+    private final DirectBufferPool buffers;
+    private final UploadProgress progress;
+    private final RateLimiter rateLimiter;
+    private long position;
+
+    /**
+     * @param channel the file to read from.
+     * @param offset  the start of the region.
+     * @param length  the number of bytes in the region.
+     */
+    FileRegionInputStream(FileChannel channel, long offset, long length) {
+        this(channel, offset, length, DirectBufferPool.SHARED, null, null);
+    }
+
+    /**
+     * @param channel     the file to read from.
+     * @param offset      the start of the region.
+     * @param length      the number of bytes in the region.
+     * @param buffers     the buffers used for reading the channel.
+     * @param progress    optional counter for the bytes read.
+     * @param rateLimiter optional limit of the bytes read per second, taking a permit per byte.
+     */
+    FileRegionInputStream(FileChannel channel, long offset, long length, DirectBufferPool buffers,
+                          @Nullable UploadProgress progress, @Nullable RateLimiter rateLimiter) {
+        this.channel = channel;
+        this.position = offset;
+        this.end = offset + length;
+        this.buffers = buffers;
+        this.progress = progress;
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (position >= end) {
+            return -1;
+        }
+        int read = readRegion(buffer, offset, length);
+        if (rateLimiter != null) {
+            // Waits after reading, so the pooled buffer is not held while waiting
+            try {
+                rateLimiter.acquire(read);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the upload rate limit");
+            }
+        }
+        return read;
+    }
+
+    private int readRegion(byte[] buffer, int offset, int length) throws IOException {
+        ByteBuffer direct = buffers.acquire();
+        try {
+            direct.limit((int) Math.min(Math.min(length, end - position), direct.capacity()));
+            int read = channel.read(direct, position);
+            if (read == -1) {
+                throw new IOException("Unexpected end of file at position " + position + ", expected " +
+                        (end - position) + " more bytes. Was the file truncated during upload?");
+            }
+            direct.flip();
+            direct.get(buffer, offset, read);
+            position += read;
+            if (progress != null) {
+                progress.add(read);
+            }
+            return read;
+        } finally {
+            buffers.release(direct);
+        }
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, end - position));
+        position += skipped;
+        return skipped;
+    }
+
+    /**
+     * Does nothing, as the channel is shared.
+     */
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, end - position);
+    }
+}
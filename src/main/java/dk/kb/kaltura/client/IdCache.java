@@ -0,0 +1,247 @@
+package dk.kb.kaltura.client;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * In-process cache of the mapping between referenceIds and Kaltura entry IDs, used by {@link DsKalturaClient}.
+ * <p>
+ * Both directions share one size bound, with the least recently used mappings evicted first. Found mappings expire
+ * after {@code ttl}. Lookups that found nothing are cached as negative results and expire after the normally
+ * shorter {@code negativeTtl}, so that newly uploaded entries are found soon.
+ * <p>
+ * The cache is safe for concurrent use.
+ */
+public class IdCache {
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final LongSupplier clock;
+
+    // Guarded by this. Values are null for negative results
+    private final LruMap referenceToKaltura = new LruMap();
+    private final LruMap kalturaToReference = new LruMap();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxSize     the maximum number of cached mappings in both directions combined.
+     * @param ttl         time to live for found mappings.
+     * @param negativeTtl time to live for lookups that found nothing.
+     */
+    public IdCache(int maxSize, Duration ttl, Duration negativeTtl) {
+        this(maxSize, ttl, negativeTtl, System::currentTimeMillis);
+    }
+
+    IdCache(int maxSize, Duration ttl, Duration negativeTtl, LongSupplier clock) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1, but was " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.ttlMillis = ttl.toMillis();
+        this.negativeTtlMillis = negativeTtl.toMillis();
+        this.clock = clock;
+    }
+
+    /**
+     * @param referenceId the referenceId to look up.
+     * @return the cached lookup or null if the referenceId is not in the cache.
+     */
+    Lookup getKalturaId(String referenceId) {
+        return get(referenceToKaltura, referenceId);
+    }
+
+    /**
+     * @param kalturaId the Kaltura entry ID to look up.
+     * @return the cached lookup or null if the Kaltura ID is not in the cache.
+     */
+    Lookup getReferenceId(String kalturaId) {
+        return get(kalturaToReference, kalturaId);
+    }
+
+    /**
+     * Caches a mapping in both directions. Only for referenceIds known to have this entry only.
+     */
+    synchronized void put(String referenceId, String kalturaId) {
+        long expires = clock.getAsLong() + ttlMillis;
+        referenceToKaltura.put(referenceId, new Entry(kalturaId, expires));
+        kalturaToReference.put(kalturaId, new Entry(referenceId, expires));
+        evict();
+    }
+
+    /**
+     * Caches the referenceId of an entry, without caching the entry as the one with the referenceId. Used for
+     * lookups by Kaltura ID, which do not tell whether other entries have the same referenceId.
+     */
+    synchronized void putReferenceId(String kalturaId, String referenceId) {
+        kalturaToReference.put(kalturaId, new Entry(referenceId, clock.getAsLong() + ttlMillis));
+        evict();
+    }
+
+    /**
+     * Caches that no entry has the given referenceId.
+     */
+    synchronized void putMissingReferenceId(String referenceId) {
+        referenceToKaltura.put(referenceId, new Entry(null, clock.getAsLong() + negativeTtlMillis));
+        evict();
+    }
+
+    /**
+     * Caches that no entry has the given Kaltura ID.
+     */
+    synchronized void putMissingKalturaId(String kalturaId) {
+        kalturaToReference.put(kalturaId, new Entry(null, clock.getAsLong() + negativeTtlMillis));
+        evict();
+    }
+
+    /**
+     * Removes any mapping for the given referenceId, in both directions.
+     */
+    synchronized void invalidateReferenceId(String referenceId) {
+        Entry entry = referenceToKaltura.remove(referenceId);
+        Entry partner = entry == null || entry.value == null ? null : kalturaToReference.get(entry.value);
+        if (partner != null && referenceId.equals(partner.value)) {
+            kalturaToReference.remove(entry.value);
+        }
+    }
+
+    /**
+     * Removes any mapping for the given Kaltura ID, in both directions.
+     */
+    synchronized void invalidateKalturaId(String kalturaId) {
+        Entry entry = kalturaToReference.remove(kalturaId);
+        // The referenceId may be cached for another entry, if the mapping was cached only in this direction
+        Entry partner = entry == null || entry.value == null ? null : referenceToKaltura.get(entry.value);
+        if (partner != null && kalturaId.equals(partner.value)) {
+            referenceToKaltura.remove(entry.value);
+        }
+    }
+
+    /**
+     * Removes all cached mappings. Statistics are kept.
+     */
+    public synchronized void clear() {
+        referenceToKaltura.clear();
+        kalturaToReference.clear();
+    }
+
+    /**
+     * @return the number of cached mappings in both directions combined.
+     */
+    public synchronized int size() {
+        return referenceToKaltura.size() + kalturaToReference.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getNegativeHits() {
+        return negativeHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the ratio of lookups answered by the cache, positive or negative, or 0 if there has been no lookups.
+     */
+    public double getHitRatio() {
+        long answered = hits.get() + negativeHits.get();
+        long total = answered + misses.get();
+        return total == 0 ? 0 : (double) answered / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "IdCache(size=%d/%d, hits=%d, negativeHits=%d, misses=%d, evictions=%d, hitRatio=%.2f)",
+                size(), maxSize, getHits(), getNegativeHits(), getMisses(), getEvictions(), getHitRatio());
+    }
+
+    private synchronized Lookup get(LruMap map, String key) {
+        Entry entry = map.get(key);
+        if (entry != null && entry.expires <= clock.getAsLong()) {
+            map.remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        (entry.value == null ? negativeHits : hits).incrementAndGet();
+        return new Lookup(entry.value);
+    }
+
+    /**
+     * Evicts the least recently used mappings from the direction with most mappings, until the cache is within its
+     * size bound. The other direction of an evicted mapping is evicted with it, so that invalidating either ID always
+     * removes both.
+     */
+    private void evict() {
+        while (size() > maxSize) {
+            boolean referenceLargest = referenceToKaltura.size() >= kalturaToReference.size();
+            LruMap largest = referenceLargest ? referenceToKaltura : kalturaToReference;
+            LruMap other = referenceLargest ? kalturaToReference : referenceToKaltura;
+            Iterator<Map.Entry<String, Entry>> eldest = largest.entrySet().iterator();
+            Map.Entry<String, Entry> evicted = eldest.next();
+            eldest.remove();
+            evictions.incrementAndGet();
+            String partner = evicted.getValue().value;
+            Entry partnerEntry = partner == null ? null : other.get(partner);
+            // The partner may belong to a newer mapping if one of the IDs has been mapped again
+            if (partnerEntry != null && evicted.getKey().equals(partnerEntry.value)) {
+                other.remove(partner);
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * The result of a cached lookup.
+     */
+    static final class Lookup {
+        final String value;
+
+        private Lookup(String value) {
+            this.value = value;
+        }
+
+        /**
+         * @return true if the lookup found nothing when it was cached.
+         */
+        boolean isMissing() {
+            return value == null;
+        }
+    }
+
+    private static final class Entry {
+        final String value;
+        final long expires;
+
+        private Entry(String value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    private static final class LruMap extends LinkedHashMap<String, Entry> {
+        private LruMap() {
+            super(16, 0.75f, true);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package dk.kb.kaltura.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the bounded executors used for running Kaltura requests in the background.
+ */
+final class KalturaExecutors {
+    private static final Logger log = LoggerFactory.getLogger(KalturaExecutors.class);
+
+    // Number of waiting tasks per thread before callers run tasks themselves
+    private static final int QUEUE_SIZE_PER_THREAD = 100;
+
+    private KalturaExecutors() {
+    }
+
+    /**
+     * Creates an executor running at most {@code parallelism} tasks at a time. Threads are virtual when the JVM
+     * supports it and daemon platform threads otherwise.
+     * <p>
+     * The queue of waiting tasks is bounded. When it is full, the submitting thread runs the task itself, which slows
+     * down producers instead of using unbounded memory. Tasks submitted after shutdown are rejected with a
+     * {@link RejectedExecutionException}.
+     *
+     * @param parallelism the maximum number of tasks running at the same time.
+     * @param name        prefix for thread names.
+     * @return a bounded executor.
+     */
+    static ExecutorService newBoundedExecutor(int parallelism, String name) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1, but was " + parallelism);
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(parallelism * QUEUE_SIZE_PER_THREAD),
+                createThreadFactory(name),
+                KalturaExecutors::runInCaller);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static void runInCaller(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("The executor has been shut down");
+        }
+        task.run();
+    }
+
+    /**
+     * Creates a factory for virtual threads if available (Java 21+), else for daemon platform threads.
+     * Reflection is used as the project targets Java 11.
+     */
+    static ThreadFactory createThreadFactory(String name) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "_", 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            log.debug("Using virtual threads for '{}'", name);
+            return factory;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Virtual threads not available, using platform threads for '{}'", name);
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "_" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
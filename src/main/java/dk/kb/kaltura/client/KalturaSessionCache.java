@@ -0,0 +1,165 @@
+package dk.kb.kaltura.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Local file cache of Kaltura sessions (KS), so that new processes, such as the command line jobs, can reuse a
+ * session instead of authenticating again.
+ * <p>
+ * A KS grants the same privileges as the credentials used to create it, so the cache file is only ever read and written
+ * with owner-only permissions ({@code rw-------}). A cache file that can be accessed by group or others is ignored and
+ * the cache is disabled on file systems without POSIX permissions.
+ * <p>
+ * Sessions are keyed by Kaltura URL, partnerId, tokenId and userId. A session is only reused if it is younger than
+ * the keep-alive time of the client, i.e. {@code sessionDurationSeconds - sessionRefreshThreshold}.
+ */
+public class KalturaSessionCache {
+    private static final Logger log = LoggerFactory.getLogger(KalturaSessionCache.class);
+
+    private static final Set<PosixFilePermission> FILE_PERMISSIONS = PosixFilePermissions.fromString("rw-------");
+    private static final Set<PosixFilePermission> DIR_PERMISSIONS = PosixFilePermissions.fromString("rwx------");
+
+    private final Path cacheFile;
+
+    /**
+     * @param cacheFile the file holding cached sessions. It and its parent folder are created when first needed.
+     */
+    public KalturaSessionCache(Path cacheFile) {
+        this.cacheFile = cacheFile.toAbsolutePath();
+    }
+
+    /**
+     * Loads a cached session.
+     *
+     * @param kalturaUrl   the Kaltura service the session is for.
+     * @param partnerId    the partner id the session is for.
+     * @param tokenId      the id of the application token used to create the session.
+     * @param userId       the user the session is for.
+     * @param maxAgeMillis the maximum age of the session for it to be returned.
+     * @return the cached session or null if no usable session is cached.
+     */
+    synchronized CachedSession load(String kalturaUrl, int partnerId, String tokenId, String userId,
+                                    long maxAgeMillis) {
+        if (!Files.exists(cacheFile)) {
+            return null;
+        }
+        try {
+            if (!isPrivate(cacheFile)) {
+                log.warn("Ignoring Kaltura session cache '{}' as it is accessible by others than the owner. " +
+                        "Expected permissions {}", cacheFile, PosixFilePermissions.toString(FILE_PERMISSIONS));
+                return null;
+            }
+            String value = readCache().getProperty(createKey(kalturaUrl, partnerId, tokenId, userId));
+            if (value == null) {
+                return null;
+            }
+            int separator = value.indexOf(':');
+            long startedAt = Long.parseLong(value.substring(0, separator));
+            long age = System.currentTimeMillis() - startedAt;
+            if (age < 0 || age >= maxAgeMillis) {
+                log.debug("Cached Kaltura session is {} seconds old and will not be reused", age / 1000);
+                return null;
+            }
+            log.info("Reusing cached Kaltura session from '{}' started {} seconds ago", cacheFile, age / 1000);
+            return new CachedSession(value.substring(separator + 1), startedAt);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unable to read Kaltura session cache '{}': {}", cacheFile, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Stores a session in the cache, replacing any previous session for the same Kaltura URL, partnerId, tokenId and
+     * userId. Failures are logged and otherwise ignored, as the cache is only an optimization.
+     *
+     * @param kalturaUrl the Kaltura service the session is for.
+     * @param partnerId  the partner id the session is for.
+     * @param tokenId    the id of the application token used to create the session.
+     * @param userId     the user the session is for.
+     * @param ks         the Kaltura session.
+     * @param startedAt  the time the session was started in epoch milliseconds.
+     */
+    synchronized void store(String kalturaUrl, int partnerId, String tokenId, String userId, String ks,
+                            long startedAt) {
+        try {
+            Path folder = cacheFile.getParent();
+            if (!Files.exists(folder)) {
+                Files.createDirectories(folder, PosixFilePermissions.asFileAttribute(DIR_PERMISSIONS));
+            }
+            Properties sessions = Files.exists(cacheFile) && isPrivate(cacheFile) ? readCache() : new Properties();
+            sessions.setProperty(createKey(kalturaUrl, partnerId, tokenId, userId), startedAt + ":" + ks);
+
+            // Write to a private temporary file and move it in place, so other processes never see a partial file
+            Path tempFile = Files.createTempFile(folder, cacheFile.getFileName().toString(), ".tmp",
+                    PosixFilePermissions.asFileAttribute(FILE_PERMISSIONS));
+            try {
+                try (OutputStream out = Files.newOutputStream(tempFile)) {
+                    sessions.store(out, "Kaltura sessions cached by ds-kaltura. Do not share.");
+                }
+                try {
+                    Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            log.debug("Stored Kaltura session in cache '{}'", cacheFile);
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("Unable to store Kaltura session in cache '{}': {}", cacheFile, e.getMessage());
+        }
+    }
+
+    private Properties readCache() throws IOException {
+        Properties sessions = new Properties();
+        try (InputStream in = Files.newInputStream(cacheFile)) {
+            sessions.load(in);
+        }
+        return sessions;
+    }
+
+    private boolean isPrivate(Path file) throws IOException {
+        try {
+            return FILE_PERMISSIONS.containsAll(Files.getPosixFilePermissions(file));
+        } catch (UnsupportedOperationException e) {
+            return false; // Unable to verify that the file is private
+        }
+    }
+
+    private String createKey(String kalturaUrl, int partnerId, String tokenId, String userId) {
+        // Sessions of a partner at one Kaltura service, such as a test service, are not valid at other services
+        return kalturaUrl + "/" + partnerId + "/" + tokenId + "/" + userId;
+    }
+
+    @Override
+    public String toString() {
+        return "KalturaSessionCache(" + cacheFile + ")";
+    }
+
+    /**
+     * A session read from the cache.
+     */
+    static final class CachedSession {
+        final String ks;
+        final long startedAt;
+
+        private CachedSession(String ks, long startedAt) {
+            this.ks = ks;
+            this.startedAt = startedAt;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package dk.kb.kaltura.client;
+
+import com.kaltura.client.APIOkRequestsExecutor;
+import okhttp3.ConnectionPool;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * HTTP settings for the requests to Kaltura: the size of the connection pool, how long idle connections are kept
+ * alive, timeouts, HTTP/2 and gzip compression of responses.
+ * <p>
+ * By default the Kaltura SDK keeps only a few idle connections, so with many concurrent requests most connections
+ * are closed after use and new connections, with new TLS handshakes, are opened for the next requests. Keeping at
+ * least as many idle connections as the number of concurrent requests lets them be reused.
+ * <p>
+ * Timeouts can be set per request type, e.g. a longer read timeout for {@code uploadtoken/upload}, where Kaltura
+ * answers after receiving the whole file. The timeouts are applied to each call, so they take precedence over the
+ * timeouts of the SDK {@code Configuration}.
+ * <p>
+ * The bytes of the responses are counted per request type as received, before any decompression, to measure the
+ * effect of e.g. {@link ResponseProfiles} or gzip.
+ * <p>
+ * Use with {@link DsKalturaClientBase#setTransport(KalturaTransport)}. A transport can be shared by several clients,
+ * which then share the connection pool. Settings changed after the transport is in use apply to new calls.
+ */
+public class KalturaTransport {
+
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 32;
+    public static final Duration DEFAULT_KEEP_ALIVE = Duration.ofMinutes(5);
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    public static final Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(60);
+
+    private static final Pattern SERVICE_ACTION = Pattern.compile("/service/([^/]+)(?:/action/([^/?]+))?");
+
+    private final int maxIdleConnections;
+    private final Duration keepAlive;
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
+    private final boolean http2;
+    private final boolean gzip;
+    private final Map<String, Long> readTimeoutMillis = new ConcurrentHashMap<>();
+    private final Map<String, ResponseCounter> responseCounters = new ConcurrentHashMap<>();
+    private volatile OkHttpClient httpClient = null; // Created when first needed
+
+    /**
+     * Creates a transport with the default settings, HTTP/2 and gzip.
+     */
+    public KalturaTransport() {
+        this(DEFAULT_MAX_IDLE_CONNECTIONS, DEFAULT_KEEP_ALIVE, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT,
+                true, true);
+    }
+
+    /**
+     * @param maxIdleConnections the maximum number of idle connections kept for reuse. Should be at least the number
+     *                           of concurrent requests.
+     * @param keepAlive          the time an idle connection is kept before it is closed.
+     * @param connectTimeout     the timeout for connecting, including the TLS handshake.
+     * @param readTimeout        the default timeout for each read and write of a call. See
+     *                           {@link #setReadTimeout(String, Duration)}.
+     * @param http2              if true, use HTTP/2 where Kaltura supports it, which multiplexes concurrent requests
+     *                           on one connection. If false, only HTTP/1.1 is used.
+     * @param gzip               if true, ask for gzip compressed responses, which are decompressed transparently.
+     */
+    public KalturaTransport(int maxIdleConnections, Duration keepAlive, Duration connectTimeout, Duration readTimeout,
+                            boolean http2, boolean gzip) {
+        if (maxIdleConnections < 1) {
+            throw new IllegalArgumentException(
+                    "maxIdleConnections must be at least 1, but was " + maxIdleConnections);
+        }
+        this.maxIdleConnections = maxIdleConnections;
+        this.keepAlive = keepAlive;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.http2 = http2;
+        this.gzip = gzip;
+    }
+
+    /**
+     * Set the read and write timeout for one type of request.
+     *
+     * @param serviceAction the service and action separated by '/', e.g. {@code uploadtoken/upload}, or
+     *                      {@code multirequest}.
+     * @param timeout       the timeout for each read and write of a call.
+     */
+    public void setReadTimeout(String serviceAction, Duration timeout) {
+        readTimeoutMillis.put(serviceAction.toLowerCase(Locale.ROOT), timeout.toMillis());
+    }
+
+    /**
+     * @param serviceAction the service and action separated by '/', e.g. {@code elasticsearch_esearch/searchEntry}.
+     * @return the number of response bytes received for the type of request, as sent by Kaltura.
+     */
+    public long getResponseBytes(String serviceAction) {
+        ResponseCounter counter = responseCounters.get(serviceAction.toLowerCase(Locale.ROOT));
+        return counter == null ? 0 : counter.bytes.sum();
+    }
+
+    /**
+     * @param serviceAction the service and action separated by '/', e.g. {@code elasticsearch_esearch/searchEntry}.
+     * @return the number of responses received for the type of request.
+     */
+    public long getResponseCount(String serviceAction) {
+        ResponseCounter counter = responseCounters.get(serviceAction.toLowerCase(Locale.ROOT));
+        return counter == null ? 0 : counter.responses.sum();
+    }
+
+    /**
+     * @return an executor sending the requests of the Kaltura SDK through this transport.
+     */
+    APIOkRequestsExecutor createExecutor() {
+        return new TransportRequestsExecutor(getHttpClient());
+    }
+
+    private OkHttpClient getHttpClient() {
+        OkHttpClient client = httpClient;
+        if (client == null) {
+            synchronized (this) {
+                if (httpClient == null) {
+                    httpClient = new OkHttpClient.Builder()
+                            .connectionPool(new ConnectionPool(maxIdleConnections, keepAlive.toMillis(),
+                                    TimeUnit.MILLISECONDS))
+                            .protocols(http2 ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1) :
+                                    List.of(Protocol.HTTP_1_1))
+                            .connectTimeout(connectTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                            .readTimeout(readTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                            .writeTimeout(readTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                            .addInterceptor(this::intercept)
+                            .addNetworkInterceptor(this::countResponseBytes)
+                            .build();
+                }
+                client = httpClient;
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Applies the timeouts for the type of request and the compression setting to a call.
+     */
+    private Response intercept(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!gzip) {
+            // OkHttp asks for gzip unless the header is set
+            request = request.newBuilder().header("Accept-Encoding", "identity").build();
+        }
+        long readMillis = getReadTimeoutMillis(request.url().encodedPath());
+        return chain.withConnectTimeout((int) connectTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .withReadTimeout((int) readMillis, TimeUnit.MILLISECONDS)
+                .withWriteTimeout((int) readMillis, TimeUnit.MILLISECONDS)
+                .proceed(request);
+    }
+
+    /**
+     * Counts the bytes of the response body as they are read from the connection.
+     */
+    private Response countResponseBytes(Interceptor.Chain chain) throws IOException {
+        Response response = chain.proceed(chain.request());
+        ResponseBody body = response.body();
+        if (body == null) {
+            return response;
+        }
+        ResponseCounter counter = responseCounters.computeIfAbsent(
+                getServiceAction(chain.request().url().encodedPath()), key -> new ResponseCounter());
+        counter.responses.increment();
+        ForwardingSource counting = new ForwardingSource(body.source()) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long read = super.read(sink, byteCount);
+                if (read > 0) {
+                    counter.bytes.add(read);
+                }
+                return read;
+            }
+        };
+        return response.newBuilder()
+                .body(ResponseBody.create(body.contentType(), body.contentLength(), Okio.buffer(counting)))
+                .build();
+    }
+
+    /**
+     * @param path the path of the request URL, e.g. {@code /api_v3/service/media/action/list}.
+     * @return the read timeout for the type of request.
+     */
+    long getReadTimeoutMillis(String path) {
+        Long millis = readTimeoutMillis.get(getServiceAction(path));
+        return millis == null ? readTimeout.toMillis() : millis;
+    }
+
+    /**
+     * @param path the path of the request URL, e.g. {@code /api_v3/service/media/action/list}.
+     * @return the lower case service and action separated by '/', e.g. {@code media/list}, or the path if it does
+     * not hold a service.
+     */
+    static String getServiceAction(String path) {
+        Matcher matcher = SERVICE_ACTION.matcher(path);
+        if (!matcher.find()) {
+            return path;
+        }
+        String serviceAction = matcher.group(2) == null ? matcher.group(1) : matcher.group(1) + "/" + matcher.group(2);
+        return serviceAction.toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public String toString() {
+        return "KalturaTransport(maxIdleConnections=" + maxIdleConnections + ", keepAlive=" + keepAlive +
+                ", connectTimeout=" + connectTimeout + ", readTimeout=" + readTimeout + ", readTimeouts=" +
+                readTimeoutMillis + ", http2=" + http2 + ", gzip=" + gzip + ")";
+    }
+
+    private static final class ResponseCounter {
+        private final LongAdder responses = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+    }
+
+    /**
+     * The request executor of the Kaltura SDK, using the HTTP client of the transport instead of its own. The SDK
+     * derives the client for each call from it, sharing its connection pool and interceptors.
+     * <p>
+     * {@code mOkClient} is internal to the SDK, so this depends on the version of kalturaApiClient in the pom.
+     * {@code KalturaTransportTest.requestsUseTransport} fails if the SDK no longer uses the field.
+     */
+    private static final class TransportRequestsExecutor extends APIOkRequestsExecutor {
+        TransportRequestsExecutor(OkHttpClient httpClient) {
+            mOkClient = httpClient;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package dk.kb.kaltura.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Coalesces single lookups from many threads into batch lookups.
+ * <p>
+ * The first lookup after a batch has been sent starts a window of {@code windowMillis}. Lookups within the window are
+ * collected and resolved together when the window closes, or as soon as {@code maxBatchSize} different keys have been
+ * collected. Lookups for a key already waiting in the current batch share the same future.
+ * <p>
+ * Batches are resolved by the executor. Callers waiting with {@link #lookupAndWait(Object)} resolve their batch
+ * themselves if no executor thread has started it when the window has closed, so waiting from a task of the executor
+ * itself cannot deadlock.
+ *
+ * @param <K> the type of the keys to look up.
+ * @param <V> the type of the values.
+ */
+class LookupBatcher<K, V> {
+    private static final Logger log = LoggerFactory.getLogger(LookupBatcher.class);
+
+    private static final long MIN_WAIT_MILLIS = 10;
+
+    /**
+     * Resolves a batch of keys.
+     */
+    @FunctionalInterface
+    interface BatchLookup<K, V> {
+        /**
+         * @param keys the keys to look up. Never more than the max batch size.
+         * @return the values for the keys. Keys without a value should not be present.
+         * @throws Exception if the lookup failed. All lookups in the batch are then completed with the exception.
+         */
+        Map<K, V> lookup(List<K> keys) throws Exception;
+    }
+
+    private final BatchLookup<K, V> batchLookup;
+    private final int maxBatchSize;
+    private final long windowMillis;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+
+    // Guarded by this
+    private Map<K, CompletableFuture<V>> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduledFlush = null;
+    // Batches submitted to the executor but not started, by key
+    private final Map<K, BatchTask> queued = new ConcurrentHashMap<>();
+
+    /**
+     * @param batchLookup  resolves batches of keys.
+     * @param maxBatchSize the maximum number of keys in a batch.
+     * @param windowMillis the time in milliseconds to wait for more lookups before resolving a batch.
+     * @param scheduler    used for closing the window.
+     * @param executor     runs the batch lookups.
+     */
+    LookupBatcher(BatchLookup<K, V> batchLookup, int maxBatchSize, long windowMillis,
+                  ScheduledExecutorService scheduler, Executor executor) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1, but was " + maxBatchSize);
+        }
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("windowMillis must not be negative, but was " + windowMillis);
+        }
+        this.batchLookup = batchLookup;
+        this.maxBatchSize = maxBatchSize;
+        this.windowMillis = windowMillis;
+        this.scheduler = scheduler;
+        this.executor = executor;
+    }
+
+    /**
+     * Looks up a single key as part of a batch.
+     *
+     * @param key the key to look up.
+     * @return a future completing with the value for the key, null if there is no value, or exceptionally if the
+     * batch lookup failed.
+     */
+    CompletableFuture<V> lookup(K key) {
+        CompletableFuture<V> future;
+        Map<K, CompletableFuture<V>> fullBatch = null;
+        synchronized (this) {
+            future = pending.get(key);
+            if (future != null) {
+                return future;
+            }
+            future = new CompletableFuture<>();
+            pending.put(key, future);
+            if (pending.size() >= maxBatchSize || (pending.size() == 1 && !scheduleFlush())) {
+                fullBatch = takePending();
+            }
+        }
+        if (fullBatch != null) {
+            submit(fullBatch);
+        }
+        return future;
+    }
+
+    /**
+     * Looks up a single key as part of a batch and waits for the value.
+     *
+     * @param key the key to look up.
+     * @return the value for the key, or null if there is no value.
+     * @throws ExecutionException   if the batch lookup failed, with the exception of the lookup as cause.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    V lookupAndWait(K key) throws ExecutionException, InterruptedException {
+        CompletableFuture<V> future = lookup(key);
+        while (true) {
+            try {
+                return future.get(windowMillis + MIN_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // The batch may be queued behind busy executor threads, possibly including this one
+                BatchTask task = queued.get(key);
+                if (task != null) {
+                    task.run();
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the current batch now instead of waiting for the window to close.
+     */
+    void flush() {
+        Map<K, CompletableFuture<V>> batch;
+        synchronized (this) {
+            batch = takePending();
+        }
+        if (!batch.isEmpty()) {
+            submit(batch);
+        }
+    }
+
+    /**
+     * @return false if the scheduler has been shut down. The current batch must then be sent by the caller.
+     */
+    private boolean scheduleFlush() {
+        try {
+            scheduledFlush = scheduler.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private Map<K, CompletableFuture<V>> takePending() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        Map<K, CompletableFuture<V>> batch = pending;
+        pending = new LinkedHashMap<>();
+        return batch;
+    }
+
+    private void submit(Map<K, CompletableFuture<V>> batch) {
+        BatchTask task = new BatchTask(batch);
+        batch.keySet().forEach(key -> queued.put(key, task));
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    private void resolve(Map<K, CompletableFuture<V>> batch) {
+        try {
+            Map<K, V> values = batchLookup.lookup(Collections.unmodifiableList(new ArrayList<>(batch.keySet())));
+            log.debug("Resolved batch of {} lookups with {} hits", batch.size(), values.size());
+            batch.forEach((key, future) -> future.complete(values.get(key)));
+        } catch (Exception e) {
+            log.debug("Batch lookup of {} keys failed: {}", batch.size(), e.getMessage());
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * A submitted batch, resolved by whichever thread runs it first.
+     */
+    private final class BatchTask implements Runnable {
+        private final Map<K, CompletableFuture<V>> batch;
+        private final AtomicBoolean started = new AtomicBoolean(false);
+
+        BatchTask(Map<K, CompletableFuture<V>> batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void run() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            batch.keySet().forEach(key -> queued.remove(key, this));
+            resolve(batch);
+        }
+    }
+}
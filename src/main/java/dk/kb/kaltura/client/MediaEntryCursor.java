@@ -0,0 +1,186 @@
+package dk.kb.kaltura.client;
+
+import com.kaltura.client.types.APIException;
+import com.kaltura.client.types.MediaEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Iterates all media entries matching a filter, in order of creation.
+ * <p>
+ * Kaltura refuses list requests beyond the first 10,000 results, so instead of increasing the page index, every
+ * request asks for the first page after a watermark: entries created at or after the {@code createdAt} of the last
+ * entry received, excluding the IDs already received with exactly that {@code createdAt}. This is stable while
+ * entries are added or deleted during the iteration.
+ * <p>
+ * Kaltura can not order entries created in the same second by ID, so the IDs excluded grow with the number of
+ * entries sharing a second. To keep the requests and memory bounded, the iteration fails with an
+ * {@link IllegalStateException} if more than {@code maxIdsAtWatermark} entries were created in the same second.
+ * <p>
+ * The next page is requested in the background as soon as the current page is received, so at most two pages and
+ * {@code maxIdsAtWatermark} IDs are held in memory. Call {@link #close()} to cancel the iteration early.
+ * <p>
+ * As {@link Iterator} cannot throw checked exceptions, a failed page request is thrown as a {@link RuntimeException}
+ * with the {@link APIException} as cause.
+ */
+class MediaEntryCursor implements Iterator<MediaEntry>, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(MediaEntryCursor.class);
+
+    /**
+     * Fetches the first page of entries after a watermark, ordered by ascending {@code createdAt}.
+     */
+    @FunctionalInterface
+    interface PageFetcher {
+        /**
+         * @param createdAtFrom only entries created at or after this time (epoch seconds). Null means no limit.
+         * @param excludedIds   IDs of entries that must not be returned.
+         * @return at most {@code pageSize} entries, ordered by ascending {@code createdAt}.
+         * @throws APIException if the request failed.
+         */
+        List<MediaEntry> fetch(@Nullable Long createdAtFrom, Set<String> excludedIds) throws APIException;
+    }
+
+    // Entries created in the same second before the iteration fails. Kaltura IDs are about 10 characters, so the
+    // idNotIn of a request stays below 25KB
+    static final int MAX_IDS_AT_WATERMARK = 2000;
+
+    private final PageFetcher fetcher;
+    private final int pageSize;
+    private final int maxIdsAtWatermark;
+    private final Executor executor;
+
+    private Long watermark;
+    // IDs of the received entries with createdAt equal to the watermark
+    private final Set<String> idsAtWatermark = new LinkedHashSet<>();
+
+    private Iterator<MediaEntry> current = Collections.emptyIterator();
+    private CompletableFuture<List<MediaEntry>> next = null;
+    private boolean started = false;
+    private long received = 0;
+
+    /**
+     * @param fetcher       fetches single pages.
+     * @param createdAtFrom only entries created at or after this time (epoch seconds). Null means all entries.
+     * @param pageSize      the number of entries requested per page. A shorter page marks the end.
+     * @param executor      runs the background requests for the next page.
+     */
+    MediaEntryCursor(PageFetcher fetcher, @Nullable Long createdAtFrom, int pageSize, Executor executor) {
+        this(fetcher, createdAtFrom, pageSize, MAX_IDS_AT_WATERMARK, executor);
+    }
+
+    /**
+     * @param maxIdsAtWatermark the maximum number of entries created in the same second. Must be at least
+     *                          {@code pageSize}.
+     */
+    MediaEntryCursor(PageFetcher fetcher, @Nullable Long createdAtFrom, int pageSize, int maxIdsAtWatermark,
+                     Executor executor) {
+        if (pageSize < 1 || maxIdsAtWatermark < pageSize) {
+            throw new IllegalArgumentException("Must satisfy 1 <= pageSize <= maxIdsAtWatermark, but were " +
+                    pageSize + " and " + maxIdsAtWatermark);
+        }
+        this.fetcher = fetcher;
+        this.watermark = createdAtFrom;
+        this.pageSize = pageSize;
+        this.maxIdsAtWatermark = maxIdsAtWatermark;
+        this.executor = executor;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!started) {
+            started = true;
+            next = fetchAsync();
+        }
+        while (!current.hasNext() && next != null) {
+            List<MediaEntry> page = await(next);
+            next = null;
+            advance(page);
+            current = page.iterator();
+        }
+        return current.hasNext();
+    }
+
+    @Override
+    public MediaEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    /**
+     * Stops the iteration, cancelling the background request for the next page if any.
+     */
+    @Override
+    public void close() {
+        started = true;
+        current = Collections.emptyIterator();
+        if (next != null) {
+            next.cancel(false);
+            next = null;
+        }
+    }
+
+    /**
+     * Moves the watermark past the given page and requests the next page if the given page was full.
+     */
+    private void advance(List<MediaEntry> page) {
+        received += page.size();
+        for (MediaEntry entry : page) {
+            if (!Objects.equals(entry.getCreatedAt(), watermark) && entry.getCreatedAt() != null) {
+                watermark = entry.getCreatedAt();
+                idsAtWatermark.clear();
+            }
+            idsAtWatermark.add(entry.getId());
+        }
+        if (idsAtWatermark.size() > maxIdsAtWatermark && page.size() >= pageSize) {
+            close();
+            throw new IllegalStateException("More than " + maxIdsAtWatermark + " media entries were created at " +
+                    watermark + ", so they can not be streamed with a bounded idNotIn. Received " + received +
+                    " entries. Narrow the filter, e.g. by createdAt, and list the entries of that second separately");
+        }
+        if (page.size() >= pageSize) {
+            log.debug("Received {} media entries, requesting next page from createdAt {}", received, watermark);
+            next = fetchAsync();
+        } else {
+            log.debug("Received all {} media entries", received);
+        }
+    }
+
+    private CompletableFuture<List<MediaEntry>> fetchAsync() {
+        Long createdAtFrom = watermark;
+        Set<String> excludedIds = Set.copyOf(idsAtWatermark);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return fetcher.fetch(createdAtFrom, excludedIds);
+            } catch (APIException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private List<MediaEntry> await(CompletableFuture<List<MediaEntry>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            close();
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Failed to fetch media entries created at or after " + watermark + " after " +
+                    received + " entries: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package dk.kb.kaltura.client;
+
+import com.kaltura.client.types.APIException;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates the results of a paged Kaltura request, fetching one page at a time when the previous page has been
+ * consumed. Only a single page is held in memory.
+ * <p>
+ * As {@link Iterator} cannot throw checked exceptions, a failed page request is thrown as a {@link RuntimeException}
+ * with the {@link APIException} as cause.
+ *
+ * @param <T> the type of the results.
+ */
+class PagedIterator<T> implements Iterator<T> {
+
+    /**
+     * Fetches a single page.
+     */
+    @FunctionalInterface
+    interface PageFetcher<T> {
+        /**
+         * @param pageIndex the page to fetch, starting at 1 as in Kaltura's FilterPager.
+         * @return the page.
+         * @throws APIException if the request failed.
+         */
+        Page<T> fetch(int pageIndex) throws APIException;
+    }
+
+    /**
+     * A page of results together with the total number of results.
+     */
+    static final class Page<T> {
+        final List<T> items;
+        final int totalCount;
+
+        Page(List<T> items, int totalCount) {
+            this.items = items;
+            this.totalCount = totalCount;
+        }
+    }
+
+    private final PageFetcher<T> fetcher;
+    private Iterator<T> current = null;
+    private int nextPageIndex = 1;
+    private int fetched = 0;
+    private boolean exhausted = false;
+
+    PagedIterator(PageFetcher<T> fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while ((current == null || !current.hasNext()) && !exhausted) {
+            fetchNextPage();
+        }
+        return current != null && current.hasNext();
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    private void fetchNextPage() {
+        Page<T> page;
+        try {
+            page = fetcher.fetch(nextPageIndex++);
+        } catch (APIException e) {
+            exhausted = true;
+            throw new RuntimeException("Failed to fetch page " + (nextPageIndex - 1) + ": " + e.getMessage(), e);
+        }
+        fetched += page.items.size();
+        exhausted = page.items.isEmpty() || fetched >= page.totalCount;
+        current = page.items.iterator();
+    }
+}
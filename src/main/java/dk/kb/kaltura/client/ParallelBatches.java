@@ -0,0 +1,127 @@
+package dk.kb.kaltura.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Splits lists of items into batches and processes the batches concurrently.
+ * <p>
+ * The calling thread processes batches itself alongside the helper tasks submitted to the executor, and only waits
+ * for batches that have been started. This means that batches can be processed from a thread belonging to the
+ * executor itself without risk of deadlock, e.g. from an asynchronous request.
+ */
+final class ParallelBatches {
+
+    private ParallelBatches() {
+    }
+
+    /**
+     * Processes a single batch.
+     *
+     * @param <T> the type of the items.
+     * @param <R> the type of the result for a batch.
+     * @param <E> the type of exception thrown on failure.
+     */
+    @FunctionalInterface
+    interface BatchCall<T, R, E extends Exception> {
+        R call(List<T> batch) throws E;
+    }
+
+    /**
+     * Splits a list into consecutive sub lists of at most {@code batchSize} items.
+     *
+     * @param items     the items to split.
+     * @param batchSize the maximum number of items in a sub list.
+     * @return views of the items, in order.
+     */
+    static <T> List<List<T>> partition(List<T> items, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1, but was " + batchSize);
+        }
+        List<List<T>> batches = new ArrayList<>((items.size() + batchSize - 1) / batchSize);
+        for (int start = 0; start < items.size(); start += batchSize) {
+            batches.add(items.subList(start, Math.min(items.size(), start + batchSize)));
+        }
+        return batches;
+    }
+
+    /**
+     * Splits the items into batches and processes at most {@code parallelism} batches at a time. If a batch fails,
+     * batches that have not been started are skipped and the first failure is thrown.
+     *
+     * @param items       the items to process.
+     * @param batchSize   the maximum number of items in a batch.
+     * @param parallelism the maximum number of batches processed at the same time, including the calling thread.
+     * @param executor    runs the helper tasks.
+     * @param call        processes a batch.
+     * @return the results for each batch, in the order of the items.
+     * @throws E if processing of a batch failed.
+     */
+    @SuppressWarnings("unchecked")
+    static <T, R, E extends Exception> List<R> run(List<T> items, int batchSize, int parallelism, Executor executor,
+                                                   BatchCall<T, R, E> call) throws E {
+        List<List<T>> batches = partition(items, batchSize);
+        if (batches.size() <= 1 || parallelism <= 1) {
+            List<R> results = new ArrayList<>(batches.size());
+            for (List<T> batch : batches) {
+                results.add(call.call(batch));
+            }
+            return results;
+        }
+
+        AtomicReferenceArray<R> results = new AtomicReferenceArray<>(batches.size());
+        AtomicInteger nextBatch = new AtomicInteger();
+        CountDownLatch finished = new CountDownLatch(batches.size());
+        AtomicReference<Exception> failure = new AtomicReference<>();
+
+        Runnable worker = () -> {
+            int index;
+            while ((index = nextBatch.getAndIncrement()) < batches.size()) {
+                try {
+                    if (failure.get() == null) {
+                        results.set(index, call.call(batches.get(index)));
+                    }
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    finished.countDown();
+                }
+            }
+        };
+
+        int helpers = Math.min(parallelism, batches.size()) - 1;
+        for (int i = 0; i < helpers; i++) {
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                break; // The calling thread processes the remaining batches
+            }
+        }
+        worker.run();
+
+        try {
+            finished.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for " + batches.size() + " batches", e);
+        }
+
+        Exception e = failure.get();
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e != null) {
+            throw (E) e; // Only E or RuntimeException can be thrown by call
+        }
+        List<R> ordered = new ArrayList<>(batches.size());
+        for (int i = 0; i < batches.size(); i++) {
+            ordered.add(results.get(i));
+        }
+        return ordered;
+    }
+}
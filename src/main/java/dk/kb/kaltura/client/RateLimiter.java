@@ -0,0 +1,107 @@
+package dk.kb.kaltura.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket limiting the rate of requests, or of bytes, sent to Kaltura by all threads sharing it.
+ * <p>
+ * The bucket holds up to {@code burst} permits and is refilled at {@code permitsPerSecond}. Blocking acquires take
+ * their permits at once, also when the bucket holds too few, and then wait for the refill to cover the deficit.
+ * This means that an acquire of more permits than the burst, such as a large chunk of an upload, is possible, and
+ * that waiting threads are served in the order they arrived without holding a lock while waiting.
+ * <p>
+ * {@link #tryAcquire(long)} never waits, for callers that would rather fail than be delayed.
+ */
+public class RateLimiter {
+
+    private final double permitsPerNano;
+    private final double burst;
+    private final LongSupplier nanoClock;
+
+    // Both guarded by this. Negative when permits have been taken ahead of the refill
+    private double available;
+    private long refilledAt;
+
+    /**
+     * @param permitsPerSecond the sustained rate of permits.
+     * @param burst            the number of permits that can be taken at once after being idle.
+     */
+    public RateLimiter(double permitsPerSecond, long burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    RateLimiter(double permitsPerSecond, long burst, LongSupplier nanoClock) {
+        if (!(permitsPerSecond > 0) || burst < 1) {
+            throw new IllegalArgumentException("permitsPerSecond must be above 0 and burst at least 1, but were " +
+                    permitsPerSecond + " and " + burst);
+        }
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.nanoClock = nanoClock;
+        this.available = burst;
+        this.refilledAt = nanoClock.getAsLong();
+    }
+
+    /**
+     * Takes the permits, waiting until the rate allows it.
+     *
+     * @param permits the number of permits, e.g. 1 for a request or the number of bytes for upload data.
+     * @throws InterruptedException if interrupted while waiting. The permits are still taken.
+     */
+    public void acquire(long permits) throws InterruptedException {
+        long waitNanos = reserve(permits);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Takes the permits if they are available now.
+     *
+     * @param permits the number of permits. Can never succeed for more than {@code burst}.
+     * @return true if the permits were taken, false if none were taken.
+     */
+    public synchronized boolean tryAcquire(long permits) {
+        refill();
+        if (available < permits) {
+            return false;
+        }
+        available -= permits;
+        return true;
+    }
+
+    /**
+     * @return the number of permits that can be taken now without waiting.
+     */
+    public synchronized long getAvailable() {
+        refill();
+        return (long) Math.max(0, available);
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerNano * TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * Takes the permits, also if it puts the bucket in deficit.
+     *
+     * @return the nanoseconds to wait until the refill has covered the permits.
+     */
+    synchronized long reserve(long permits) {
+        refill();
+        available -= permits;
+        return available >= 0 ? 0 : (long) Math.ceil(-available / permitsPerNano);
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        available = Math.min(burst, available + (now - refilledAt) * permitsPerNano);
+        refilledAt = now;
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimiter(permitsPerSecond=" + getPermitsPerSecond() + ", burst=" + (long) burst + ")";
+    }
+}
@@ -0,0 +1,305 @@
+package dk.kb.kaltura.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts, errors, latency histograms and upload bytes per request tag, such as {@code media.list} or
+ * {@code uploadToken.upload}, for the requests sent by a client.
+ * <p>
+ * Recording a request does not allocate once its tag has been seen: counters are {@link LongAdder}s, and latencies
+ * are counted in a fixed histogram with 4 buckets per power of two microseconds, so percentiles are accurate to
+ * within 25%. Requests slower than the slow request threshold are logged.
+ * <p>
+ * The statistics of each tag are registered with the platform MBean server under
+ * {@code dk.kb.kaltura:type=RequestMetrics,client=<client>,tag=<tag>} when the tag is first seen, and unregistered by
+ * {@link #close()}.
+ */
+public class RequestMetrics {
+    private static final Logger log = LoggerFactory.getLogger(RequestMetrics.class);
+
+    public static final Duration DEFAULT_SLOW_REQUEST_THRESHOLD = Duration.ofSeconds(30);
+
+    // 4 buckets per power of two microseconds, up to 2^40 microseconds (about 12 days)
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = SUB_BUCKETS * 40;
+
+    private final String clientName;
+    private final boolean registerMBeans;
+    private final Map<String, RequestStats> stats = new ConcurrentHashMap<>();
+    private volatile long slowRequestNanos = DEFAULT_SLOW_REQUEST_THRESHOLD.toNanos();
+    private volatile boolean closed = false;
+
+    /**
+     * @param clientName     identifies the client in the names of the MBeans.
+     * @param registerMBeans if true, register the statistics of each tag with the platform MBean server.
+     */
+    RequestMetrics(String clientName, boolean registerMBeans) {
+        this.clientName = clientName;
+        this.registerMBeans = registerMBeans;
+    }
+
+    /**
+     * Log requests that take longer than the threshold.
+     *
+     * @param threshold the latency above which requests are logged, or {@link Duration#ZERO} to log none.
+     */
+    public void setSlowRequestThreshold(Duration threshold) {
+        slowRequestNanos = threshold.isZero() ? Long.MAX_VALUE : threshold.toNanos();
+    }
+
+    /**
+     * Records a completed request.
+     *
+     * @param tag         the tag of the request.
+     * @param nanos       the latency of the request.
+     * @param successful  false if the request failed.
+     */
+    void record(String tag, long nanos, boolean successful) {
+        RequestStats requestStats = getOrCreate(tag);
+        requestStats.record(nanos, successful);
+        if (nanos > slowRequestNanos) {
+            log.warn("Slow request '{}' took {} ms{}", tag, TimeUnit.NANOSECONDS.toMillis(nanos),
+                    successful ? "" : " and failed");
+        }
+    }
+
+    /**
+     * Adds upload data sent with a request.
+     */
+    void addBytes(String tag, long bytes) {
+        getOrCreate(tag).bytes.add(bytes);
+    }
+
+    /**
+     * @param tag the tag of the requests, such as {@code media.list}.
+     * @return the statistics for the tag, or null if no request with the tag has been recorded.
+     */
+    public RequestStats get(String tag) {
+        return stats.get(tag);
+    }
+
+    /**
+     * @return the statistics for all tags, ordered by tag.
+     */
+    public List<RequestStats> getAll() {
+        List<RequestStats> all = new ArrayList<>(stats.values());
+        all.sort(Comparator.comparing(RequestStats::getTag));
+        return all;
+    }
+
+    /**
+     * @return one line with the statistics of each tag with requests, or null if there have been no requests.
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (RequestStats requestStats : getAll()) {
+            if (requestStats.getCalls() == 0) {
+                continue;
+            }
+            summary.append(summary.length() == 0 ? "" : "; ").append(String.format(Locale.ROOT,
+                    "%s calls=%d errors=%d p50=%.0fms p95=%.0fms p99=%.0fms max=%.0fms",
+                    requestStats.getTag(), requestStats.getCalls(), requestStats.getErrors(),
+                    requestStats.getP50Millis(), requestStats.getP95Millis(), requestStats.getP99Millis(),
+                    requestStats.getMaxMillis()));
+            if (requestStats.getBytesSent() > 0) {
+                summary.append(" bytes=").append(requestStats.getBytesSent());
+            }
+        }
+        return summary.length() == 0 ? null : summary.toString();
+    }
+
+    /**
+     * Unregisters the MBeans. Statistics are still recorded, but no more MBeans are registered.
+     */
+    public void close() {
+        closed = true;
+        if (registerMBeans) {
+            stats.values().forEach(this::unregister);
+        }
+    }
+
+    private RequestStats getOrCreate(String tag) {
+        RequestStats requestStats = stats.get(tag); // Does not allocate, unlike computeIfAbsent with a lambda
+        if (requestStats != null) {
+            return requestStats;
+        }
+        requestStats = stats.computeIfAbsent(tag, RequestStats::new);
+        if (registerMBeans && !closed) {
+            register(requestStats);
+        }
+        return requestStats;
+    }
+
+    private synchronized void register(RequestStats requestStats) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = getObjectName(requestStats);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(requestStats, name);
+            }
+        } catch (JMException | RuntimeException e) {
+            log.debug("Unable to register request metrics for '{}' with JMX", requestStats.getTag(), e);
+        }
+    }
+
+    private synchronized void unregister(RequestStats requestStats) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = getObjectName(requestStats);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException | RuntimeException e) {
+            log.debug("Unable to unregister request metrics for '{}' from JMX", requestStats.getTag(), e);
+        }
+    }
+
+    private ObjectName getObjectName(RequestStats requestStats) throws JMException {
+        return new ObjectName("dk.kb.kaltura:type=RequestMetrics,client=" + ObjectName.quote(clientName) +
+                ",tag=" + ObjectName.quote(requestStats.getTag()));
+    }
+
+    /**
+     * @return the histogram bucket for a latency.
+     */
+    static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) Math.max(0, micros);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKETS - 1, SUB_BUCKETS * (exponent - SUB_BUCKET_BITS + 1) + subBucket);
+    }
+
+    /**
+     * @return the lowest latency in microseconds counted in the bucket.
+     */
+    static long bucketStart(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * Statistics for the requests with one tag.
+     */
+    public static final class RequestStats implements RequestStatsMXBean {
+        private final String tag;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder totalMicros = new LongAdder();
+        private final AtomicLong maxMicros = new AtomicLong();
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        RequestStats(String tag) {
+            this.tag = tag;
+        }
+
+        void record(long nanos, boolean successful) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            calls.increment();
+            if (!successful) {
+                errors.increment();
+            }
+            totalMicros.add(micros);
+            histogram.incrementAndGet(bucket(micros));
+            long max = maxMicros.get();
+            while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+                max = maxMicros.get();
+            }
+        }
+
+        @Override
+        public String getTag() {
+            return tag;
+        }
+
+        @Override
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        @Override
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        @Override
+        public long getBytesSent() {
+            return bytes.sum();
+        }
+
+        @Override
+        public double getMeanMillis() {
+            long count = calls.sum();
+            return count == 0 ? 0 : totalMicros.sum() / 1000.0 / count;
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return maxMicros.get() / 1000.0;
+        }
+
+        @Override
+        public double getP50Millis() {
+            return getPercentileMillis(0.50);
+        }
+
+        @Override
+        public double getP95Millis() {
+            return getPercentileMillis(0.95);
+        }
+
+        @Override
+        public double getP99Millis() {
+            return getPercentileMillis(0.99);
+        }
+
+        /**
+         * @param percentile from 0 to 1.
+         * @return the upper bound of the bucket holding the percentile, but at most the maximum latency.
+         */
+        double getPercentileMillis(double percentile) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = histogram.get(i);
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= Math.max(1, rank)) {
+                    long upper = i + 1 < BUCKETS ? bucketStart(i + 1) - 1 : Long.MAX_VALUE;
+                    return Math.min(upper, maxMicros.get()) / 1000.0;
+                }
+            }
+            return getMaxMillis();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package dk.kb.kaltura.client;
+
+/**
+ * Statistics for the requests with a given tag, such as {@code media.list}, exposed with JMX. Latencies are measured
+ * from sending the request until the response has been parsed.
+ */
+public interface RequestStatsMXBean {
+
+    String getTag();
+
+    long getCalls();
+
+    long getErrors();
+
+    /**
+     * @return the number of bytes of upload data sent, including data of attempts that failed.
+     */
+    long getBytesSent();
+
+    double getMeanMillis();
+
+    double getMaxMillis();
+
+    double getP50Millis();
+
+    double getP95Millis();
+
+    double getP99Millis();
+}
@@ -0,0 +1,65 @@
+package dk.kb.kaltura.client;
+
+import com.kaltura.client.enums.ResponseProfileType;
+import com.kaltura.client.types.BaseResponseProfile;
+import com.kaltura.client.types.DetachedResponseProfile;
+
+/**
+ * Response profiles limiting the fields Kaltura returns for the objects of a response, so that requests needing only
+ * a few fields, such as ID lookups, do not transfer and parse full entries.
+ * <p>
+ * The SDK objects are mutable, so a new profile is created for each call.
+ */
+public final class ResponseProfiles {
+
+    private ResponseProfiles() {
+    }
+
+    /**
+     * @return a profile with the fields needed to map between Kaltura IDs and referenceIds.
+     */
+    public static BaseResponseProfile forIdLookup() {
+        return includeFields("id", "referenceId");
+    }
+
+    /**
+     * @return a profile with the fields needed to follow the conversion of entries.
+     */
+    public static BaseResponseProfile forStatus() {
+        return includeFields("id", "status");
+    }
+
+    /**
+     * @return a profile with the fields needed to page through entries with
+     * {@link DsKalturaClient#streamMediaEntries(com.kaltura.client.types.MediaEntryFilter, BaseResponseProfile)}.
+     */
+    public static BaseResponseProfile forStreaming() {
+        return includeFields("id", "createdAt");
+    }
+
+    /**
+     * @param fields the names of the fields to return, as in the Kaltura API, e.g. {@code referenceId}.
+     * @return a profile returning only the given fields.
+     */
+    public static BaseResponseProfile includeFields(String... fields) {
+        return createProfile(ResponseProfileType.INCLUDE_FIELDS, fields);
+    }
+
+    /**
+     * @param fields the names of the fields to leave out, as in the Kaltura API, e.g. {@code description}.
+     * @return a profile returning all but the given fields.
+     */
+    public static BaseResponseProfile excludeFields(String... fields) {
+        return createProfile(ResponseProfileType.EXCLUDE_FIELDS, fields);
+    }
+
+    private static BaseResponseProfile createProfile(ResponseProfileType type, String... fields) {
+        if (fields.length == 0) {
+            throw new IllegalArgumentException("At least one field must be given");
+        }
+        DetachedResponseProfile profile = new DetachedResponseProfile();
+        profile.setType(type);
+        profile.setFields(String.join(",", fields));
+        return profile;
+    }
+}
@@ -0,0 +1,127 @@
+package dk.kb.kaltura.client;
+
+import com.kaltura.client.types.APIException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which failed requests are retried by {@link DsKalturaClientBase#handleRequest(
+ * com.kaltura.client.utils.request.BaseRequestBuilder)} and how long to wait before each retry.
+ * <p>
+ * Failures are classified as:
+ * <ul>
+ * <li>{@link ErrorType#SESSION}: the Kaltura session was rejected. The session is refreshed and the request is sent
+ * again once, whatever the request, as Kaltura did not process it.
+ * <li>{@link ErrorType#TRANSIENT}: the request failed in transport, timed out, or Kaltura answered with a server
+ * error or throttling. Only requests that read, such as {@code list}, {@code get} and {@code count}, are retried, as
+ * a request that changes something may have been processed even though the response was lost.
+ * <li>{@link ErrorType#PERMANENT}: Kaltura rejected the request, e.g. {@code ENTRY_ID_NOT_FOUND}. Never retried.
+ * </ul>
+ * The wait before a retry is doubled for each attempt up to {@code maxBackoff}, and a random part of up to half of
+ * it is subtracted, so clients failing at the same time do not retry at the same time.
+ */
+public final class RetryPolicy {
+
+    /**
+     * Sends each request once. Rejected sessions are still refreshed and the request sent again.
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(1, Duration.ZERO, Duration.ZERO);
+
+    /**
+     * 4 attempts, waiting about 1, 2 and 4 seconds between them.
+     */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(4, Duration.ofSeconds(1), Duration.ofSeconds(30));
+
+    public enum ErrorType {SESSION, TRANSIENT, PERMANENT}
+
+    // Kaltura error codes for a session that is expired or otherwise not accepted
+    private static final Set<String> SESSION_CODES = Set.of("INVALID_KS", "EXPIRED_KS");
+    // Kaltura error codes for failures at the server side that are not caused by the request
+    private static final Set<String> TRANSIENT_CODES = Set.of("INTERNAL_SERVERL_ERROR", "SERVICE_UNAVAILABLE");
+    // Actions that do not change anything at Kaltura, so they can be sent again safely
+    private static final Set<String> READ_ACTIONS = Set.of("get", "list", "count", "search", "searchentry");
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    /**
+     * @param maxAttempts    the maximum number of times a request is sent, including the first. Must be at least 1.
+     * @param initialBackoff the wait before the first retry.
+     * @param maxBackoff     the longest wait before a retry.
+     */
+    public RetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1, but was " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoff.toMillis();
+        this.maxBackoffMillis = Math.max(initialBackoffMillis, maxBackoff.toMillis());
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param attempt the attempt that failed, starting at 1.
+     * @return the number of milliseconds to wait before sending the request again.
+     */
+    long getBackoffMillis(int attempt) {
+        return getBackoffMillis(attempt, ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * @param attempt the attempt that failed, starting at 1.
+     * @param random  a random number from 0 (inclusive) to 1 (exclusive).
+     * @return the number of milliseconds to wait before sending the request again.
+     */
+    long getBackoffMillis(int attempt, double random) {
+        long backoff = initialBackoffMillis << Math.min(attempt - 1, 30);
+        if (backoff < 0 || backoff > maxBackoffMillis) {
+            backoff = maxBackoffMillis;
+        }
+        return backoff - (long) (backoff / 2.0 * random);
+    }
+
+    /**
+     * @param action the action of the request, such as {@code list}. Null for multirequests.
+     * @return true if the request only reads, so it can be sent again after a transient failure.
+     */
+    static boolean isReadAction(String action) {
+        return action != null && READ_ACTIONS.contains(action.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @param e the failure of a request.
+     * @return how the failure should be handled.
+     */
+    static ErrorType classify(APIException e) {
+        String code = e.getCode();
+        if (code == null || code.isBlank() || e.getCause() instanceof IOException) {
+            return ErrorType.TRANSIENT; // Failed before Kaltura answered
+        }
+        if (SESSION_CODES.contains(code)) {
+            return ErrorType.SESSION;
+        }
+        if (TRANSIENT_CODES.contains(code)) {
+            return ErrorType.TRANSIENT;
+        }
+        if (code.chars().allMatch(Character::isDigit)) {
+            // HTTP status given as code when the response was not a Kaltura response
+            int status = Integer.parseInt(code);
+            return status == 408 || status == 429 || status >= 500 ? ErrorType.TRANSIENT : ErrorType.PERMANENT;
+        }
+        return ErrorType.PERMANENT;
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy(maxAttempts=" + maxAttempts + ", initialBackoffMillis=" + initialBackoffMillis +
+                ", maxBackoffMillis=" + maxBackoffMillis + ")";
+    }
+}
@@ -0,0 +1,377 @@
+package dk.kb.kaltura.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only local journal of the upload steps per referenceId, so a bulk ingest that was interrupted can be
+ * restarted without uploading everything again. Use it as the {@link UploadListener} of
+ * {@link DsKalturaClient#uploadMedia(String, String, com.kaltura.client.enums.MediaType, String, String, String,
+ * dk.kb.kaltura.enums.FileExtension, Integer, UploadListener)} and look up the {@link State} of a referenceId before
+ * uploading it:
+ * <ul>
+ *   <li>{@link State#isUploaded()}: The upload is complete and can be skipped</li>
+ *   <li>{@link State#getUploadTokenId()} is set: The upload can be continued with
+ *   {@link DsKalturaClient#resumeUploadMedia(String, String, String, String, com.kaltura.client.enums.MediaType,
+ *   String, String, String, dk.kb.kaltura.enums.FileExtension, Integer, UploadListener)}, which uploads the missing
+ *   bytes and attaches the token to the entry, creating the entry if it was not created</li>
+ *   <li>{@link State#hasOnlyIntent()}: The upload was sent, but its outcome was not recorded. Kaltura may have
+ *   created an entry, so look it up with {@link DsKalturaClient#getEntryIdsByReferenceId(String)} before uploading
+ *   again</li>
+ *   <li>No state: Nothing was sent to Kaltura for the referenceId</li>
+ * </ul>
+ * <p>
+ * Each step is written to the file as a line when it happens, so the journal survives the process being killed. The
+ * file is forced to disk at most once per sync interval instead of for every line, as the steps of many uploads are
+ * written concurrently. After a machine crash the steps of the last interval may be missing, which only causes
+ * repeated work: Kaltura holds the authoritative number of bytes and the entry attached to a token.
+ * <p>
+ * Lines are {@code time, step, referenceId, uploadTokenId, entryId, bytes} separated by tabs. An incomplete last
+ * line, as left by a crash while writing, is ignored when the journal is opened.
+ */
+public class UploadJournal implements UploadListener, Closeable {
+    private static final Logger log = LoggerFactory.getLogger(UploadJournal.class);
+
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 1000;
+
+    private enum Step {INTENT, TOKEN, ENTRY, DETACHED, BYTES, UPLOADED}
+
+    private final Path file;
+    private final FileChannel channel;
+    private final Map<String, State> states = new HashMap<>();
+    private final ScheduledExecutorService syncer;
+    private boolean dirty = false;
+
+    /**
+     * Opens the journal with syncs every {@value #DEFAULT_SYNC_INTERVAL_MILLIS} ms, creating the file if it does not
+     * exist.
+     *
+     * @param file the journal file.
+     * @throws IOException if the journal could not be read or opened for writing.
+     */
+    public UploadJournal(Path file) throws IOException {
+        this(file, DEFAULT_SYNC_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Opens the journal, creating the file if it does not exist.
+     *
+     * @param file               the journal file.
+     * @param syncIntervalMillis the maximum time between a step being written and forced to disk.
+     * @throws IOException if the journal could not be read or opened for writing.
+     */
+    public UploadJournal(Path file, long syncIntervalMillis) throws IOException {
+        if (syncIntervalMillis < 1) {
+            throw new IllegalArgumentException("syncIntervalMillis must be at least 1, but was " + syncIntervalMillis);
+        }
+        this.file = file;
+        boolean endsWithLineBreak = load();
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        if (!endsWithLineBreak) {
+            channel.write(ByteBuffer.wrap(new byte[]{'\n'})); // Terminate an incomplete last line
+        }
+        syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "UploadJournal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis,
+                TimeUnit.MILLISECONDS);
+        log.info("Opened upload journal '{}' with {} referenceIds, {} uploaded",
+                file, states.size(), states.values().stream().filter(State::isUploaded).count());
+    }
+
+    /**
+     * Reads the existing steps, if any.
+     *
+     * @return true if the file is empty or ends with a line break.
+     */
+    private boolean load() throws IOException {
+        if (!Files.exists(file)) {
+            return true;
+        }
+        int lineNumber = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    apply(line);
+                } catch (RuntimeException e) {
+                    log.warn("Ignoring malformed line {} in upload journal '{}': '{}'", lineNumber, file, line);
+                }
+            }
+        }
+        try (FileChannel readChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (readChannel.size() == 0) {
+                return true;
+            }
+            ByteBuffer last = ByteBuffer.allocate(1);
+            readChannel.read(last, readChannel.size() - 1);
+            return last.get(0) == '\n';
+        }
+    }
+
+    private void apply(String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length != 6) {
+            throw new IllegalArgumentException("Expected 6 fields but got " + fields.length);
+        }
+        Step step = Step.valueOf(fields[1]);
+        String referenceId = unescape(fields[2]);
+        String uploadTokenId = fields[3].isEmpty() ? null : unescape(fields[3]);
+        String entryId = fields[4].isEmpty() ? null : unescape(fields[4]);
+        long bytes = Long.parseLong(fields[5]);
+        states.put(referenceId, states.getOrDefault(referenceId, State.EMPTY)
+                .apply(step, uploadTokenId, entryId, bytes));
+    }
+
+    /**
+     * @return the recorded state of the upload of the referenceId, or null if nothing has been recorded.
+     */
+    public synchronized State get(String referenceId) {
+        return states.get(referenceId);
+    }
+
+    /**
+     * @return the number of referenceIds in the journal.
+     */
+    public synchronized int size() {
+        return states.size();
+    }
+
+    @Override
+    public void uploadStarting(String referenceId) {
+        append(Step.INTENT, referenceId, null, null, 0);
+    }
+
+    @Override
+    public void tokenCreated(String referenceId, String uploadTokenId) {
+        append(Step.TOKEN, referenceId, uploadTokenId, null, 0);
+    }
+
+    @Override
+    public void entryCreated(String referenceId, String uploadTokenId, String entryId, boolean attached) {
+        append(attached ? Step.ENTRY : Step.DETACHED, referenceId, uploadTokenId, entryId, 0);
+    }
+
+    @Override
+    public void bytesAcknowledged(String referenceId, String uploadTokenId, long bytes) {
+        append(Step.BYTES, referenceId, uploadTokenId, null, bytes);
+    }
+
+    @Override
+    public void uploaded(String referenceId, String uploadTokenId, String entryId) {
+        append(Step.UPLOADED, referenceId, uploadTokenId, entryId, 0);
+    }
+
+    /**
+     * Writes the step and updates the state of the referenceId. The step is forced to disk with the next sync.
+     *
+     * @throws UncheckedIOException if the step could not be written, as uploads should not continue unrecorded.
+     */
+    private synchronized void append(Step step, String referenceId, String uploadTokenId, String entryId,
+                                     long bytes) {
+        String line = System.currentTimeMillis() + "\t" + step + "\t" + escape(referenceId) + "\t" +
+                (uploadTokenId == null ? "" : escape(uploadTokenId)) + "\t" +
+                (entryId == null ? "" : escape(entryId)) + "\t" + bytes + "\n";
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write to upload journal '" + file + "'", e);
+        }
+        dirty = true;
+        states.put(referenceId, states.getOrDefault(referenceId, State.EMPTY)
+                .apply(step, uploadTokenId, entryId, bytes));
+    }
+
+    /**
+     * Forces the steps written since the last sync to disk.
+     */
+    public void sync() throws IOException {
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+        }
+        // Outside the lock so steps can be written while forcing. Steps written meanwhile are forced next time
+        channel.force(false);
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            log.error("Unable to sync upload journal '{}'", file, e);
+        }
+    }
+
+    /**
+     * Forces all steps to disk and closes the journal.
+     */
+    @Override
+    public void close() throws IOException {
+        syncer.shutdown();
+        try {
+            syncer.awaitTermination(10, TimeUnit.SECONDS); // Let a running sync finish before closing the channel
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            dirty = true;
+        }
+        sync();
+        channel.close();
+    }
+
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char escaped = value.charAt(++i);
+                sb.append(escaped == 't' ? '\t' : escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The recorded progress of the upload of a referenceId. Immutable.
+     */
+    public static final class State {
+        static final State EMPTY = new State(null, null, false, 0, false, false);
+
+        private final String uploadTokenId;
+        private final String entryId;
+        private final boolean attached;
+        private final long bytesAcknowledged;
+        private final boolean uploaded;
+        private final boolean intent;
+
+        private State(String uploadTokenId, String entryId, boolean attached, long bytesAcknowledged,
+                      boolean uploaded, boolean intent) {
+            this.uploadTokenId = uploadTokenId;
+            this.entryId = entryId;
+            this.attached = attached;
+            this.bytesAcknowledged = bytesAcknowledged;
+            this.uploaded = uploaded;
+            this.intent = intent;
+        }
+
+        private State(String uploadTokenId, String entryId, boolean attached, long bytesAcknowledged,
+                      boolean uploaded) {
+            this(uploadTokenId, entryId, attached, bytesAcknowledged, uploaded, false);
+        }
+
+        State apply(Step step, String stepTokenId, String stepEntryId, long bytes) {
+            if (step == Step.INTENT) {
+                // A new upload of the referenceId, which starts over when its token is created
+                return new State(uploadTokenId, entryId, attached, bytesAcknowledged, uploaded, true);
+            }
+            String token = stepTokenId == null ? uploadTokenId : stepTokenId;
+            if (stepTokenId != null && !stepTokenId.equals(uploadTokenId)) {
+                // A new upload of the referenceId started over with a new token
+                return new State(token, stepEntryId, step == Step.ENTRY, bytes, step == Step.UPLOADED);
+            }
+            String entry = stepEntryId == null ? entryId : stepEntryId;
+            switch (step) {
+                case TOKEN:
+                    return new State(token, entry, attached, bytesAcknowledged, uploaded);
+                case ENTRY:
+                    return new State(token, entry, true, bytesAcknowledged, uploaded);
+                case DETACHED:
+                    return new State(token, entry, false, bytesAcknowledged, uploaded);
+                case BYTES:
+                    return new State(token, entry, attached, Math.max(bytesAcknowledged, bytes), uploaded);
+                case UPLOADED:
+                    return new State(token, entry, true, bytesAcknowledged, true);
+                default:
+                    throw new IllegalArgumentException("Unknown step " + step);
+            }
+        }
+
+        /**
+         * @return true if an upload of the referenceId was sent to Kaltura, but no upload token or entry was recorded.
+         * Kaltura may have created an entry for it anyway, e.g. if the process was killed while waiting for the
+         * response.
+         */
+        public boolean hasOnlyIntent() {
+            return intent && uploadTokenId == null && entryId == null;
+        }
+
+        /**
+         * @return the upload token of the latest upload of the referenceId, or null if none was created.
+         */
+        public String getUploadTokenId() {
+            return uploadTokenId;
+        }
+
+        /**
+         * @return the Kaltura ID of the entry, or null if no entry was created.
+         */
+        public String getEntryId() {
+            return entryId;
+        }
+
+        /**
+         * @return true if the upload token is attached to the entry.
+         */
+        public boolean isAttached() {
+            return attached;
+        }
+
+        /**
+         * @return the highest number of bytes of the file acknowledged by Kaltura as recorded in the journal.
+         */
+        public long getBytesAcknowledged() {
+            return bytesAcknowledged;
+        }
+
+        /**
+         * @return true if the whole file was uploaded and attached to the entry.
+         */
+        public boolean isUploaded() {
+            return uploaded;
+        }
+
+        @Override
+        public String toString() {
+            return "State(uploadTokenId='" + uploadTokenId + "', entryId='" + entryId + "', attached=" + attached +
+                    ", bytesAcknowledged=" + bytesAcknowledged + ", uploaded=" + uploaded + ", intent=" + intent + ")";
+        }
+    }
+}
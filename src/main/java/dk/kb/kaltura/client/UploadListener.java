@@ -0,0 +1,43 @@
+package dk.kb.kaltura.client;
+
+/**
+ * Receives the steps of an upload as they are completed at Kaltura, e.g. for recording them in an
+ * {@link UploadJournal} so an interrupted upload can be continued instead of repeated.
+ * <p>
+ * Methods are called on the thread running the upload and should return quickly. All methods do nothing by default.
+ */
+public interface UploadListener {
+
+    /**
+     * An upload is about to send its first request to Kaltura. If no other step follows, Kaltura may or may not have
+     * created an upload token and an entry for the referenceId.
+     */
+    default void uploadStarting(String referenceId) {
+    }
+
+    /**
+     * An upload token was created, but the entry for it was not.
+     */
+    default void tokenCreated(String referenceId, String uploadTokenId) {
+    }
+
+    /**
+     * An entry was created for the upload token.
+     *
+     * @param attached true if the upload token is attached to the entry as content, false if attaching failed.
+     */
+    default void entryCreated(String referenceId, String uploadTokenId, String entryId, boolean attached) {
+    }
+
+    /**
+     * Kaltura has acknowledged the given number of bytes from the start of the file.
+     */
+    default void bytesAcknowledged(String referenceId, String uploadTokenId, long bytes) {
+    }
+
+    /**
+     * The whole file has been uploaded to the upload token and the token is attached to the entry.
+     */
+    default void uploaded(String referenceId, String uploadTokenId, String entryId) {
+    }
+}
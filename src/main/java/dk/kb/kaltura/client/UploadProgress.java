@@ -0,0 +1,70 @@
+package dk.kb.kaltura.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the bytes sent for an upload and logs the progress and throughput at regular intervals. Safe for concurrent
+ * use by the streams of parallel chunks.
+ */
+final class UploadProgress {
+    private static final Logger log = LoggerFactory.getLogger(UploadProgress.class);
+
+    private static final long LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final double MB = 1024 * 1024;
+
+    private final String name;
+    private final long totalBytes;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong lastLogNanos = new AtomicLong(startNanos);
+
+    /**
+     * @param name       the name of the upload, used for logging.
+     * @param totalBytes the number of bytes to send.
+     */
+    UploadProgress(String name, long totalBytes) {
+        this.name = name;
+        this.totalBytes = totalBytes;
+    }
+
+    /**
+     * Registers that bytes have been read for sending.
+     */
+    void add(long bytes) {
+        long total = sent.addAndGet(bytes);
+        long now = System.nanoTime();
+        long lastLog = lastLogNanos.get();
+        if (now - lastLog >= LOG_INTERVAL_NANOS && lastLogNanos.compareAndSet(lastLog, now)) {
+            log.info(String.format(Locale.ROOT, "Sent %.1f/%.1f MB of '%s' (%.1f MB/s)",
+                    total / MB, totalBytes / MB, name, getBytesPerSecond() / MB));
+        }
+    }
+
+    /**
+     * Logs the total throughput of the upload.
+     */
+    void done() {
+        log.info(String.format(Locale.ROOT, "Sent %.1f MB of '%s' in %.1f seconds (%.1f MB/s)",
+                sent.get() / MB, name, (System.nanoTime() - startNanos) / 1e9, getBytesPerSecond() / MB));
+    }
+
+    /**
+     * @return the number of bytes sent, including bytes of chunks that were sent again after a failure.
+     */
+    long getBytesSent() {
+        return sent.get();
+    }
+
+    /**
+     * @return the average throughput since the upload started.
+     */
+    double getBytesPerSecond() {
+        double seconds = Math.max(1e-3, (System.nanoTime() - startNanos) / 1e9);
+        return sent.get() / seconds;
+    }
+}
@@ -0,0 +1,357 @@
+package dk.kb.kaltura.jobs;
+
+import com.kaltura.client.enums.MediaType;
+import dk.kb.kaltura.BuildInfoManager;
+import dk.kb.kaltura.client.DsKalturaClient;
+import dk.kb.kaltura.client.UploadJournal;
+import dk.kb.kaltura.enums.FileExtension;
+import dk.kb.kaltura.jobs.IdLookup.OutputFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * The script batchupload.sh will call this class main method. Uploads all files in a manifest using one Kaltura
+ * session, with a number of uploads running at the same time. Uploads wait when the conversion queue at Kaltura is
+ * full, as for single uploads.
+ * </p>
+ * <p>
+ * The manifest has a row per file with the columns filePath, referenceId, type, title, description, tag,
+ * fileExtension and conversionProfileId, with values as for the options of uploadfile.sh. description, tag and
+ * conversionProfileId may be empty. A result row is written for each manifest row as soon as its upload has
+ * finished, with the kalturaId or the error, so the result can be followed while the job runs. The exit code is 1 if
+ * one or more uploads failed.
+ * </p>
+ * <ul>
+ *   <li>argument 1) manifest - CSV or JSONL file with the files to upload, or '-' for stdin</li>
+ *   <li>option -manifestFormat or --manifestFormat. CSV or JSONL. Default is JSONL for .jsonl and .json files, else CSV</li>
+ *   <li>option -output or --output. File for the results, or '-' for stdout (default)</li>
+ *   <li>option -format or --format. The format of the results: CSV (default) or JSONL</li>
+ *   <li>option -parallel or --parallel. The number of files uploaded at the same time. Default: 4</li>
+ *   <li>option -journal or --journal. Optional {@link UploadJournal} file recording the steps of each upload. When
+ *   the job is run again with the same journal, completed uploads are skipped and interrupted uploads are resumed.
+ *   Uploads interrupted before Kaltura answered are checked at Kaltura: they are uploaded again if no entry has the
+ *   referenceId, else they fail with the IDs of the entries to check</li>
+ * </ul>
+ */
+public class BatchUpload extends JobsBase implements Callable<Integer> {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchUpload.class);
+
+    static final String[] RESULT_COLUMNS =
+            {"line", "referenceId", "filePath", "kalturaId", "status", "startedAt", "millis", "bytes", "error"};
+
+    @CommandLine.Parameters(index = "0", type = String.class,
+            description = "CSV or JSONL manifest with the files to upload, or '-' for stdin")
+    private String manifest;
+
+    @CommandLine.Option(names = {"-manifestFormat", "--manifestFormat"}, type = UploadManifest.Format.class,
+            description = "Valid values: ${COMPLETION-CANDIDATES}. Default: JSONL for .jsonl and .json files, else CSV")
+    private UploadManifest.Format manifestFormat;
+
+    @CommandLine.Option(names = {"-output", "--output"}, type = String.class,
+            description = "File for the results, or '-' for stdout. Default: -")
+    private String output = "-";
+
+    @CommandLine.Option(names = {"-format", "--format"}, type = OutputFormat.class,
+            description = "Result format. Valid values: ${COMPLETION-CANDIDATES}. Default: CSV")
+    private OutputFormat format = OutputFormat.CSV;
+
+    @CommandLine.Option(names = {"-parallel", "--parallel"}, type = Integer.class,
+            description = "The number of files uploaded at the same time. Default: 4")
+    private int parallel = 4;
+
+    @CommandLine.Option(names = {"-journal", "--journal"}, type = String.class,
+            description = "Journal file for restarting an interrupted batch without uploading completed files again")
+    private String journalFile;
+
+    private UploadJournal journal = null;
+
+    /*
+     * Implement the normal 'main' method here
+     */
+    @Override
+    public Integer call() throws Exception {
+        if (parallel < 1) {
+            System.err.println("-parallel must be at least 1, but was " + parallel);
+            return 2;
+        }
+        UploadManifest.Format inputFormat = manifestFormat != null ? manifestFormat :
+                "-".equals(manifest) ? UploadManifest.Format.CSV : UploadManifest.Format.fromFileName(manifest);
+
+        ResultWriter results = new ResultWriter(openOutput(), format, !"-".equals(output));
+        try (DsKalturaClient kalturaClient = getKalturaClient();
+             UploadManifest rows = new UploadManifest(openManifest(), inputFormat)) {
+            journal = journalFile == null ? null : new UploadJournal(Path.of(journalFile));
+            uploadAll(kalturaClient, rows, results);
+        } finally {
+            results.close();
+            if (journal != null) {
+                journal.close();
+            }
+        }
+        log.info("Batch upload finished: {} uploaded, {} skipped, {} failed",
+                results.uploaded.get(), results.skipped.get(), results.failed.get());
+        return results.failed.get() == 0 ? 0 : 1;
+    }
+
+    /**
+     * Submits the rows of the manifest to a pool of {@link #parallel} workers. The manifest is only read as fast as
+     * the workers take rows, so the number of rows held in memory is bounded.
+     */
+    private void uploadAll(DsKalturaClient kalturaClient, UploadManifest rows, ResultWriter results)
+            throws IOException, InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(parallel);
+        Semaphore freeWorkers = new Semaphore(parallel);
+        try {
+            while (true) {
+                UploadManifest.Row row;
+                try {
+                    row = rows.next();
+                } catch (IllegalArgumentException e) {
+                    log.warn("Skipping malformed manifest row: {}", e.getMessage());
+                    results.write(new UploadResult(rows.getLineNumber(), null, null, System.currentTimeMillis())
+                            .failed(e, 0));
+                    continue;
+                }
+                if (row == null) {
+                    break;
+                }
+                freeWorkers.acquire();
+                workers.execute(() -> {
+                    try {
+                        results.write(upload(kalturaClient, row));
+                    } finally {
+                        freeWorkers.release();
+                    }
+                });
+            }
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Uploads the file of a manifest row.
+     *
+     * @return the result of the upload. Failures are returned as results, never thrown.
+     */
+    private UploadResult upload(DsKalturaClient kalturaClient, UploadManifest.Row row) {
+        long start = System.currentTimeMillis();
+        UploadResult result = new UploadResult(row.getLineNumber(), row.get("referenceId"), row.get("filePath"),
+                start);
+        long bytes = 0;
+        try {
+            String filePath = row.getRequired("filePath");
+            String referenceId = row.getRequired("referenceId");
+            MediaType mediaType = UploadFile.toMediaType(
+                    UploadFile.MEDIATYPES.valueOf(row.getRequired("type").toUpperCase(Locale.ROOT)));
+            FileExtension fileExtension =
+                    FileExtension.valueOf(row.getRequired("fileExtension").toUpperCase(Locale.ROOT));
+            String conversionProfile = row.get("conversionProfileId");
+            Integer conversionProfileId = conversionProfile == null ? null : Integer.valueOf(conversionProfile);
+            bytes = Files.size(Path.of(filePath));
+
+            UploadJournal.State state = journal == null ? null : journal.get(referenceId);
+            if (state != null && state.isUploaded()) {
+                log.info("Skipping '{}' with referenceId '{}' as it was uploaded as kalturaId '{}'",
+                        filePath, referenceId, state.getEntryId());
+                return result.done(Status.SKIPPED, state.getEntryId(), bytes);
+            }
+            if (state != null && state.hasOnlyIntent()) {
+                List<String> existing = kalturaClient.getEntryIdsByReferenceId(referenceId);
+                if (!existing.isEmpty()) {
+                    throw new IllegalStateException("The upload of referenceId '" + referenceId + "' was " +
+                            "interrupted before Kaltura answered, and Kaltura has the entries " + existing +
+                            " with the referenceId. Check or delete them before uploading again");
+                }
+                log.info("Uploading '{}' with referenceId '{}' again, as the interrupted upload did not create " +
+                        "an entry", filePath, referenceId);
+            }
+            if (state != null && state.getUploadTokenId() != null) {
+                log.info("Resuming upload of '{}' with referenceId '{}' from journal state {}",
+                        filePath, referenceId, state);
+                String kalturaId = kalturaClient.resumeUploadMedia(state.getUploadTokenId(), state.getEntryId(),
+                        filePath, referenceId, mediaType, row.getRequired("title"), row.get("description"),
+                        row.get("tag"), fileExtension, conversionProfileId, journal);
+                return result.done(Status.RESUMED, kalturaId, bytes);
+            }
+
+            String kalturaId = kalturaClient.uploadMedia(filePath, referenceId, mediaType,
+                    row.getRequired("title"), row.get("description"), row.get("tag"), fileExtension,
+                    conversionProfileId, journal);
+            log.info("Uploaded '{}' with referenceId '{}' as kalturaId '{}'", filePath, referenceId, kalturaId);
+            return result.done(Status.UPLOADED, kalturaId, bytes);
+        } catch (Exception e) {
+            log.warn("Upload of line {} with referenceId '{}' failed", row.getLineNumber(), row.get("referenceId"), e);
+            return result.failed(e, bytes);
+        }
+    }
+
+    private BufferedReader openManifest() throws IOException {
+        return "-".equals(manifest) ?
+                new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)) :
+                Files.newBufferedReader(Path.of(manifest), StandardCharsets.UTF_8);
+    }
+
+    private PrintWriter openOutput() throws IOException {
+        return "-".equals(output) ?
+                new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), false) :
+                new PrintWriter(Files.newBufferedWriter(Path.of(output), StandardCharsets.UTF_8), false);
+    }
+
+    enum Status {UPLOADED, RESUMED, SKIPPED, FAILED}
+
+    /**
+     * The outcome of uploading a manifest row.
+     */
+    static class UploadResult {
+        final int line;
+        final String referenceId;
+        final String filePath;
+        final long startedAt;
+        String kalturaId;
+        Status status = Status.FAILED;
+        long millis;
+        long bytes;
+        String error;
+
+        UploadResult(int line, String referenceId, String filePath, long startedAt) {
+            this.line = line;
+            this.referenceId = referenceId;
+            this.filePath = filePath;
+            this.startedAt = startedAt;
+        }
+
+        UploadResult done(Status status, String kalturaId, long bytes) {
+            this.kalturaId = kalturaId;
+            this.status = status;
+            this.bytes = bytes;
+            this.millis = System.currentTimeMillis() - startedAt;
+            return this;
+        }
+
+        UploadResult failed(Exception e, long bytes) {
+            this.error = e.getClass().getSimpleName() + ": " + e.getMessage();
+            this.bytes = bytes;
+            this.millis = System.currentTimeMillis() - startedAt;
+            return this;
+        }
+
+        /**
+         * @return the values in the order of {@link #RESULT_COLUMNS}. Missing values are null.
+         */
+        String[] values() {
+            return new String[]{Integer.toString(line), referenceId, filePath, kalturaId,
+                    status.toString(), Instant.ofEpochMilli(startedAt).toString(),
+                    Long.toString(millis), Long.toString(bytes), error};
+        }
+    }
+
+    /**
+     * Writes results as they arrive from the workers, flushing after each row so the result file can be followed.
+     */
+    static class ResultWriter {
+        private final PrintWriter out;
+        private final OutputFormat format;
+        private final boolean closeOutput;
+        final AtomicInteger uploaded = new AtomicInteger();
+        final AtomicInteger skipped = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+
+        /**
+         * @param closeOutput false if {@code out} wraps stdout, which is only flushed when closing.
+         */
+        ResultWriter(PrintWriter out, OutputFormat format, boolean closeOutput) {
+            this.out = out;
+            this.format = format;
+            this.closeOutput = closeOutput;
+            if (format == OutputFormat.CSV) {
+                out.println(String.join(",", RESULT_COLUMNS));
+                out.flush();
+            }
+        }
+
+        synchronized void write(UploadResult result) {
+            (result.status == Status.FAILED ? failed : result.status == Status.SKIPPED ? skipped : uploaded)
+                    .incrementAndGet();
+            String[] values = result.values();
+            StringBuilder row = new StringBuilder();
+            if (format == OutputFormat.CSV) {
+                for (int i = 0; i < values.length; i++) {
+                    row.append(i == 0 ? "" : ",").append(values[i] == null ? "" : IdLookup.csv(values[i]));
+                }
+            } else {
+                row.append('{');
+                for (int i = 0; i < values.length; i++) {
+                    row.append(i == 0 ? "" : ",").append(IdLookup.json(RESULT_COLUMNS[i])).append(':')
+                            .append(values[i] == null ? "null" : IdLookup.json(values[i]));
+                }
+                row.append('}');
+            }
+            out.println(row);
+            out.flush();
+        }
+
+        /**
+         * Closes a result file. stdout is only flushed, as it belongs to the JVM.
+         */
+        synchronized void close() {
+            if (out.checkError()) {
+                log.error("Writing results failed");
+            }
+            if (closeOutput) {
+                out.close();
+            }
+        }
+    }
+
+
+    public static void main(String... args) {
+        BuildInfoManager.logApplicationInfo(); // Mandated by Operations
+        // stderr as stdout may be used for the results
+        System.err.println("Arguments passed by commandline is: " + Arrays.asList(args));
+
+        CommandLine app = new CommandLine(new BatchUpload());
+        int exitCode = app.execute(args);
+        SystemControl.exit(exitCode);
+    }
+
+
+    /**
+     * Handles communication with the calling environment. Currently only in the form of sending the proper exit code.
+     */
+    static class SystemControl {
+        static void exit(int exitCode) {
+            if (exitCode == 0) {
+                log.info("Exiting with code 0 (success)");
+            } else {
+                log.error("Exiting with code " + exitCode + " (fail)");
+            }
+            System.exit(exitCode);
+        }
+    }
+
+}
@@ -1,60 +1,243 @@
 package dk.kb.kaltura.jobs;
 
 
+import com.kaltura.client.types.APIException;
 import dk.kb.kaltura.BuildInfoManager;
 import dk.kb.kaltura.client.DsKalturaClient;
+import dk.kb.kaltura.client.DsKalturaClientBase;
 
 import picocli.CommandLine;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * <p>
- * The script idlookup.sh will call this class main method. If the record is found in Kaltura the method will log the internal Kaltura ID.  
- * The script takes 1 argument that must be defined:
+ * The script idlookup.sh will call this class main method. If the record is found in Kaltura the method will log the internal Kaltura ID.
+ * The script takes 1 argument or the option -input:
  * </p>
  * <ul>
  *   <li>1) referenceId- The referenceId given to the record by us when the file was uploaded to Kaltura</li>
+ *   <li>option -input or --input. File with one ID per line, or '-' for stdin. Enables bulk mode where the IDs are
+ *   resolved in batches and a row is written to stdout for each ID, also the ones that were not found</li>
+ *   <li>option -reverse or --reverse. In bulk mode, the input contains kalturaIds to resolve to referenceIds</li>
+ *   <li>option -format or --format. In bulk mode, the output format: CSV (default) or JSONL</li>
  * </ul>
  */
-public class IdLookup extends JobsBase implements Callable<Integer>{ 
+public class IdLookup extends JobsBase implements Callable<Integer>{
 
     private static final Logger log = LoggerFactory.getLogger(IdLookup.class);
 
-    @CommandLine.Parameters(index = "0", type = String.class) //Required
+    public enum OutputFormat {CSV, JSONL}
+
+    @CommandLine.Parameters(index = "0", type = String.class, arity = "0..1",
+            description = "The referenceId to look up. Required unless -input is given.")
     private String referenceId;
-        
-    
+
+    @CommandLine.Option(names = {"-input", "--input"}, type = String.class,
+            description = "File with one ID per line, or '-' for stdin. Enables bulk mode.")
+    private String input;
+
+    @CommandLine.Option(names = {"-reverse", "--reverse"},
+            description = "Bulk mode: the input contains kalturaIds to resolve to referenceIds.")
+    private boolean reverse = false;
+
+    @CommandLine.Option(names = {"-format", "--format"}, type = OutputFormat.class,
+            description = "Bulk mode output format. Valid values: ${COMPLETION-CANDIDATES}. Default: CSV")
+    private OutputFormat format = OutputFormat.CSV;
+
+    @CommandLine.Option(names = {"-parallel", "--parallel"}, type = Integer.class,
+            description = "Bulk mode: the number of batches resolved at the same time. Default: 4")
+    private int parallel = 4;
+
     /*
      * Implement the normal 'main' method here
      */
     @Override
-    public Integer call() throws Exception {        
+    public Integer call() throws Exception {
+       if (input == null && referenceId == null) {
+           System.err.println("Either a referenceId or the option -input must be given");
+           return 2;
+       }
+       if (parallel < 1) {
+           System.err.println("-parallel must be at least 1, but was " + parallel);
+           return 2;
+       }
 
-       DsKalturaClient kalturaClient = getKalturaClient();
-       String kalturaId=kalturaClient.getKalturaInternalId(referenceId);
-       String message="ReferenceId:"+referenceId +" -> kalturaId:"+kalturaId;
-       log.info(message);
-       System.out.println(message);
+       try (DsKalturaClient kalturaClient = getKalturaClient()) {
+           if (input != null) {
+               bulkLookup(kalturaClient);
+               return 0;
+           }
+           String kalturaId=kalturaClient.getKalturaInternalId(referenceId);
+           String message="ReferenceId:"+referenceId +" -> kalturaId:"+kalturaId;
+           log.info(message);
+           System.out.println(message);
+       }
        return 0; //Exit code
     }
 
+    /**
+     * Reads IDs from {@link #input}, resolves them in batches of {@link DsKalturaClientBase#MAX_BATCH_SIZE} and writes
+     * a row per ID to stdout as soon as its batch and all batches before it have been resolved. Up to
+     * {@link #parallel} batches are resolved at the same time. Blank lines are ignored.
+     */
+    private void bulkLookup(DsKalturaClient kalturaClient) throws IOException, APIException {
+        String fromColumn = reverse ? "kalturaId" : "referenceId";
+        String toColumn = reverse ? "referenceId" : "kalturaId";
+        // stdout is not closed, only flushed, as it belongs to the JVM
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), false);
+        if (format == OutputFormat.CSV) {
+            out.println(fromColumn + "," + toColumn + ",found");
+        }
+
+        Deque<Batch> inFlight = new ArrayDeque<>();
+        int[] counts = new int[2]; // found, not found
+        try (BufferedReader reader = openInput()) {
+            List<String> ids = new ArrayList<>(DsKalturaClientBase.MAX_BATCH_SIZE);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String id = line.trim();
+                if (id.isEmpty()) {
+                    continue;
+                }
+                ids.add(id);
+                if (ids.size() == DsKalturaClientBase.MAX_BATCH_SIZE) {
+                    inFlight.add(new Batch(ids, resolve(kalturaClient, ids)));
+                    ids = new ArrayList<>(DsKalturaClientBase.MAX_BATCH_SIZE);
+                    if (inFlight.size() >= parallel) {
+                        writeBatch(inFlight.poll(), fromColumn, toColumn, out, counts);
+                    }
+                }
+            }
+            if (!ids.isEmpty()) {
+                inFlight.add(new Batch(ids, resolve(kalturaClient, ids)));
+            }
+            while (!inFlight.isEmpty()) {
+                writeBatch(inFlight.poll(), fromColumn, toColumn, out, counts);
+            }
+        } finally {
+            out.flush();
+            inFlight.forEach(batch -> batch.result.cancel(false));
+        }
+        log.info("Resolved {} {}s: {} found, {} not found", counts[0] + counts[1], fromColumn, counts[0], counts[1]);
+    }
+
+    private BufferedReader openInput() throws IOException {
+        return "-".equals(input) ?
+                new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)) :
+                Files.newBufferedReader(Path.of(input), StandardCharsets.UTF_8);
+    }
+
+    private CompletableFuture<Map<String, String>> resolve(DsKalturaClient kalturaClient, List<String> ids) {
+        return reverse ? kalturaClient.getReferenceIdsAsync(ids) : kalturaClient.getKalturaIdsAsync(ids);
+    }
+
+    /**
+     * Waits for the batch to be resolved and writes a row per ID in the batch, in input order.
+     */
+    private void writeBatch(Batch batch, String fromColumn, String toColumn, PrintWriter out, int[] counts)
+            throws APIException {
+        Map<String, String> result;
+        try {
+            result = batch.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while resolving IDs", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof APIException) {
+                throw (APIException) e.getCause();
+            }
+            throw new RuntimeException("Failed to resolve batch of " + batch.ids.size() + " IDs", e.getCause());
+        }
+
+        for (String id : batch.ids) {
+            String value = result.get(id);
+            counts[value == null ? 1 : 0]++;
+            if (format == OutputFormat.CSV) {
+                out.println(csv(id) + "," + (value == null ? "" : csv(value)) + "," + (value != null));
+            } else {
+                out.println("{\"" + fromColumn + "\":" + json(id) + ",\"" + toColumn + "\":" +
+                        (value == null ? "null" : json(value)) + ",\"found\":" + (value != null) + "}");
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Quotes the value if it contains characters with special meaning in CSV.
+     */
+    static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 &&
+                value.indexOf('\r') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * @return the value as a quoted JSON string.
+     */
+    static String json(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * IDs in input order together with the pending lookup for them.
+     */
+    private static class Batch {
+        final List<String> ids;
+        final CompletableFuture<Map<String, String>> result;
+
+        Batch(List<String> ids, CompletableFuture<Map<String, String>> result) {
+            this.ids = ids;
+            this.result = result;
+        }
+    }
+
 
     public static void main(String... args) {
         BuildInfoManager.logApplicationInfo(); // Mandated by Operations
-        System.out.println("Arguments passed by commandline is: " + Arrays.asList(args));
-        
+        // stderr as stdout is used for the output of bulk lookups
+        System.err.println("Arguments passed by commandline is: " + Arrays.asList(args));
+
         CommandLine app = new CommandLine(new IdLookup());
         int exitCode = app.execute(args);
         SystemControl.exit(exitCode);
     }
 
- 
-    
+
+
     /**
      * Handles communication with the calling environment. Currently only in the form of sending the proper exit code.
      */
@@ -69,4 +252,4 @@ public class IdLookup extends JobsBase implements Callable<Integer>{
         }
     }
 
-}
\ No newline at end of file
+}
@@ -1,9 +1,16 @@
 package dk.kb.kaltura.jobs;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 
 import com.kaltura.client.types.APIException;
 import dk.kb.kaltura.client.DsKalturaClient;
+import dk.kb.kaltura.client.KalturaSessionCache;
+import dk.kb.kaltura.client.KalturaTransport;
+import dk.kb.kaltura.client.RateLimiter;
+import dk.kb.kaltura.client.RequestMetrics;
+import dk.kb.kaltura.client.RetryPolicy;
 import dk.kb.kaltura.config.ServiceConfig;
 
 /**
@@ -25,8 +32,61 @@ public abstract class JobsBase {
         int sessionRefreshThreshold = ServiceConfig.getConfig().getInteger("kaltura.sessionRefreshThreshold");
         int conversionQueueThreshold = ServiceConfig.getConfig().getInteger("kaltura.conversionQueueThreshold");
         int conversionQueueDelaySeconds = ServiceConfig.getConfig().getInteger("kaltura.conversionQueueDelaySeconds");
+        String sessionCacheFile = ServiceConfig.getConfig().getString("kaltura.sessionCacheFile", null);
+        // Jobs are started as new processes, so reuse the session from previous jobs if a cache is configured
+        KalturaSessionCache sessionCache = sessionCacheFile == null || sessionCacheFile.isBlank() ? null :
+                new KalturaSessionCache(Path.of(sessionCacheFile));
 
-        return new DsKalturaClient(kalturaUrl, userId, partnerId, token, tokenId, adminSecret,
-                sessionDurationSeconds, sessionRefreshThreshold, conversionQueueThreshold, conversionQueueDelaySeconds);
+        int uploadChunkSizeMB = ServiceConfig.getConfig().getInteger("kaltura.uploadChunkSizeMB", 0);
+        int uploadParallelism = ServiceConfig.getConfig().getInteger("kaltura.uploadParallelism", 1);
+        int retryMaxAttempts = ServiceConfig.getConfig().getInteger("kaltura.retryMaxAttempts",
+                RetryPolicy.DEFAULT.getMaxAttempts());
+        int retryInitialBackoffMillis = ServiceConfig.getConfig().getInteger("kaltura.retryInitialBackoffMillis", 1000);
+        int retryMaxBackoffMillis = ServiceConfig.getConfig().getInteger("kaltura.retryMaxBackoffMillis", 30000);
+        int requestsPerSecond = ServiceConfig.getConfig().getInteger("kaltura.requestsPerSecond", 0);
+        int requestBurst = ServiceConfig.getConfig().getInteger("kaltura.requestBurst", requestsPerSecond);
+        int uploadMBPerSecond = ServiceConfig.getConfig().getInteger("kaltura.uploadMBPerSecond", 0);
+        int uploadBurstMB = ServiceConfig.getConfig().getInteger("kaltura.uploadBurstMB", uploadMBPerSecond);
+        int slowRequestMillis = ServiceConfig.getConfig().getInteger("kaltura.slowRequestMillis",
+                (int) RequestMetrics.DEFAULT_SLOW_REQUEST_THRESHOLD.toMillis());
+        int metricsSummaryMinutes = ServiceConfig.getConfig().getInteger("kaltura.metricsSummaryMinutes",
+                (int) DsKalturaClient.DEFAULT_METRICS_SUMMARY_INTERVAL.toMinutes());
+        int httpMaxIdleConnections = ServiceConfig.getConfig().getInteger("kaltura.httpMaxIdleConnections",
+                KalturaTransport.DEFAULT_MAX_IDLE_CONNECTIONS);
+        int httpKeepAliveSeconds = ServiceConfig.getConfig().getInteger("kaltura.httpKeepAliveSeconds",
+                (int) KalturaTransport.DEFAULT_KEEP_ALIVE.toSeconds());
+        int httpConnectTimeoutMillis = ServiceConfig.getConfig().getInteger("kaltura.httpConnectTimeoutMillis",
+                (int) KalturaTransport.DEFAULT_CONNECT_TIMEOUT.toMillis());
+        int httpReadTimeoutMillis = ServiceConfig.getConfig().getInteger("kaltura.httpReadTimeoutMillis",
+                (int) KalturaTransport.DEFAULT_READ_TIMEOUT.toMillis());
+        int httpUploadReadTimeoutMillis = ServiceConfig.getConfig().getInteger("kaltura.httpUploadReadTimeoutMillis",
+                httpReadTimeoutMillis);
+        boolean http2 = ServiceConfig.getConfig().getBoolean("kaltura.http2", true);
+        boolean httpGzip = ServiceConfig.getConfig().getBoolean("kaltura.httpGzip", true);
+        boolean lookupResponseProfiles = ServiceConfig.getConfig().getBoolean("kaltura.lookupResponseProfiles", false);
+
+        DsKalturaClient client = new DsKalturaClient(kalturaUrl, userId, partnerId, token, tokenId, adminSecret,
+                sessionDurationSeconds, sessionRefreshThreshold, conversionQueueThreshold, conversionQueueDelaySeconds,
+                sessionCache);
+        KalturaTransport transport = new KalturaTransport(httpMaxIdleConnections,
+                Duration.ofSeconds(httpKeepAliveSeconds), Duration.ofMillis(httpConnectTimeoutMillis),
+                Duration.ofMillis(httpReadTimeoutMillis), http2, httpGzip);
+        transport.setReadTimeout("uploadtoken/upload", Duration.ofMillis(httpUploadReadTimeoutMillis));
+        client.setTransport(transport);
+        client.setUploadChunkSize(uploadChunkSizeMB * 1024L * 1024L);
+        client.setUploadParallelism(uploadParallelism);
+        client.setRetryPolicy(new RetryPolicy(retryMaxAttempts, Duration.ofMillis(retryInitialBackoffMillis),
+                Duration.ofMillis(retryMaxBackoffMillis)));
+        if (requestsPerSecond > 0) {
+            client.setRequestRateLimiter(new RateLimiter(requestsPerSecond, Math.max(1, requestBurst)));
+        }
+        if (uploadMBPerSecond > 0) {
+            client.setUploadRateLimiter(new RateLimiter(uploadMBPerSecond * 1024.0 * 1024.0,
+                    Math.max(1, uploadBurstMB) * 1024L * 1024L));
+        }
+        client.getRequestMetrics().setSlowRequestThreshold(Duration.ofMillis(slowRequestMillis));
+        client.setMetricsSummaryInterval(Duration.ofMinutes(metricsSummaryMinutes));
+        client.setLookupResponseProfiles(lookupResponseProfiles);
+        return client;
     }
 }
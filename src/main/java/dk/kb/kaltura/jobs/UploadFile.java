@@ -23,6 +23,7 @@ import java.util.concurrent.Callable;
  *   <li>option -title or --title.  The title of the video/audio. This can be  configured to be shown in the Kaltura player </li>
  *   <li>option -description or --description. A longer description of the video/audio. This can configured to be shown in the Kaltura player</li>
  *   <li>option -tag  or --tag. Use 'DR-KULTURA' since all uploaded record that then be found easy in Kaltura/li>
+ *   <li>option -resumeUploadToken or --resumeUploadToken. Optional upload token ID of an interrupted upload to continue</li>
  * </ul>
  */
 public class UploadFile extends JobsBase implements Callable<Integer> {
@@ -65,12 +66,34 @@ public class UploadFile extends JobsBase implements Callable<Integer> {
             description = "Id of the conversion/transcoding profile that will be used after file is uploaded")
     private Integer conversionProfileId;
 
+    @CommandLine.Option(names = {"-resumeUploadToken", "--resumeUploadToken"}, type = String.class,
+            description = "Continue an interrupted upload using the upload token ID logged by the interrupted upload")
+    private String resumeUploadToken;
+
     /*
      * Implement the normal 'main' method here
      */
     @Override
     public Integer call() throws Exception {
 
+        MediaType mediaType = toMediaType(mediatype);
+
+        DsKalturaClient kalturaClient = getKalturaClient();
+        String kalturaId = resumeUploadToken == null ?
+                kalturaClient.uploadMedia(filePath, referenceId, mediaType, title,
+                        description, tag, fileExtension, conversionProfileId) :
+                kalturaClient.resumeUploadMedia(resumeUploadToken, filePath, referenceId, mediaType, title,
+                        description, tag, fileExtension, conversionProfileId);
+        String message = "Upload success. Entry has kalturaId: " + kalturaId;
+        log.info(message);
+        System.out.println(message);
+        return 0; //Exit code
+    }
+
+    /**
+     * @return the Kaltura media type for the supported media type.
+     */
+    static MediaType toMediaType(MEDIATYPES mediatype) {
         MediaType mediaType = null;
         switch (mediatype) {
             case VIDEO:
@@ -81,14 +104,7 @@ public class UploadFile extends JobsBase implements Callable<Integer> {
                 mediaType = MediaType.AUDIO;
                 break;
         }
-
-        DsKalturaClient kalturaClient = getKalturaClient();
-        String kalturaId = kalturaClient.uploadMedia(filePath, referenceId, mediaType, title,
-                description, tag, fileExtension, conversionProfileId);
-        String message = "Upload success. Entry has kalturaId: " + kalturaId;
-        log.info(message);
-        System.out.println(message);
-        return 0; //Exit code
+        return mediaType;
     }
 
 
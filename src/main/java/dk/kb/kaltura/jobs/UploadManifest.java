@@ -0,0 +1,345 @@
+package dk.kb.kaltura.jobs;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads the rows of an upload manifest one at a time, so manifests of any size can be processed.
+ * <p>
+ * Two formats are supported:
+ * <ul>
+ *   <li>CSV: The first row holds the column names. Values containing commas, quotes or line breaks must be quoted
+ *   with {@code "}, and quotes in quoted values are written as {@code ""}</li>
+ *   <li>JSONL: One JSON object per line with string, number or null values</li>
+ * </ul>
+ * Blank lines are ignored. The columns are not validated by the reader, as an invalid row should not stop the
+ * remaining rows from being uploaded.
+ */
+public class UploadManifest implements Closeable {
+
+    public enum Format {
+        CSV, JSONL;
+
+        /**
+         * @return JSONL if the file name ends with {@code .jsonl} or {@code .json}, else CSV.
+         */
+        public static Format fromFileName(String fileName) {
+            String lower = fileName.toLowerCase(Locale.ROOT);
+            return lower.endsWith(".jsonl") || lower.endsWith(".json") ? JSONL : CSV;
+        }
+    }
+
+    private final BufferedReader reader;
+    private final Format format;
+    private List<String> columns = null; // CSV header, read with the first row
+    private int lineNumber = 0;
+    private int recordStartLine = 0; // First line of the most recent CSV record
+
+    /**
+     * @param reader the manifest. Closed by {@link #close()}.
+     * @param format the format of the manifest.
+     */
+    public UploadManifest(BufferedReader reader, Format format) {
+        this.reader = reader;
+        this.format = format;
+    }
+
+    /**
+     * @return the next row, or null if there are no more rows.
+     * @throws IOException              if the manifest could not be read.
+     * @throws IllegalArgumentException if the row is malformed. Reading can continue with the next row.
+     */
+    public Row next() throws IOException {
+        if (format == Format.JSONL) {
+            String line;
+            do {
+                line = reader.readLine();
+                lineNumber++;
+                if (line == null) {
+                    return null;
+                }
+            } while (line.isBlank());
+            return new Row(lineNumber, parseJsonObject(line, lineNumber));
+        }
+
+        if (columns == null) {
+            List<String> header = readCsvRecord();
+            if (header == null) {
+                return null;
+            }
+            columns = new ArrayList<>(header.size());
+            for (String column : header) {
+                columns.add(column.trim());
+            }
+        }
+        List<String> values = readCsvRecord();
+        if (values == null) {
+            return null;
+        }
+        if (values.size() > columns.size()) {
+            throw new IllegalArgumentException("Line " + recordStartLine + " has " + values.size() +
+                    " values, but the header only has " + columns.size() + " columns");
+        }
+        Map<String, String> fields = new LinkedHashMap<>();
+        for (int i = 0; i < values.size(); i++) {
+            fields.put(columns.get(i), values.get(i));
+        }
+        return new Row(recordStartLine, fields);
+    }
+
+    /**
+     * Reads a CSV record, which may span more than one line if a quoted value contains line breaks.
+     *
+     * @return the values of the record, or null at the end of the manifest.
+     */
+    private List<String> readCsvRecord() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            lineNumber++;
+            if (line == null) {
+                return null;
+            }
+        } while (line.isBlank());
+        recordStartLine = lineNumber;
+
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i == line.length()) {
+                if (!quoted) {
+                    break;
+                }
+                // Line break inside a quoted value
+                String next = reader.readLine();
+                lineNumber++;
+                if (next == null) {
+                    throw new IllegalArgumentException("Unterminated quoted value at the end of the manifest");
+                }
+                value.append('\n');
+                line = next;
+                i = 0;
+                continue;
+            }
+            char c = line.charAt(i++);
+            if (quoted) {
+                if (c == '"') {
+                    if (i < line.length() && line.charAt(i) == '"') {
+                        value.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    /**
+     * Parses a flat JSON object. Nested objects and arrays are not supported, as manifest values are single values.
+     * Numbers and booleans are returned as their textual representation and null as a Java null.
+     */
+    static Map<String, String> parseJsonObject(String json, int lineNumber) {
+        JsonCursor cursor = new JsonCursor(json, lineNumber);
+        Map<String, String> fields = new LinkedHashMap<>();
+        cursor.expect('{');
+        if (cursor.peek() == '}') {
+            cursor.expect('}');
+        } else {
+            do {
+                String key = cursor.string();
+                cursor.expect(':');
+                fields.put(key, cursor.value());
+            } while (cursor.next(',', '}') == ',');
+        }
+        cursor.end();
+        return fields;
+    }
+
+    /**
+     * @return the number of lines read so far, which is the last line of the most recent row.
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * A row of the manifest with the values by column name.
+     */
+    public static class Row {
+        private final int lineNumber;
+        private final Map<String, String> fields;
+
+        Row(int lineNumber, Map<String, String> fields) {
+            this.lineNumber = lineNumber;
+            this.fields = fields;
+        }
+
+        /**
+         * @return the line in the manifest where the row starts, counting from 1.
+         */
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        /**
+         * @return the trimmed value of the column, or null if the column is missing or blank.
+         */
+        public String get(String column) {
+            String value = fields.get(column);
+            return value == null || value.isBlank() ? null : value.trim();
+        }
+
+        /**
+         * @return the trimmed value of the column.
+         * @throws IllegalArgumentException if the column is missing or blank.
+         */
+        public String getRequired(String column) {
+            String value = get(column);
+            if (value == null) {
+                throw new IllegalArgumentException("Line " + lineNumber + " has no value for '" + column + "'");
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Position in a JSON line being parsed.
+     */
+    private static class JsonCursor {
+        private final String json;
+        private final int lineNumber;
+        private int pos = 0;
+
+        JsonCursor(String json, int lineNumber) {
+            this.json = json;
+            this.lineNumber = lineNumber;
+        }
+
+        char peek() {
+            skipWhitespace();
+            if (pos == json.length()) {
+                throw error("Unexpected end of line");
+            }
+            return json.charAt(pos);
+        }
+
+        void expect(char expected) {
+            if (peek() != expected) {
+                throw error("Expected '" + expected + "'");
+            }
+            pos++;
+        }
+
+        char next(char first, char second) {
+            char c = peek();
+            if (c != first && c != second) {
+                throw error("Expected '" + first + "' or '" + second + "'");
+            }
+            pos++;
+            return c;
+        }
+
+        void end() {
+            skipWhitespace();
+            if (pos != json.length()) {
+                throw error("Unexpected content after the object");
+            }
+        }
+
+        String value() {
+            char c = peek();
+            if (c == '"') {
+                return string();
+            }
+            if (c == '{' || c == '[') {
+                throw error("Nested objects and arrays are not supported");
+            }
+            int start = pos;
+            while (pos < json.length() && ",}".indexOf(json.charAt(pos)) < 0 &&
+                    !Character.isWhitespace(json.charAt(pos))) {
+                pos++;
+            }
+            String literal = json.substring(start, pos);
+            if (literal.isEmpty()) {
+                throw error("Expected a value");
+            }
+            return "null".equals(literal) ? null : literal;
+        }
+
+        String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                if (pos == json.length()) {
+                    throw error("Unterminated string");
+                }
+                char c = json.charAt(pos++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (pos == json.length()) {
+                    throw error("Unterminated string");
+                }
+                char escaped = json.charAt(pos++);
+                switch (escaped) {
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'u':
+                        if (pos + 4 > json.length()) {
+                            throw error("Invalid unicode escape");
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("Invalid unicode escape");
+                        }
+                        pos += 4;
+                        break;
+                    default: sb.append(escaped);
+                }
+            }
+        }
+
+        private void skipWhitespace() {
+            while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + pos + " of line " + lineNumber);
+        }
+    }
+}
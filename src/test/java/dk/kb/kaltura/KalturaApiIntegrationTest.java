@@ -5,6 +5,7 @@ import com.kaltura.client.enums.MediaType;
 import com.kaltura.client.types.APIException;
 import com.kaltura.client.types.MediaEntryFilter;
 import dk.kb.kaltura.client.DsKalturaClient;
+import dk.kb.kaltura.client.KalturaTransport;
 import dk.kb.kaltura.config.ServiceConfig;
 import dk.kb.kaltura.enums.FileExtension;
 import dk.kb.util.yaml.YAML;
@@ -246,6 +247,42 @@ public class KalturaApiIntegrationTest {
         }
     }
 
+    /**
+     * Measures the response bytes and latency of ID lookups with and without {@code kaltura.lookupResponseProfiles},
+     * to decide whether to enable it. The numbers are logged.
+     */
+    @Test
+    public void responseProfileSavings() throws Exception {
+        List<String> referenceIds = KNOWN_PAIRS.stream().map(e -> e.get(0)).collect(Collectors.toList());
+        int rounds = 20;
+        Map<String, String> expected = null;
+        long[] bytes = new long[2];
+        long[] nanos = new long[2];
+        for (int profiles = 0; profiles < 2; profiles++) {
+            KalturaTransport transport = new KalturaTransport();
+            try (DsKalturaClient client = getClient()) {
+                client.setTransport(transport);
+                client.setLookupResponseProfiles(profiles == 1);
+                client.getKalturaIds(referenceIds); // Warm up the connection
+                long start = System.nanoTime();
+                for (int i = 0; i < rounds; i++) {
+                    Map<String, String> ids = client.getKalturaIds(referenceIds);
+                    if (expected == null) {
+                        expected = ids;
+                    }
+                    assertEquals(expected, ids, "The lookups should give the same result with and without profiles");
+                }
+                nanos[profiles] = System.nanoTime() - start;
+            }
+            bytes[profiles] = transport.getResponseBytes("elasticsearch_esearch/searchEntry") /
+                    transport.getResponseCount("elasticsearch_esearch/searchEntry");
+        }
+        log.info("ID lookup of {} referenceIds: {} bytes and {} ms per response without response profiles, " +
+                        "{} bytes and {} ms with", referenceIds.size(), bytes[0], nanos[0] / rounds / 1_000_000,
+                bytes[1], nanos[1] / rounds / 1_000_000);
+        assertTrue(bytes[1] < bytes[0], "The responses should be smaller with response profiles");
+    }
+
     private DsKalturaClient getClient() throws APIException {
         final YAML conf = ServiceConfig.getConfig().getSubMap("kaltura");
         return new DsKalturaClient(
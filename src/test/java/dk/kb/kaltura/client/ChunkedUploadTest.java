@@ -0,0 +1,156 @@
+package dk.kb.kaltura.client;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChunkedUploadTest {
+
+    private static final int FILE_SIZE = 10000;
+    private static final int CHUNK_SIZE = 3000;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void chunksCoverFile() throws Exception {
+        byte[] content = createContent();
+        Receiver receiver = new Receiver(FILE_SIZE, -1);
+        new ChunkedUpload(createFile(content), CHUNK_SIZE, 3, 1, receiver::send, () -> receiver.acknowledged)
+                .upload(0);
+
+        assertEquals(List.of("0:false:false", "3000:true:false", "6000:true:false", "9000:true:true"),
+                receiver.calls);
+        assertArrayEquals(content, receiver.received);
+    }
+
+    @Test
+    public void onlyFailedChunkIsRetried() throws Exception {
+        byte[] content = createContent();
+        Receiver receiver = new Receiver(FILE_SIZE, 3000); // Fails the first time the chunk at 3000 is sent
+        new ChunkedUpload(createFile(content), CHUNK_SIZE, 3, 1, receiver::send, () -> receiver.acknowledged)
+                .upload(0);
+
+        assertEquals(List.of("0:false:false", "3000:true:false", "3000:true:false", "6000:true:false",
+                "9000:true:true"), receiver.calls);
+        assertArrayEquals(content, receiver.received);
+    }
+
+    @Test
+    public void resumeFromOffset() throws Exception {
+        byte[] content = createContent();
+        Receiver receiver = new Receiver(FILE_SIZE, -1);
+        System.arraycopy(content, 0, receiver.received, 0, 6000);
+        receiver.acknowledged = 6000;
+        new ChunkedUpload(createFile(content), CHUNK_SIZE, 3, 1, receiver::send, () -> receiver.acknowledged)
+                .upload(6000);
+
+        assertEquals(List.of("6000:true:false", "9000:true:true"), receiver.calls);
+        assertArrayEquals(content, receiver.received);
+    }
+
+    @Test
+    public void parallelChunks() throws Exception {
+        byte[] content = createContent();
+        Receiver receiver = new Receiver(FILE_SIZE, 5000); // Fails the first time the chunk at 5000 is sent
+        receiver.delayMillis = 50;
+        ExecutorService executor = KalturaExecutors.newBoundedExecutor(4, "test");
+        try {
+            new ChunkedUpload(createFile(content), 1000, 3, 1, receiver::send, () -> receiver.acknowledged,
+                    4, executor).upload(0);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals("0:false:false", receiver.calls.get(0), "The first chunk should be sent first");
+        assertEquals("9000:true:true", receiver.calls.get(receiver.calls.size() - 1),
+                "The final chunk should be sent last");
+        assertEquals(11, receiver.calls.size(), "Only the failed chunk should be sent twice");
+        assertTrue(receiver.maxConcurrent.get() > 1, "Chunks should be sent concurrently");
+        assertArrayEquals(content, receiver.received);
+    }
+
+    @Test
+    public void giveUpAfterRetries() throws Exception {
+        Path file = createFile(createContent());
+        ChunkedUpload upload = new ChunkedUpload(file, CHUNK_SIZE, 2, 1,
+                (data, length, resume, finalChunk, resumeAt) -> {
+                    throw new IllegalStateException("Connection reset");
+                }, () -> 0);
+
+        assertThrows(IllegalStateException.class, () -> upload.upload(0));
+    }
+
+    private byte[] createContent() {
+        byte[] content = new byte[FILE_SIZE];
+        new Random(87).nextBytes(content);
+        return content;
+    }
+
+    private Path createFile(byte[] content) throws Exception {
+        Path file = tempDir.resolve("stream.mp4");
+        Files.write(file, content);
+        return file;
+    }
+
+    /**
+     * Plays the role of the upload token, appending chunks at their resumeAt position.
+     */
+    private static class Receiver {
+        final List<String> calls = new ArrayList<>();
+        final byte[] received;
+        final long failAt;
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        volatile long acknowledged = 0;
+        long delayMillis = 0;
+        boolean failed = false;
+
+        Receiver(int size, long failAt) {
+            this.received = new byte[size];
+            this.failAt = failAt;
+        }
+
+        long send(InputStream data, long length, boolean resume, boolean finalChunk, long resumeAt) {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+            try {
+                data.transferTo(chunk);
+                Thread.sleep(delayMillis);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } finally {
+                concurrent.decrementAndGet();
+            }
+            assertEquals(length, chunk.size(), "The chunk should contain length bytes");
+            synchronized (this) {
+                calls.add(resumeAt + ":" + resume + ":" + finalChunk);
+                if (resumeAt == failAt && !failed) {
+                    failed = true;
+                    throw new IllegalStateException("Connection reset");
+                }
+                System.arraycopy(chunk.toByteArray(), 0, received, (int) resumeAt, chunk.size());
+                acknowledged = Math.max(acknowledged, resumeAt + length);
+            }
+            return acknowledged;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package dk.kb.kaltura.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong(0);
+
+    @Test
+    public void opensWhenFailureRateIsReached() {
+        CircuitBreaker breaker = createBreaker();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.recordFailure();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(), "Too few requests to open");
+
+        assertTrue(breaker.tryAcquire());
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(1, breaker.getRejectedCount());
+        assertEquals(1, breaker.getTrippedCount());
+    }
+
+    @Test
+    public void oldOutcomesLeaveTheWindow() {
+        CircuitBreaker breaker = createBreaker();
+        breaker.recordFailure();
+        breaker.recordFailure();
+        for (int i = 0; i < 10; i++) {
+            breaker.recordSuccess();
+        }
+        assertEquals(0.0, breaker.getFailureRate());
+        breaker.recordFailure();
+        assertEquals(0.25, breaker.getFailureRate());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void singleProbeAfterOpenDuration() {
+        CircuitBreaker breaker = createBreaker();
+        for (int i = 0; i < 4; i++) {
+            breaker.recordFailure();
+        }
+        now.set(1000);
+        assertTrue(breaker.tryAcquire(), "A probe should be let through after the open duration");
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(), "Only one probe at a time");
+
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+
+        now.set(2000);
+        assertTrue(breaker.tryAcquire());
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0.0, breaker.getFailureRate());
+        assertEquals(2, breaker.getTrippedCount());
+    }
+
+    @Test
+    public void probeThrowingReleasesTheSlot() {
+        CircuitBreaker breaker = createBreaker();
+        for (int i = 0; i < 4; i++) {
+            breaker.recordFailure();
+        }
+        now.set(1000);
+        assertTrue(breaker.tryAcquire());
+        // As handleRequest does when something other than an APIException escapes the probe
+        assertThrows(IllegalStateException.class, () -> {
+            try {
+                throw new IllegalStateException("Probe failed before being sent");
+            } finally {
+                breaker.release();
+            }
+        });
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire(), "The next request should be let through as the probe");
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void releaseWhenClosedChangesNothing() {
+        CircuitBreaker breaker = createBreaker();
+        assertTrue(breaker.tryAcquire());
+        breaker.release();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0.0, breaker.getFailureRate());
+    }
+
+    private CircuitBreaker createBreaker() {
+        return new CircuitBreaker(4, 4, 0.5, Duration.ofSeconds(1), now::get);
+    }
+}
@@ -0,0 +1,143 @@
+package dk.kb.kaltura.client;
+
+import com.kaltura.client.types.APIException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConversionQueueMonitorTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicInteger queueLength = new AtomicInteger();
+    private final AtomicInteger fetches = new AtomicInteger();
+    private final AtomicLong now = new AtomicLong(0);
+    private final AtomicBoolean failing = new AtomicBoolean(false);
+
+    @AfterEach
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void admittedWithoutMeasuringFarBelowThreshold() {
+        ConversionQueueMonitor monitor = createMonitor(100, 0);
+        for (int i = 0; i < 10; i++) {
+            monitor.acquire();
+        }
+        monitor.release();
+
+        assertEquals(9, monitor.getEstimatedLength());
+        assertEquals(0, fetches.get(), "The queue should not be measured far below the threshold");
+    }
+
+    @Test
+    public void waitingUploadIsAdmittedAfterMeasurement() throws Exception {
+        ConversionQueueMonitor monitor = createMonitor(3, 3);
+        Thread upload = new Thread(monitor::acquire);
+        upload.start();
+        waitUntilWaiting(upload);
+
+        queueLength.set(1);
+        now.set(10_000);
+        monitor.refresh();
+        upload.join(5000);
+
+        assertFalse(upload.isAlive(), "The upload should be admitted when the queue has room");
+        assertEquals(2, monitor.getEstimatedLength());
+    }
+
+    @Test
+    public void admissionsArePacedByConversionRate() {
+        ConversionQueueMonitor monitor = createMonitor(10, 10);
+        queueLength.set(8); // 2 conversions in 10 seconds
+        now.set(10_000);
+        monitor.refresh();
+        monitor.acquire();
+        monitor.acquire();
+        assertEquals(10, monitor.getEstimatedLength());
+
+        now.set(15_000); // 1 more conversion expected
+        monitor.acquire();
+        assertEquals(10, monitor.getEstimatedLength());
+    }
+
+    @Test
+    public void giveUpWhenQueueIsStalled() {
+        ConversionQueueMonitor monitor = createMonitor(3, 5);
+        queueLength.set(5);
+        for (int i = 1; i <= 3; i++) {
+            now.set(i * 1000L);
+            monitor.refresh();
+        }
+        assertThrows(RuntimeException.class, monitor::acquire);
+    }
+
+    @Test
+    public void failedMeasurementsWakeAndFailWaitingUpload() throws Exception {
+        ConversionQueueMonitor monitor = createMonitor(3, 5);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        Thread upload = new Thread(() -> {
+            try {
+                monitor.acquire();
+            } catch (RuntimeException e) {
+                failure.set(e);
+            }
+        });
+        upload.start();
+        waitUntilWaiting(upload);
+
+        failing.set(true);
+        for (int i = 1; i <= 3; i++) {
+            now.set(i * 1000L);
+            monitor.refresh();
+        }
+        upload.join(5000);
+
+        assertFalse(upload.isAlive(), "The upload should give up when the queue cannot be measured");
+        assertTrue(failure.get().getMessage().contains("could not be measured"), failure.get().getMessage());
+    }
+
+    @Test
+    public void conversionsAreNotProjectedFromOldMeasurement() {
+        ConversionQueueMonitor monitor = createMonitor(100, 100);
+        queueLength.set(98); // 2 conversions in 10 seconds
+        now.set(10_000);
+        monitor.refresh();
+
+        now.set(10_000 + 60_000);
+        assertEquals(86, monitor.getEstimatedLength());
+        now.set(10_000 + 600_000); // Conversions are projected for 2 refresh intervals only
+        assertEquals(74, monitor.getEstimatedLength());
+    }
+
+    /**
+     * Measurements are only started through the scheduler, the tests run them with {@code refresh()}.
+     */
+    private ConversionQueueMonitor createMonitor(int threshold, int initialLength) {
+        return new ConversionQueueMonitor(() -> {
+            fetches.incrementAndGet();
+            if (failing.get()) {
+                throw new APIException("Stub failure");
+            }
+            return queueLength.get();
+        }, threshold, 60_000, 3, scheduler, task -> { }, initialLength, now::get);
+    }
+
+    private void waitUntilWaiting(Thread thread) throws InterruptedException {
+        for (int i = 0; i < 500 && thread.getState() != Thread.State.TIMED_WAITING; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(Thread.State.TIMED_WAITING, thread.getState());
+    }
+}
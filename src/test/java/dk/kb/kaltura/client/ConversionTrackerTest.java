@@ -0,0 +1,141 @@
+package dk.kb.kaltura.client;
+
+import com.kaltura.client.enums.EntryStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConversionTrackerTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final Map<String, EntryStatus> statuses = new ConcurrentHashMap<>();
+    private final List<Integer> batchSizes = new ArrayList<>();
+
+    @AfterEach
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void completesWithFinalStatus() throws Exception {
+        ConversionTracker tracker = createTracker(10);
+        statuses.put("0_a", EntryStatus.PRECONVERT);
+        statuses.put("0_b", EntryStatus.READY);
+        CompletableFuture<EntryStatus> a = tracker.track("0_a");
+        CompletableFuture<EntryStatus> b = tracker.track("0_b");
+        assertSame(a, tracker.track("0_a"), "Tracking an entry twice should return the same future");
+
+        tracker.poll();
+        assertEquals(EntryStatus.READY, b.getNow(null));
+        assertFalse(a.isDone());
+        assertEquals(1, tracker.getPendingCount());
+
+        statuses.put("0_a", EntryStatus.ERROR_CONVERTING);
+        tracker.poll();
+        assertEquals(EntryStatus.ERROR_CONVERTING, a.getNow(null));
+        assertTrue(tracker.awaitAll(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void statusIsRequestedInBatches() {
+        ConversionTracker tracker = createTracker(2);
+        for (int i = 0; i < 5; i++) {
+            statuses.put("0_" + i, EntryStatus.PENDING);
+            tracker.track("0_" + i);
+        }
+        tracker.poll();
+        assertEquals(List.of(2, 2, 1), batchSizes);
+    }
+
+    @Test
+    public void missingEntryCompletesAsDeleted() {
+        ConversionTracker tracker = createTracker(10);
+        CompletableFuture<EntryStatus> missing = tracker.track("0_missing");
+        for (int i = 1; i < ConversionTracker.MAX_MISSES; i++) {
+            tracker.poll();
+        }
+        assertFalse(missing.isDone(), "A new entry may not be listed at once");
+        tracker.poll();
+        assertEquals(EntryStatus.DELETED, missing.getNow(null));
+    }
+
+    @Test
+    public void awaitAllTimesOutAndCloseCancels() throws Exception {
+        ConversionTracker tracker = createTracker(10);
+        statuses.put("0_a", EntryStatus.IMPORT);
+        CompletableFuture<EntryStatus> a = tracker.track("0_a");
+
+        assertFalse(tracker.awaitAll(50, TimeUnit.MILLISECONDS));
+        tracker.close();
+        assertTrue(a.isCancelled());
+    }
+
+    @Test
+    public void missesAreResetWhenListed() {
+        ConversionTracker tracker = createTracker(10);
+        CompletableFuture<EntryStatus> entry = tracker.track("0_flaky");
+        for (int i = 1; i < ConversionTracker.MAX_MISSES; i++) {
+            tracker.poll();
+        }
+        statuses.put("0_flaky", EntryStatus.PRECONVERT);
+        tracker.poll();
+        statuses.remove("0_flaky");
+        for (int i = 1; i < ConversionTracker.MAX_MISSES; i++) {
+            tracker.poll();
+        }
+        assertFalse(entry.isDone(), "Only polls in a row without the entry should count");
+    }
+
+    @Test
+    public void awaitAllReturnsAfterFuturesComplete() throws Exception {
+        ConversionTracker tracker = createTracker(10);
+        statuses.put("0_a", EntryStatus.READY);
+        statuses.put("0_b", EntryStatus.READY);
+        CompletableFuture<EntryStatus> a = tracker.track("0_a");
+        CompletableFuture<EntryStatus> b = tracker.track("0_b");
+        // Delays the completion of b
+        a.thenRun(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        CompletableFuture<Boolean> awaited = CompletableFuture.supplyAsync(() -> {
+            try {
+                return tracker.awaitAll(10, TimeUnit.SECONDS) && b.isDone();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(50); // Let the caller start waiting
+        tracker.poll();
+        assertTrue(awaited.get(10, TimeUnit.SECONDS), "All futures should be complete when awaitAll returns");
+    }
+
+    private ConversionTracker createTracker(int batchSize) {
+        // Long intervals, so the tests drive the polls
+        return new ConversionTracker(ids -> {
+            synchronized (batchSizes) {
+                batchSizes.add(ids.size());
+            }
+            Map<String, EntryStatus> found = new ConcurrentHashMap<>();
+            ids.stream().filter(statuses::containsKey).forEach(id -> found.put(id, statuses.get(id)));
+            return found;
+        }, batchSize, 60_000, 120_000, scheduler, Runnable::run);
+    }
+}
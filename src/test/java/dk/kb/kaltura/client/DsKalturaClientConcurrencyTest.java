@@ -0,0 +1,114 @@
+package dk.kb.kaltura.client;
+
+import com.kaltura.client.enums.MediaType;
+import dk.kb.kaltura.enums.FileExtension;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Stress test of a single {@link DsKalturaClient} shared between many threads, run against a local
+ * {@link KalturaStubServer}.
+ */
+public class DsKalturaClientConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int ITERATIONS = 50;
+
+    private KalturaStubServer stub;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    public void startStub() throws Exception {
+        stub = new KalturaStubServer();
+    }
+
+    @AfterEach
+    public void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    public void concurrentLookupsDuringSessionRefresh() throws Exception {
+        try (DsKalturaClient client = createClient()) {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final boolean refresher = t == 0;
+                tasks.add(() -> {
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        if (refresher && i % 5 == 0) {
+                            client.forceSessionRefresh();
+                        }
+                        assertEquals("0_entry", client.getKalturaInternalId("ref"));
+                    }
+                    return null;
+                });
+            }
+            runAll(tasks);
+        }
+
+        assertEquals(0, stub.getRequestsWithoutSession(), "All requests should carry a session");
+        // Concurrent lookups of the same referenceId are coalesced, but each call of a thread needs a new search
+        int searches = stub.getCallCount("elasticsearch_esearch/searchEntry");
+        assertTrue(searches >= ITERATIONS && searches <= THREADS * ITERATIONS, "Unexpected searches: " + searches);
+        assertEquals(1 + ITERATIONS / 5, stub.getSessionCount(), "Only forced refreshes should start sessions");
+    }
+
+    @Test
+    public void concurrentUploadsCountQueue() throws Exception {
+        Path file = tempDir.resolve("stream.mp4");
+        Files.write(file, "not really a video".getBytes(StandardCharsets.UTF_8));
+
+        try (DsKalturaClient client = createClient()) {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                tasks.add(() -> {
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        client.uploadMedia(file.toString(), "ref_" + thread + "_" + i, MediaType.VIDEO, "title",
+                                "description", "DS-KALTURA", FileExtension.MP4, null);
+                    }
+                    return null;
+                });
+            }
+            runAll(tasks);
+
+            assertEquals(THREADS * ITERATIONS, client.getEstimatedQueueLength(),
+                    "No queue increments should be lost");
+        }
+        assertEquals(0, stub.getRequestsWithoutSession(), "All requests should carry a session");
+    }
+
+    private DsKalturaClient createClient() throws Exception {
+        return new DsKalturaClient(stub.getUrl(), "test@kb.dk", KalturaStubServer.PARTNER_ID, "token", "tokenId",
+                null, 86400, 3600, 100000, 1);
+    }
+
+    private void runAll(List<Callable<Void>> tasks) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            List<Future<Void>> futures = executor.invokeAll(tasks);
+            for (Future<Void> future : futures) {
+                future.get(); // Propagates any failure
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
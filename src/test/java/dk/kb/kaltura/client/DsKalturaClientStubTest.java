@@ -0,0 +1,420 @@
+package dk.kb.kaltura.client;
+
+import com.kaltura.client.enums.MediaType;
+import com.kaltura.client.services.MediaService;
+import com.kaltura.client.types.APIException;
+import com.kaltura.client.types.MediaEntryFilter;
+import dk.kb.kaltura.enums.FileExtension;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of single {@link DsKalturaClient} operations run against a local {@link KalturaStubServer}.
+ */
+public class DsKalturaClientStubTest {
+
+    private KalturaStubServer stub;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    public void startStub() throws Exception {
+        stub = new KalturaStubServer();
+    }
+
+    @AfterEach
+    public void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    public void rateLimitedRequestKeepsHalfOpenProbe() throws Exception {
+        AtomicLong now = new AtomicLong(0);
+        CircuitBreaker breaker = new CircuitBreaker(4, 4, 0.5, Duration.ofSeconds(1), now::get);
+        for (int i = 0; i < 4; i++) {
+            breaker.recordFailure();
+        }
+        now.set(1000);
+        RateLimiter limiter = new RateLimiter(1, 1, () -> 0L);
+        assertTrue(limiter.tryAcquire(1));
+
+        try (DsKalturaClient client = createClient()) {
+            client.setCircuitBreaker(breaker);
+            client.setRequestRateLimiter(limiter);
+            APIException e = assertThrows(APIException.class,
+                    () -> client.handleRequestWithoutWaiting(MediaService.count(new MediaEntryFilter())));
+            assertTrue(e.getMessage().contains("rate limit"), "Unexpected message: " + e.getMessage());
+
+            client.setRequestRateLimiter(null);
+            assertEquals(0, client.countMediaEntry(new MediaEntryFilter()),
+                    "The breaker should still let the probe through");
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(1, stub.getCallCount("media/count"));
+    }
+
+    @Test
+    public void failedConstructionIsClosed() throws Exception {
+        ObjectName clientMetrics = new ObjectName("dk.kb.kaltura:type=RequestMetrics,*");
+        int registered = ManagementFactory.getPlatformMBeanServer().queryNames(clientMetrics, null).size();
+        // The conversion queue length is measured with a multirequest after the session has been started
+        stub.respond("multirequest", body -> apiError("SERVICE_FORBIDDEN"));
+
+        APIException e = assertThrows(APIException.class, this::createClient);
+        assertEquals("SERVICE_FORBIDDEN", e.getCode());
+        assertEquals(registered, ManagementFactory.getPlatformMBeanServer().queryNames(clientMetrics, null).size(),
+                "The metrics of the failed client should be unregistered");
+    }
+
+    @Test
+    public void sessionRefreshDoesNotLockClient() throws Exception {
+        try (DsKalturaClient client = createClient()) {
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            stub.respond("apptoken/startSession", body -> {
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "{\"objectType\":\"KalturaSessionInfo\",\"ks\":\"" + KalturaStubServer.KS_PREFIX +
+                        "refreshed\",\"sessionType\":2,\"partnerId\":" + KalturaStubServer.PARTNER_ID + "}";
+            });
+            CompletableFuture<Void> refresh = CompletableFuture.runAsync(() -> {
+                try {
+                    client.forceSessionRefresh();
+                } catch (APIException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            try {
+                assertTrue(started.await(10, TimeUnit.SECONDS), "The session refresh should have started");
+                CompletableFuture.runAsync(() -> client.setAsyncParallelism(2)).get(5, TimeUnit.SECONDS);
+            } finally {
+                release.countDown();
+            }
+            refresh.get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void asyncRequestsComplete() throws Exception {
+        try (DsKalturaClient client = createClient()) {
+            assertEquals(0, client.handleRequestAsync(MediaService.count(new MediaEntryFilter()))
+                    .get(10, TimeUnit.SECONDS));
+            assertEquals(0, client.countMediaEntryAsync(new MediaEntryFilter()).get(10, TimeUnit.SECONDS));
+            assertEquals(Map.of("ref", "0_entry"),
+                    client.getKalturaIdsAsync(List.of("ref")).get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void asyncFailureCompletesWithApiException() throws Exception {
+        try (DsKalturaClient client = createClient()) {
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> client.getEntryAsync("0_missing").get(10, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof APIException, "Unexpected cause: " + e.getCause());
+        }
+    }
+
+    @Test
+    public void asyncRequestsAreRejectedAfterClose() throws Exception {
+        DsKalturaClient client = createClient();
+        client.countMediaEntryAsync(new MediaEntryFilter()).get(10, TimeUnit.SECONDS);
+        client.close();
+        assertThrows(RejectedExecutionException.class, () -> client.countMediaEntryAsync(new MediaEntryFilter()));
+
+        DsKalturaClient unused = createClient();
+        unused.close();
+        assertThrows(RejectedExecutionException.class, () -> unused.countMediaEntryAsync(new MediaEntryFilter()),
+                "No executor should be created after close");
+    }
+
+    @Test
+    public void synchronousLookupsAfterClose() throws Exception {
+        DsKalturaClient client = createClient();
+        client.close();
+        assertEquals("0_entry", client.getKalturaInternalId("ref"));
+        assertEquals(Map.of("ref", "0_entry"), client.getKalturaIds(List.of("ref")));
+        assertEquals(Map.of("0_entry", "ref"), client.getReferenceIds(List.of("0_entry")));
+
+        DsKalturaClient used = createClient();
+        used.getKalturaInternalIdAsync("ref").get(10, TimeUnit.SECONDS);
+        used.close();
+        assertEquals("0_entry", used.getKalturaInternalId("ref"));
+        assertNull(used.getKalturaInternalId("unknown"), "Lookups of other keys should not be left pending");
+    }
+
+    @Test
+    public void changingParallelismFinishesSubmittedRequests() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        stub.respond("media/count", body -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "7";
+        });
+        try (DsKalturaClient client = createClient()) {
+            CompletableFuture<Integer> pending = client.countMediaEntryAsync(new MediaEntryFilter());
+            client.setAsyncParallelism(2);
+            release.countDown();
+            assertEquals(7, pending.get(10, TimeUnit.SECONDS));
+            assertEquals(7, client.countMediaEntryAsync(new MediaEntryFilter()).get(10, TimeUnit.SECONDS),
+                    "Requests after the change should use the new executor");
+        }
+    }
+
+    @Test
+    public void searchTermStreamStopsAtSearchWindow() throws Exception {
+        Pattern pageIndex = Pattern.compile("\"pageIndex\":\"?(\\d+)");
+        stub.respond("elasticsearch_esearch/searchEntry", body -> {
+            assertTrue(body.contains("created_at"), "Searches should have a stable order: " + body);
+            Matcher matcher = pageIndex.matcher(body);
+            assertTrue(matcher.find(), "No pageIndex in " + body);
+            String page = matcher.group(1);
+            return "{\"objectType\":\"KalturaESearchEntryResponse\",\"totalCount\":25000,\"objects\":[" +
+                    IntStream.range(0, DsKalturaClientBase.MAX_BATCH_SIZE)
+                            .mapToObj(i -> "{\"objectType\":\"KalturaESearchEntryResult\",\"object\":" +
+                                    "{\"objectType\":\"KalturaMediaEntry\",\"id\":\"0_" + page + "_" + i + "\"}}")
+                            .collect(Collectors.joining(",")) + "]}";
+        });
+        try (DsKalturaClient client = createClient()) {
+            assertEquals(DsKalturaClient.ESEARCH_MAX_RESULTS, client.searchTermStream("dr").count());
+        }
+        assertEquals(DsKalturaClient.ESEARCH_MAX_RESULTS / DsKalturaClientBase.MAX_BATCH_SIZE,
+                stub.getCallCount("elasticsearch_esearch/searchEntry"),
+                "No page beyond the window should be requested");
+    }
+
+    @Test
+    public void reverseLookupDoesNotHideDuplicateReferenceId() throws Exception {
+        stub.respond("elasticsearch_esearch/searchEntry", body -> {
+            // A lookup by referenceId finds both entries, a lookup by Kaltura ID only the one asked for
+            List<String> ids = body.contains("reference_id") ? List.of("0_a", "0_b") : List.of("0_a");
+            return "{\"objectType\":\"KalturaESearchEntryResponse\",\"totalCount\":" + ids.size() +
+                    ",\"objects\":[" + ids.stream()
+                    .map(id -> "{\"objectType\":\"KalturaESearchEntryResult\",\"object\":" +
+                            "{\"objectType\":\"KalturaMediaEntry\",\"id\":\"" + id + "\",\"referenceId\":\"ref\"}}")
+                    .collect(Collectors.joining(",")) + "]}";
+        });
+        IdCache cache = new IdCache(100, Duration.ofHours(1), Duration.ofHours(1));
+        try (DsKalturaClient client = createClient()) {
+            client.setIdCache(cache);
+            assertEquals(Map.of("0_a", "ref"), client.getReferenceIds(List.of("0_a")));
+            assertNull(cache.getKalturaId("ref"), "A lookup by Kaltura ID should not cache the referenceId mapping");
+
+            assertThrows(IOException.class, () -> client.getKalturaInternalId("ref"));
+            assertEquals(Map.of("0_a", "ref"), client.getReferenceIds(List.of("0_a")));
+        }
+        assertEquals(2, stub.getCallCount("elasticsearch_esearch/searchEntry"),
+                "The second lookup by Kaltura ID should be cached");
+    }
+
+    @Test
+    public void getEntriesInBatches() throws Exception {
+        Pattern idIn = Pattern.compile("\"idIn\":\"([^\"]*)\"");
+        List<List<String>> batches = new CopyOnWriteArrayList<>();
+        stub.respond("baseentry/list", body -> {
+            Matcher matcher = idIn.matcher(body);
+            assertTrue(matcher.find(), "No idIn in " + body);
+            List<String> batch = List.of(matcher.group(1).split(","));
+            batches.add(batch);
+            // Kaltura does not return the entries in the order of idIn
+            List<String> existing = batch.stream()
+                    .filter(id -> !id.endsWith("00"))
+                    .sorted(Comparator.reverseOrder())
+                    .collect(Collectors.toList());
+            return "{\"objectType\":\"KalturaBaseEntryListResponse\",\"totalCount\":" + existing.size() +
+                    ",\"objects\":[" + existing.stream()
+                    .map(id -> "{\"objectType\":\"KalturaMediaEntry\",\"id\":\"" + id + "\"}")
+                    .collect(Collectors.joining(",")) + "]}";
+        });
+        List<String> unique = IntStream.range(1, 1101).mapToObj(i -> "0_" + i).collect(Collectors.toList());
+        List<String> requested = new ArrayList<>(unique);
+        requested.addAll(500, unique.subList(0, 50)); // Duplicates spanning batches
+
+        DsKalturaClient.Entries entries;
+        try (DsKalturaClient client = createClient()) {
+            entries = client.getEntries(requested);
+            for (List<String> batch : batches) {
+                assertTrue(batch.size() <= client.getBatchSize(), "Batch of " + batch.size() + " IDs");
+            }
+        }
+
+        assertEquals(3, batches.size(), "1100 unique IDs should be requested in 3 batches");
+        assertEquals(new HashSet<>(unique), batches.stream().flatMap(List::stream).collect(Collectors.toSet()));
+        assertEquals(unique.size(), batches.stream().mapToInt(List::size).sum(), "Duplicates should be requested once");
+        List<String> missing = unique.stream().filter(id -> id.endsWith("00")).collect(Collectors.toList());
+        assertEquals(missing, entries.getMissing(), "Missing IDs should be reported in the requested order");
+        List<String> found = unique.stream().filter(id -> !id.endsWith("00")).collect(Collectors.toList());
+        assertEquals(found, new ArrayList<>(entries.getFound().keySet()), "Entries should be in the requested order");
+        entries.getFound().forEach((id, entry) -> assertEquals(id, entry.getId()));
+    }
+
+    @Test
+    public void bulkDeleteReportsEachEntry() throws Exception {
+        stub.respond("media/delete", item -> item.contains("0_missing") ?
+                "{\"objectType\":\"KalturaAPIException\",\"code\":\"ENTRY_ID_NOT_FOUND\"," +
+                "\"message\":\"Entry id not found\"}" : "null");
+        stub.respond("multirequest", body -> body.contains("0_down") ?
+                "{\"objectType\":\"KalturaAPIException\",\"code\":\"SERVICE_FORBIDDEN\"," +
+                "\"message\":\"Multirequest failed\"}" : stub.multirequest(body));
+        IdCache cache = new IdCache(100, Duration.ofHours(1), Duration.ofHours(1));
+        cache.put("ref1", "0_1");
+        cache.put("refMissing", "0_missing");
+        cache.put("refDown", "0_down");
+
+        DsKalturaClient.BulkResult result;
+        try (DsKalturaClient client = createClient()) {
+            client.setIdCache(cache);
+            client.setBulkRequestSize(3);
+            // Batches: [0_1, 0_missing, 0_2] where one item fails, and [0_down, 0_3] where the multirequest fails
+            result = client.deleteStreamsByEntryIds(List.of("0_1", "0_missing", "0_2", "0_down", "0_3", "0_1"));
+        }
+
+        assertEquals(2, stub.getCallCount("multirequest"));
+        assertEquals(List.of("0_1", "0_2"), result.getSucceeded());
+        assertEquals(List.of("0_missing", "0_down", "0_3"), new ArrayList<>(result.getFailed().keySet()));
+        assertEquals("ENTRY_ID_NOT_FOUND", result.getFailed().get("0_missing").getCode());
+        assertEquals("SERVICE_FORBIDDEN", result.getFailed().get("0_down").getCode());
+        assertSame(result.getFailed().get("0_down"), result.getFailed().get("0_3"),
+                "The entries of a failed multirequest should share its exception");
+
+        assertNull(cache.getKalturaId("ref1"), "Deleted entries should be removed from the cache");
+        assertNull(cache.getReferenceId("0_1"), "Deleted entries should be removed from the cache");
+        assertEquals("0_missing", cache.getKalturaId("refMissing").value, "Failed deletes should stay cached");
+        assertEquals("0_down", cache.getKalturaId("refDown").value, "Failed deletes should stay cached");
+    }
+
+    @Test
+    public void uploadTokenFailureInMultirequest() throws Exception {
+        stub.respond("uploadtoken/add", body -> apiError("UPLOAD_TOKEN_CANNOT_BE_CREATED"));
+        // Adding the content refers to the result of adding the token
+        stub.respond("media/addContent", body -> apiError("INVALID_OBJECT_ID"));
+
+        List<String> steps = new ArrayList<>();
+        APIException e = assertThrows(APIException.class, () -> upload(steps));
+        assertEquals("UPLOAD_TOKEN_CANNOT_BE_CREATED", e.getCode());
+        assertEquals(List.of("uploadStarting ref"), steps);
+        assertEquals(0, stub.getCallCount("uploadtoken/upload"));
+    }
+
+    @Test
+    public void entryFailureInMultirequest() throws Exception {
+        stub.respond("media/add", body -> apiError("PROPERTY_VALIDATION_CANNOT_BE_NULL"));
+        // Adding the content refers to the result of adding the entry
+        stub.respond("media/addContent", body -> apiError("INVALID_OBJECT_ID"));
+
+        List<String> steps = new ArrayList<>();
+        APIException e = assertThrows(APIException.class, () -> upload(steps));
+        assertEquals("PROPERTY_VALIDATION_CANNOT_BE_NULL", e.getCode());
+        assertEquals(List.of("uploadStarting ref", "tokenCreated ref 0_token"), steps);
+        assertEquals(0, stub.getCallCount("uploadtoken/upload"));
+    }
+
+    @Test
+    public void contentFailureInMultirequest() throws Exception {
+        stub.respond("media/addContent", body -> apiError("UPLOAD_TOKEN_NOT_FOUND"));
+
+        List<String> steps = new ArrayList<>();
+        APIException e = assertThrows(APIException.class, () -> upload(steps));
+        assertEquals("UPLOAD_TOKEN_NOT_FOUND", e.getCode());
+        assertEquals(List.of("uploadStarting ref", "entryCreated ref 0_token 0_entry false"), steps);
+        assertEquals(0, stub.getCallCount("uploadtoken/upload"));
+    }
+
+    @Test
+    public void failingListenerKeepsUploadInQueue() throws Exception {
+        Path file = tempDir.resolve("stream.mp4");
+        Files.write(file, "not really a video".getBytes(StandardCharsets.UTF_8));
+        UploadListener failing = new UploadListener() {
+            @Override
+            public void uploaded(String referenceId, String uploadTokenId, String entryId) {
+                throw new IllegalStateException("Journal is full");
+            }
+        };
+        try (DsKalturaClient client = createClient()) {
+            assertThrows(IllegalStateException.class, () -> client.uploadMedia(file.toString(), "ref",
+                    MediaType.VIDEO, "title", "description", "DS-KALTURA", FileExtension.MP4, null, failing));
+            assertEquals(1, client.getEstimatedQueueLength(), "The uploaded entry should stay in the queue");
+        }
+    }
+
+    /**
+     * Uploads a small file with referenceId {@code ref}, recording the steps reported to the listener.
+     */
+    private void upload(List<String> steps) throws Exception {
+        Path file = tempDir.resolve("stream.mp4");
+        Files.write(file, "not really a video".getBytes(StandardCharsets.UTF_8));
+        UploadListener listener = new UploadListener() {
+            @Override
+            public void uploadStarting(String referenceId) {
+                steps.add("uploadStarting " + referenceId);
+            }
+
+            @Override
+            public void tokenCreated(String referenceId, String uploadTokenId) {
+                steps.add("tokenCreated " + referenceId + " " + uploadTokenId);
+            }
+
+            @Override
+            public void entryCreated(String referenceId, String uploadTokenId, String entryId, boolean attached) {
+                steps.add("entryCreated " + referenceId + " " + uploadTokenId + " " + entryId + " " + attached);
+            }
+
+            @Override
+            public void uploaded(String referenceId, String uploadTokenId, String entryId) {
+                steps.add("uploaded " + referenceId + " " + uploadTokenId + " " + entryId);
+            }
+        };
+        try (DsKalturaClient client = createClient()) {
+            client.uploadMedia(file.toString(), "ref", MediaType.VIDEO, "title", "description", "DS-KALTURA",
+                    FileExtension.MP4, null, listener);
+        }
+    }
+
+    private static String apiError(String code) {
+        return "{\"objectType\":\"KalturaAPIException\",\"code\":\"" + code + "\",\"message\":\"" + code + "\"}";
+    }
+
+    private DsKalturaClient createClient() throws Exception {
+        return new DsKalturaClient(stub.getUrl(), "test@kb.dk", KalturaStubServer.PARTNER_ID, "token", "tokenId",
+                null, 86400, 3600, 100000, 1);
+    }
+}
@@ -0,0 +1,121 @@
+package dk.kb.kaltura.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IdCacheTest {
+
+    private final AtomicLong now = new AtomicLong(0);
+
+    @Test
+    public void bothDirections() {
+        IdCache cache = createCache(100);
+        cache.put("ref1", "0_abc");
+
+        assertEquals("0_abc", cache.getKalturaId("ref1").value);
+        assertEquals("ref1", cache.getReferenceId("0_abc").value);
+        assertNull(cache.getKalturaId("ref2"));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void referenceIdOnly() {
+        IdCache cache = createCache(100);
+        cache.put("ref1", "0_abc");
+        cache.putReferenceId("0_def", "ref1");
+
+        assertEquals("ref1", cache.getReferenceId("0_def").value);
+        assertEquals("0_abc", cache.getKalturaId("ref1").value, "The mapping of the referenceId should be kept");
+
+        cache.invalidateKalturaId("0_def");
+        assertNull(cache.getReferenceId("0_def"));
+        assertEquals("0_abc", cache.getKalturaId("ref1").value, "The mapping of the other entry should be kept");
+    }
+
+    @Test
+    public void expiry() {
+        IdCache cache = createCache(100);
+        cache.put("ref1", "0_abc");
+        cache.putMissingReferenceId("ref2");
+
+        now.set(Duration.ofMinutes(2).toMillis());
+        assertNull(cache.getKalturaId("ref2"), "Negative results should expire first");
+        assertEquals("0_abc", cache.getKalturaId("ref1").value);
+
+        now.set(Duration.ofHours(2).toMillis());
+        assertNull(cache.getKalturaId("ref1"));
+    }
+
+    @Test
+    public void negativeResults() {
+        IdCache cache = createCache(100);
+        cache.putMissingKalturaId("0_missing");
+
+        assertTrue(cache.getReferenceId("0_missing").isMissing());
+        assertEquals(1, cache.getNegativeHits());
+    }
+
+    @Test
+    public void invalidation() {
+        IdCache cache = createCache(100);
+        cache.put("ref1", "0_abc");
+        cache.invalidateKalturaId("0_abc");
+        assertNull(cache.getKalturaId("ref1"));
+
+        cache.putMissingReferenceId("ref2");
+        cache.invalidateReferenceId("ref2");
+        assertNull(cache.getKalturaId("ref2"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() {
+        IdCache cache = createCache(4);
+        cache.put("ref1", "0_1");
+        cache.put("ref2", "0_2");
+        cache.getKalturaId("ref1"); // ref1 is now more recently used than ref2
+        cache.put("ref3", "0_3");
+
+        assertEquals(4, cache.size());
+        assertEquals(2, cache.getEvictions());
+        assertEquals("0_1", cache.getKalturaId("ref1").value);
+        assertNull(cache.getKalturaId("ref2"));
+    }
+
+    @Test
+    public void evictionRemovesBothDirections() {
+        IdCache cache = createCache(4);
+        cache.put("ref1", "0_1");
+        cache.put("ref2", "0_2");
+        cache.getReferenceId("0_1"); // Only the kalturaId direction of ref1 is recently used
+        cache.getReferenceId("0_2");
+        cache.getKalturaId("ref2");
+        cache.put("ref3", "0_3");
+
+        assertNull(cache.getKalturaId("ref1"), "The evicted mapping should be gone in both directions");
+        assertNull(cache.getReferenceId("0_1"));
+        assertEquals(4, cache.size());
+    }
+
+    @Test
+    public void invalidationAfterEviction() {
+        IdCache cache = createCache(4);
+        cache.put("ref1", "0_1");
+        cache.put("ref2", "0_2");
+        cache.putMissingKalturaId("0_x"); // Evicts the kalturaId direction of ref1 first
+        cache.invalidateKalturaId("0_1"); // As when the entry is deleted
+
+        assertNull(cache.getKalturaId("ref1"), "A deleted entry must not be returned from the cache");
+    }
+
+    private IdCache createCache(int maxSize) {
+        return new IdCache(maxSize, Duration.ofHours(1), Duration.ofMinutes(1), now::get);
+    }
+}
@@ -0,0 +1,49 @@
+package dk.kb.kaltura.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KalturaExecutorsTest {
+
+    @Test
+    public void rejectsAfterShutdown() {
+        ExecutorService executor = KalturaExecutors.newBoundedExecutor(1, "test");
+        executor.shutdown();
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+    }
+
+    @Test
+    public void callerRunsWhenQueueIsFull() throws Exception {
+        ExecutorService executor = KalturaExecutors.newBoundedExecutor(1, "test");
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            // Fill the queue of the single busy thread
+            for (int i = 0; i < 100; i++) {
+                executor.execute(() -> { });
+            }
+            AtomicReference<Thread> ranBy = new AtomicReference<>();
+            executor.execute(() -> ranBy.set(Thread.currentThread()));
+            assertSame(Thread.currentThread(), ranBy.get(), "The task should have been run by the caller");
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+}
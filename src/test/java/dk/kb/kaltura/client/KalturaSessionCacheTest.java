@@ -0,0 +1,58 @@
+package dk.kb.kaltura.client;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class KalturaSessionCacheTest {
+
+    private static final long HOUR = 3600 * 1000L;
+    private static final String URL = "https://kaltura.example.com";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void storeAndLoad() throws Exception {
+        Path file = tempDir.resolve("cache/sessions.properties");
+        KalturaSessionCache cache = new KalturaSessionCache(file);
+        long now = System.currentTimeMillis();
+        cache.store(URL, 399, "tokenId", "user@kb.dk", "ks1", now);
+        cache.store(URL, 399, "otherTokenId", "user@kb.dk", "ks2", now);
+
+        KalturaSessionCache.CachedSession cached = cache.load(URL, 399, "tokenId", "user@kb.dk", HOUR);
+        assertNotNull(cached);
+        assertEquals("ks1", cached.ks);
+        assertEquals(now, cached.startedAt);
+        assertEquals("ks2", cache.load(URL, 399, "otherTokenId", "user@kb.dk", HOUR).ks);
+        assertNull(cache.load(URL, 400, "tokenId", "user@kb.dk", HOUR), "Other partners should not get the session");
+        assertNull(cache.load("https://test.kaltura.example.com", 399, "tokenId", "user@kb.dk", HOUR),
+                "Other Kaltura services should not get the session");
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+    }
+
+    @Test
+    public void expiredSession() {
+        KalturaSessionCache cache = new KalturaSessionCache(tempDir.resolve("sessions.properties"));
+        cache.store(URL, 399, "tokenId", "user@kb.dk", "ks1", System.currentTimeMillis() - 2 * HOUR);
+
+        assertNull(cache.load(URL, 399, "tokenId", "user@kb.dk", HOUR));
+    }
+
+    @Test
+    public void ignoreReadableByOthers() throws Exception {
+        Path file = tempDir.resolve("sessions.properties");
+        KalturaSessionCache cache = new KalturaSessionCache(file);
+        cache.store(URL, 399, "tokenId", "user@kb.dk", "ks1", System.currentTimeMillis());
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-r--r--"));
+
+        assertNull(cache.load(URL, 399, "tokenId", "user@kb.dk", HOUR));
+    }
+}
@@ -0,0 +1,203 @@
+package dk.kb.kaltura.client;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal local stand-in for the Kaltura API, answering the calls used by {@link DsKalturaClient} with canned JSON.
+ * Sessions handed out by the stub have the prefix {@link #KS_PREFIX}, and requests that should carry a session but do
+ * not are counted, so tests can verify that no request was sent without a session.
+ */
+class KalturaStubServer implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(KalturaStubServer.class);
+
+    static final int PARTNER_ID = 399;
+    static final String KS_PREFIX = "stubks";
+
+    private static final Pattern SERVICE_ACTION = Pattern.compile("service/([^/]+)(?:/action/([^/?]+))?");
+    private static final Pattern MULTIREQUEST_ITEM =
+            Pattern.compile("\"service\"\\s*:\\s*\"([^\"]+)\"\\s*,\\s*\"action\"\\s*:\\s*\"([^\"]+)\"");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(32);
+    private final Map<String, Function<String, String>> responses = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> callCounts = new ConcurrentHashMap<>();
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    private final AtomicInteger requestsWithoutSession = new AtomicInteger();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final Map<String, Headers> lastHeaders = new ConcurrentHashMap<>();
+
+    KalturaStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+
+        respond("session/startWidgetSession", body ->
+                "{\"objectType\":\"KalturaStartWidgetSessionResponse\",\"partnerId\":" + PARTNER_ID +
+                ",\"ks\":\"widgetks\",\"userId\":0}");
+        respond("apptoken/startSession", body ->
+                "{\"objectType\":\"KalturaSessionInfo\",\"ks\":\"" + KS_PREFIX + sessionCount.incrementAndGet() +
+                "\",\"sessionType\":2,\"partnerId\":" + PARTNER_ID + ",\"userId\":\"\",\"privileges\":\"\"}");
+        respond("multirequest", this::multirequest);
+        respond("media/count", body -> "0");
+        respond("uploadtoken/add", body -> "{\"objectType\":\"KalturaUploadToken\",\"id\":\"0_token\"}");
+        respond("uploadtoken/upload", body -> "{\"objectType\":\"KalturaUploadToken\",\"id\":\"0_token\"}");
+        respond("media/add", body -> "{\"objectType\":\"KalturaMediaEntry\",\"id\":\"0_entry\"}");
+        respond("media/addContent", body -> "{\"objectType\":\"KalturaMediaEntry\",\"id\":\"0_entry\"}");
+        respond("elasticsearch_esearch/searchEntry", body ->
+                "{\"objectType\":\"KalturaESearchEntryResponse\",\"totalCount\":1,\"objects\":[" +
+                "{\"objectType\":\"KalturaESearchEntryResult\",\"object\":" +
+                "{\"objectType\":\"KalturaMediaEntry\",\"id\":\"0_entry\",\"referenceId\":\"ref\"}}]}");
+        server.start();
+    }
+
+    /**
+     * @return the endpoint to use as kalturaUrl.
+     */
+    String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Set the response for a given service/action, e.g. {@code media/add}.
+     *
+     * @param serviceAction service and action separated by '/'. Multirequests use {@code multirequest}.
+     * @param response      produces the JSON response from the request body. For a request in a multirequest it
+     *                      gets the JSON object of that request.
+     */
+    void respond(String serviceAction, Function<String, String> response) {
+        responses.put(serviceAction, response);
+    }
+
+    int getSessionCount() {
+        return sessionCount.get();
+    }
+
+    int getRequestsWithoutSession() {
+        return requestsWithoutSession.get();
+    }
+
+    int getCallCount(String serviceAction) {
+        AtomicInteger count = callCounts.get(serviceAction);
+        return count == null ? 0 : count.get();
+    }
+
+    long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * @return the value of the header in the last request for the service/action, or null if not sent.
+     */
+    String getLastHeader(String serviceAction, String name) {
+        Headers headers = lastHeaders.get(serviceAction);
+        return headers == null ? null : headers.getFirst(name);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String body = readBody(exchange.getRequestBody());
+        Matcher matcher = SERVICE_ACTION.matcher(exchange.getRequestURI().getPath());
+        String serviceAction = !matcher.find() ? "" :
+                matcher.group(2) == null ? matcher.group(1) : matcher.group(1) + "/" + matcher.group(2);
+        callCounts.computeIfAbsent(serviceAction, key -> new AtomicInteger()).incrementAndGet();
+        lastHeaders.put(serviceAction, exchange.getRequestHeaders());
+
+        if (!serviceAction.startsWith("session/") && !serviceAction.startsWith("apptoken/") &&
+                !body.contains(KS_PREFIX)) {
+            log.warn("Request '{}' was sent without a session", serviceAction);
+            requestsWithoutSession.incrementAndGet();
+        }
+
+        Function<String, String> response = responses.get(serviceAction);
+        String json = response == null ?
+                "{\"objectType\":\"KalturaAPIException\",\"code\":\"SERVICE_FORBIDDEN\"," +
+                "\"message\":\"No stub response for " + serviceAction + "\"}" :
+                response.apply(body);
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Answers a multirequest with the responses for its requests, in order.
+     */
+    String multirequest(String body) {
+        StringBuilder json = new StringBuilder("[");
+        Matcher matcher = MULTIREQUEST_ITEM.matcher(body);
+        while (matcher.find()) {
+            Function<String, String> response = responses.get(matcher.group(1) + "/" + matcher.group(2));
+            json.append(json.length() == 1 ? "" : ",")
+                    .append(response == null ? "null" : response.apply(enclosingObject(body, matcher.start())));
+        }
+        return json.append("]").toString();
+    }
+
+    /**
+     * @return the JSON object around the given position. Braces in strings are not expected.
+     */
+    private static String enclosingObject(String json, int position) {
+        int start = position;
+        for (int depth = 0; start > 0; start--) {
+            char c = json.charAt(start - 1);
+            if (c == '}') {
+                depth++;
+            } else if (c == '{' && depth-- == 0) {
+                break;
+            }
+        }
+        int end = position;
+        for (int depth = 0; end < json.length(); end++) {
+            char c = json.charAt(end);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}' && depth-- == 0) {
+                break;
+            }
+        }
+        return json.substring(Math.max(0, start - 1), Math.min(json.length(), end + 1));
+    }
+
+    /**
+     * Reads the request body, keeping only the first 64KB so that large uploads are counted but not held in memory.
+     */
+    private String readBody(InputStream in) throws IOException {
+        byte[] buffer = new byte[65536];
+        int kept = 0;
+        int read;
+        byte[] chunk = new byte[8192];
+        while ((read = in.read(chunk)) != -1) {
+            bytesReceived.addAndGet(read);
+            int toKeep = Math.min(read, buffer.length - kept);
+            System.arraycopy(chunk, 0, buffer, kept, toKeep);
+            kept += toKeep;
+        }
+        return new String(buffer, 0, kept, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
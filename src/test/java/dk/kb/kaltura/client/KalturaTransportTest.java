@@ -0,0 +1,114 @@
+package dk.kb.kaltura.client;
+
+import com.kaltura.client.types.APIException;
+import com.kaltura.client.types.MediaEntryFilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of the HTTP settings of {@link KalturaTransport}, run against a local {@link KalturaStubServer}.
+ */
+public class KalturaTransportTest {
+
+    private KalturaStubServer stub;
+
+    @BeforeEach
+    public void startStub() throws Exception {
+        stub = new KalturaStubServer();
+    }
+
+    @AfterEach
+    public void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    public void requestsUseTransport() throws Exception {
+        KalturaTransport transport = new KalturaTransport();
+        try (DsKalturaClient client = createClient()) {
+            client.setTransport(transport);
+            client.countMediaEntry(new MediaEntryFilter());
+        }
+        // Fails if the Kaltura SDK no longer sends requests through the HTTP client set by the transport
+        assertEquals(1, transport.getResponseCount("media/count"));
+        assertTrue(transport.getResponseBytes("media/count") > 0);
+    }
+
+    @Test
+    public void readTimeoutPerServiceAction() throws Exception {
+        KalturaTransport transport = new KalturaTransport(4, Duration.ofMinutes(1), Duration.ofSeconds(10),
+                Duration.ofSeconds(10), false, true);
+        transport.setReadTimeout("media/count", Duration.ofMillis(100));
+        try (DsKalturaClient client = createClient()) {
+            client.setTransport(transport);
+            client.setRetryPolicy(RetryPolicy.NONE);
+            stub.respond("media/count", slowly(body -> "3"));
+            stub.respond("elasticsearch_esearch/searchEntry", slowly(body ->
+                    "{\"objectType\":\"KalturaESearchEntryResponse\",\"totalCount\":1,\"objects\":[" +
+                    "{\"objectType\":\"KalturaESearchEntryResult\",\"object\":" +
+                    "{\"objectType\":\"KalturaMediaEntry\",\"id\":\"0_entry\",\"referenceId\":\"ref\"}}]}"));
+
+            assertThrows(APIException.class, () -> client.countMediaEntry(new MediaEntryFilter()),
+                    "media/count should time out after 100 ms");
+            assertEquals(Map.of("ref", "0_entry"), client.getKalturaIds(List.of("ref")),
+                    "Other requests should have the default read timeout");
+
+            transport.setReadTimeout("media/count", Duration.ofSeconds(10));
+            assertEquals(3, client.countMediaEntry(new MediaEntryFilter()),
+                    "A changed timeout should apply to new calls");
+        }
+    }
+
+    @Test
+    public void readTimeoutForPath() {
+        KalturaTransport transport = new KalturaTransport(4, Duration.ofMinutes(1), Duration.ofSeconds(10),
+                Duration.ofSeconds(60), true, true);
+        transport.setReadTimeout("uploadToken/upload", Duration.ofMinutes(10));
+        assertEquals(600_000, transport.getReadTimeoutMillis("/api_v3/service/uploadtoken/action/upload"));
+        assertEquals(60_000, transport.getReadTimeoutMillis("/api_v3/service/uploadtoken/action/add"));
+        assertEquals(60_000, transport.getReadTimeoutMillis("/api_v3/service/multirequest"));
+    }
+
+    @Test
+    public void gzipCanBeDisabled() throws Exception {
+        try (DsKalturaClient client = createClient()) {
+            client.setTransport(new KalturaTransport());
+            client.countMediaEntry(new MediaEntryFilter());
+            assertEquals("gzip", stub.getLastHeader("media/count", "Accept-Encoding"));
+
+            client.setTransport(new KalturaTransport(4, Duration.ofMinutes(1), Duration.ofSeconds(10),
+                    Duration.ofSeconds(60), true, false));
+            client.countMediaEntry(new MediaEntryFilter());
+            assertEquals("identity", stub.getLastHeader("media/count", "Accept-Encoding"));
+        }
+    }
+
+    /**
+     * @return the response, sent after a second.
+     */
+    private static Function<String, String> slowly(Function<String, String> response) {
+        return body -> {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return response.apply(body);
+        };
+    }
+
+    private DsKalturaClient createClient() throws Exception {
+        return new DsKalturaClient(stub.getUrl(), "test@kb.dk", KalturaStubServer.PARTNER_ID, "token", "tokenId",
+                null, 86400, 3600, 100000, 1);
+    }
+}
@@ -0,0 +1,141 @@
+package dk.kb.kaltura.client;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LookupBatcherTest {
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService executor;
+    private final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    public void setup() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        executor = Executors.newFixedThreadPool(4);
+        batches.clear();
+    }
+
+    @AfterEach
+    public void shutdown() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void coalesceWithinWindow() throws Exception {
+        LookupBatcher<String, String> batcher = new LookupBatcher<>(this::upperCase, 500, 50, scheduler, executor);
+
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(batcher.lookup("id" + i));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals("ID" + i, futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, batches.size(), "All lookups should be resolved in one batch");
+    }
+
+    @Test
+    public void fullBatchSentImmediately() throws Exception {
+        LookupBatcher<String, String> batcher =
+                new LookupBatcher<>(this::upperCase, 10, 60_000, scheduler, executor);
+
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            futures.add(batcher.lookup("id" + i));
+        }
+        for (int i = 0; i < 20; i++) {
+            assertEquals("ID" + i, futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(2, batches.size(), "Two full batches should be sent without waiting for the window");
+        assertTrue(batches.stream().allMatch(batch -> batch.size() == 10));
+        batcher.flush();
+        assertEquals("ID24", futures.get(24).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void duplicateKeysShareLookup() throws Exception {
+        LookupBatcher<String, String> batcher = new LookupBatcher<>(this::upperCase, 500, 50, scheduler, executor);
+
+        CompletableFuture<String> first = batcher.lookup("id");
+        CompletableFuture<String> second = batcher.lookup("id");
+        assertSame(first, second);
+        assertEquals("ID", first.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("id"), batches.get(0));
+    }
+
+    @Test
+    public void missingAndFailedLookups() throws Exception {
+        LookupBatcher<String, String> missing = new LookupBatcher<>(keys -> Map.of(), 500, 10, scheduler, executor);
+        assertNull(missing.lookup("id").get(5, TimeUnit.SECONDS));
+
+        LookupBatcher<String, String> failing = new LookupBatcher<>(keys -> {
+            throw new IOException("Kaltura is down");
+        }, 500, 10, scheduler, executor);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> failing.lookup("id").get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IOException);
+    }
+
+    @Test
+    public void waitingInExecutorTaskDoesNotDeadlock() throws Exception {
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            LookupBatcher<String, String> batcher = new LookupBatcher<>(this::upperCase, 500, 10, scheduler, single);
+            Future<String> value = single.submit(() -> batcher.lookupAndWait("id"));
+            assertEquals("ID", value.get(5, TimeUnit.SECONDS),
+                    "The waiting task should resolve the batch queued behind it");
+            assertEquals(List.of(List.of("id")), batches);
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test
+    public void lookupAndWaitThrowsLookupFailure() {
+        LookupBatcher<String, String> failing = new LookupBatcher<>(keys -> {
+            throw new IOException("Kaltura is down");
+        }, 500, 10, scheduler, executor);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> failing.lookupAndWait("id"));
+        assertTrue(e.getCause() instanceof IOException);
+    }
+
+    @Test
+    public void lookupsAfterShutdownAreResolvedByCaller() throws Exception {
+        LookupBatcher<String, String> batcher = new LookupBatcher<>(this::upperCase, 500, 10, scheduler, executor);
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+
+        assertEquals("ID1", batcher.lookup("id1").get(5, TimeUnit.SECONDS));
+        assertEquals("ID1", batcher.lookupAndWait("id1"), "The first lookup should not be left pending");
+        assertEquals("ID2", batcher.lookupAndWait("id2"));
+        assertEquals(3, batches.size());
+    }
+
+    private Map<String, String> upperCase(List<String> keys) {
+        batches.add(keys);
+        return keys.stream().collect(Collectors.toMap(Function.identity(), key -> key.toUpperCase(java.util.Locale.ROOT)));
+    }
+}
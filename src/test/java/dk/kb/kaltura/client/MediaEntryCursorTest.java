@@ -0,0 +1,163 @@
+package dk.kb.kaltura.client;
+
+import com.kaltura.client.types.BaseEntry;
+import com.kaltura.client.types.MediaEntry;
+import com.kaltura.client.types.MediaEntryFilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Streams a catalog held by a local {@link KalturaStubServer} through {@link DsKalturaClient#streamMediaEntries}.
+ */
+public class MediaEntryCursorTest {
+
+    private static final long START = 1600000000L;
+    private static final int PAGE_SIZE = 50;
+
+    private static final Pattern CREATED_AT_FROM = Pattern.compile("\"createdAtGreaterThanOrEqual\":\"?(\\d+)");
+    private static final Pattern ID_NOT_IN = Pattern.compile("\"idNotIn\":\"([^\"]*)\"");
+
+    private KalturaStubServer stub;
+    private final List<long[]> catalog = new ArrayList<>(); // [id, createdAt]
+
+    @BeforeEach
+    public void startStub() throws Exception {
+        stub = new KalturaStubServer();
+        // 7 entries per second, so pages end in the middle of a second, and 120 entries in a single second, more
+        // than a page
+        for (int i = 0; i < 1000; i++) {
+            catalog.add(new long[]{i, START + i / 7});
+        }
+        for (int i = 1000; i < 1120; i++) {
+            catalog.add(new long[]{i, START + 1000});
+        }
+        stub.respond("media/list", this::listPage);
+    }
+
+    @AfterEach
+    public void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    public void allEntriesOnce() throws Exception {
+        try (DsKalturaClient client = createClient();
+             Stream<String> ids = client.streamMediaEntries(new MediaEntryFilter()).map(BaseEntry::getId)) {
+            List<String> received = ids.collect(Collectors.toList());
+
+            assertEquals(catalog.size(), received.size());
+            assertEquals(catalog.size(), new HashSet<>(received).size(), "No entry should be received twice");
+        }
+        assertEquals(catalog.size() / PAGE_SIZE + 1, stub.getCallCount("media/list"));
+    }
+
+    @Test
+    public void startFromFilter() throws Exception {
+        MediaEntryFilter filter = new MediaEntryFilter();
+        filter.setCreatedAtGreaterThanOrEqual(START + 100);
+        try (DsKalturaClient client = createClient();
+             Stream<MediaEntry> entries = client.streamMediaEntries(filter)) {
+            List<MediaEntry> received = entries.collect(Collectors.toList());
+
+            assertEquals(catalog.size() - 700, received.size());
+            assertTrue(received.stream().allMatch(entry -> entry.getCreatedAt() >= START + 100));
+        }
+    }
+
+    @Test
+    public void filterIsRestored() throws Exception {
+        MediaEntryFilter filter = new MediaEntryFilter();
+        filter.setCreatedAtGreaterThanOrEqual(START + 100);
+        try (DsKalturaClient client = createClient();
+             Stream<MediaEntry> entries = client.streamMediaEntries(filter)) {
+            assertEquals(catalog.size() - 700, entries.count());
+        }
+        assertEquals(START + 100, filter.getCreatedAtGreaterThanOrEqual());
+        assertNull(filter.getIdNotIn());
+        assertNull(filter.getOrderBy());
+    }
+
+    @Test
+    public void filterWithIdNotInIsRejected() throws Exception {
+        MediaEntryFilter filter = new MediaEntryFilter();
+        filter.setIdNotIn("0_1");
+        try (DsKalturaClient client = createClient()) {
+            assertThrows(IllegalArgumentException.class, () -> client.streamMediaEntries(filter));
+        }
+    }
+
+    @Test
+    public void tooManyEntriesInOneSecond() {
+        Set<Integer> excludedSizes = new HashSet<>();
+        MediaEntryCursor cursor = new MediaEntryCursor((createdAtFrom, excludedIds) -> {
+            excludedSizes.add(excludedIds.size());
+            List<MediaEntry> page = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                MediaEntry entry = new MediaEntry();
+                entry.setId("0_" + (excludedIds.size() + i));
+                entry.setCreatedAt(START);
+                page.add(entry);
+            }
+            return page;
+        }, null, 10, 30, Runnable::run);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> {
+            while (cursor.hasNext()) {
+                cursor.next();
+            }
+        });
+        assertTrue(e.getMessage().contains("More than 30"), "Unexpected message: " + e.getMessage());
+        assertEquals(Set.of(0, 10, 20, 30), excludedSizes, "The excluded IDs should never exceed the limit");
+    }
+
+    @Test
+    public void failedPage() throws Exception {
+        stub.respond("media/list", body ->
+                "{\"objectType\":\"KalturaAPIException\",\"code\":\"INTERNAL_SERVER_ERROR\",\"message\":\"fail\"}");
+        try (DsKalturaClient client = createClient()) {
+            assertThrows(RuntimeException.class, () -> client.streamMediaEntries(new MediaEntryFilter()).count());
+        }
+    }
+
+    /**
+     * Answers a list request the way Kaltura does for {@code orderBy=+createdAt} and {@code pageIndex=1}.
+     */
+    private String listPage(String body) {
+        Matcher from = CREATED_AT_FROM.matcher(body);
+        long createdAtFrom = from.find() ? Long.parseLong(from.group(1)) : Long.MIN_VALUE;
+        Matcher notIn = ID_NOT_IN.matcher(body);
+        Set<String> excluded = notIn.find() ? new HashSet<>(Arrays.asList(notIn.group(1).split(","))) : Set.of();
+
+        List<String> objects = catalog.stream()
+                .filter(entry -> entry[1] >= createdAtFrom && !excluded.contains("0_" + entry[0]))
+                .limit(PAGE_SIZE)
+                .map(entry -> "{\"objectType\":\"KalturaMediaEntry\",\"id\":\"0_" + entry[0] +
+                        "\",\"createdAt\":" + entry[1] + "}")
+                .collect(Collectors.toList());
+        return "{\"objectType\":\"KalturaMediaListResponse\",\"totalCount\":" + catalog.size() +
+                ",\"objects\":[" + String.join(",", objects) + "]}";
+    }
+
+    private DsKalturaClient createClient() throws Exception {
+        DsKalturaClient client = new DsKalturaClient(stub.getUrl(), "test@kb.dk", KalturaStubServer.PARTNER_ID,
+                "token", "tokenId", null, 86400, 3600, 100000, 1);
+        client.setBatchSize(PAGE_SIZE);
+        return client;
+    }
+}
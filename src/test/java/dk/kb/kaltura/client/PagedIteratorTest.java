@@ -0,0 +1,62 @@
+package dk.kb.kaltura.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PagedIteratorTest {
+
+    @Test
+    public void allPagesUntilTotalCount() {
+        AtomicInteger requests = new AtomicInteger();
+        PagedIterator<Integer> iterator = new PagedIterator<>(pageIndex -> {
+            requests.incrementAndGet();
+            return page(pageIndex, 10, 25);
+        });
+
+        List<Integer> all = new ArrayList<>();
+        iterator.forEachRemaining(all::add);
+
+        assertEquals(IntStream.range(0, 25).boxed().collect(Collectors.toList()), all);
+        assertEquals(3, requests.get(), "The last page should not be followed by an extra request");
+    }
+
+    @Test
+    public void stopsOnEmptyPage() {
+        // The total count is higher than the actual number of results, e.g. if entries were deleted while paging
+        PagedIterator<Integer> iterator = new PagedIterator<>(pageIndex -> page(pageIndex, 10, pageIndex < 3 ? 100 : 0));
+
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        assertEquals(20, count);
+        assertThrows(NoSuchElementException.class, iterator::next);
+    }
+
+    @Test
+    public void noResults() {
+        PagedIterator<Integer> iterator = new PagedIterator<>(pageIndex -> new PagedIterator.Page<>(List.of(), 0));
+        assertFalse(iterator.hasNext());
+    }
+
+    /**
+     * @return page {@code pageIndex} (starting at 1) of {@code total} consecutive integers starting at 0.
+     */
+    private static PagedIterator.Page<Integer> page(int pageIndex, int pageSize, int total) {
+        int start = (pageIndex - 1) * pageSize;
+        List<Integer> items = IntStream.range(start, Math.max(start, Math.min(total, start + pageSize)))
+                .boxed().collect(Collectors.toList());
+        return new PagedIterator.Page<>(items, total);
+    }
+}
@@ -0,0 +1,57 @@
+package dk.kb.kaltura.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ParallelBatchesTest {
+
+    private static final List<Integer> ITEMS = IntStream.range(0, 2003).boxed().collect(Collectors.toList());
+
+    @Test
+    public void resultsInOrder() throws Exception {
+        ExecutorService executor = KalturaExecutors.newBoundedExecutor(4, "test");
+        try {
+            List<Integer> firstItems = ParallelBatches.run(ITEMS, 500, 4, executor, batch -> batch.get(0));
+            assertEquals(List.of(0, 500, 1000, 1500, 2000), firstItems);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void noDeadlockFromExecutorThread() throws Exception {
+        ExecutorService executor = KalturaExecutors.newBoundedExecutor(1, "test");
+        try {
+            Future<List<Integer>> sizes = executor.submit(() ->
+                    ParallelBatches.run(ITEMS, 500, 4, executor, List::size));
+            assertEquals(List.of(500, 500, 500, 500, 3), sizes.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void failurePropagated() {
+        ExecutorService executor = KalturaExecutors.newBoundedExecutor(4, "test");
+        try {
+            assertThrows(IOException.class, () -> ParallelBatches.run(ITEMS, 100, 4, executor, batch -> {
+                if (batch.get(0) == 700) {
+                    throw new IOException("Failed batch");
+                }
+                return batch.size();
+            }));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package dk.kb.kaltura.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RateLimiterTest {
+
+    private final AtomicLong nanos = new AtomicLong(0);
+
+    @Test
+    public void burstThenRate() {
+        RateLimiter limiter = new RateLimiter(10, 5, nanos::get);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.tryAcquire(1));
+        }
+        assertFalse(limiter.tryAcquire(1), "The burst should be used up");
+
+        nanos.set(TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(limiter.tryAcquire(1), "One permit is refilled every 100 ms");
+        assertFalse(limiter.tryAcquire(1));
+
+        nanos.set(TimeUnit.SECONDS.toNanos(10));
+        assertEquals(5, limiter.getAvailable(), "The refill should stop at the burst");
+    }
+
+    @Test
+    public void reserveWaitsForDeficit() {
+        RateLimiter limiter = new RateLimiter(1000, 100, nanos::get);
+        assertEquals(0, limiter.reserve(100));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), limiter.reserve(50));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), limiter.reserve(50),
+                "Later callers should wait behind earlier ones");
+        assertFalse(limiter.tryAcquire(1));
+    }
+
+    @Test
+    public void largerThanBurstIsAllowedWhenBlocking() {
+        RateLimiter limiter = new RateLimiter(1000, 100, nanos::get);
+        assertFalse(limiter.tryAcquire(500));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(400), limiter.reserve(500));
+    }
+}
@@ -0,0 +1,42 @@
+package dk.kb.kaltura.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RequestMetricsTest {
+
+    @Test
+    public void bucketsAreContiguous() {
+        for (long micros = 0; micros < 100_000; micros++) {
+            int bucket = RequestMetrics.bucket(micros);
+            assertTrue(RequestMetrics.bucketStart(bucket) <= micros, "Bucket start above " + micros);
+            assertTrue(RequestMetrics.bucketStart(bucket + 1) > micros, "Next bucket start at or below " + micros);
+        }
+    }
+
+    @Test
+    public void countsAndPercentiles() {
+        RequestMetrics metrics = new RequestMetrics("test", false);
+        for (int millis = 1; millis <= 100; millis++) {
+            metrics.record("media.list", TimeUnit.MILLISECONDS.toNanos(millis), millis % 10 != 0);
+        }
+        metrics.addBytes("uploadToken.upload", 1000);
+
+        RequestMetrics.RequestStats stats = metrics.get("media.list");
+        assertEquals(100, stats.getCalls());
+        assertEquals(10, stats.getErrors());
+        assertEquals(50.5, stats.getMeanMillis(), 0.01);
+        assertEquals(100.0, stats.getMaxMillis(), 0.01);
+        assertEquals(50, stats.getP50Millis(), 50 * 0.25);
+        assertEquals(95, stats.getP95Millis(), 95 * 0.25);
+        assertEquals(99, stats.getP99Millis(), 99 * 0.25);
+        assertEquals(1000, metrics.get("uploadToken.upload").getBytesSent());
+        assertNull(metrics.get("media.add"));
+        assertTrue(metrics.getSummary().startsWith("media.list calls=100 errors=10"), metrics.getSummary());
+    }
+}
@@ -0,0 +1,83 @@
+package dk.kb.kaltura.client;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that ID lookups ask for only the needed fields, run against a local {@link KalturaStubServer}.
+ */
+public class ResponseProfilesTest {
+
+    private static final String SEARCH_RESPONSE =
+            "{\"objectType\":\"KalturaESearchEntryResponse\",\"totalCount\":1,\"objects\":[" +
+            "{\"objectType\":\"KalturaESearchEntryResult\",\"object\":" +
+            "{\"objectType\":\"KalturaMediaEntry\",\"id\":\"0_entry\",\"referenceId\":\"ref\"}}]}";
+
+    private KalturaStubServer stub;
+    private final List<String> searchBodies = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    public void startStub() throws Exception {
+        stub = new KalturaStubServer();
+        stub.respond("elasticsearch_esearch/searchEntry", body -> {
+            searchBodies.add(body);
+            return SEARCH_RESPONSE;
+        });
+    }
+
+    @AfterEach
+    public void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    public void lookupsRequestOnlyIdFields() throws Exception {
+        try (DsKalturaClient client = createClient()) {
+            client.setLookupResponseProfiles(true);
+            assertEquals(Map.of("ref", "0_entry"), client.getKalturaIds(List.of("ref")));
+        }
+        assertEquals(1, searchBodies.size());
+        assertTrue(searchBodies.get(0).contains("\"fields\":\"id,referenceId\""),
+                "The search should carry the ID lookup profile: " + searchBodies.get(0));
+    }
+
+    @Test
+    public void profilesAreDisabledByDefault() throws Exception {
+        try (DsKalturaClient client = createClient()) {
+            assertEquals("0_entry", client.getKalturaInternalId("ref"));
+        }
+        assertFalse(searchBodies.get(0).contains("responseProfile"));
+    }
+
+    @Test
+    public void transportCountsResponseBytes() throws Exception {
+        KalturaTransport transport = new KalturaTransport();
+        try (DsKalturaClient client = createClient()) {
+            client.setTransport(transport);
+            assertEquals("0_entry", client.getKalturaInternalId("ref"));
+        }
+        assertEquals(1, transport.getResponseCount("elasticsearch_esearch/searchEntry"));
+        assertEquals(SEARCH_RESPONSE.length(), transport.getResponseBytes("elasticsearch_esearch/searchEntry"));
+    }
+
+    @Test
+    public void serviceActionFromPath() {
+        assertEquals("elasticsearch_esearch/searchentry",
+                KalturaTransport.getServiceAction("/api_v3/service/elasticsearch_esearch/action/searchEntry"));
+        assertEquals("multirequest", KalturaTransport.getServiceAction("/api_v3/service/multirequest"));
+    }
+
+    private DsKalturaClient createClient() throws Exception {
+        return new DsKalturaClient(stub.getUrl(), "test@kb.dk", KalturaStubServer.PARTNER_ID, "token", "tokenId",
+                null, 86400, 3600, 100000, 1);
+    }
+}
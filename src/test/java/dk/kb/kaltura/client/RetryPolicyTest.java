@@ -0,0 +1,38 @@
+package dk.kb.kaltura.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void backoffDoublesUpToMaximum() {
+        RetryPolicy policy = new RetryPolicy(10, Duration.ofMillis(100), Duration.ofMillis(1000));
+        assertEquals(100, policy.getBackoffMillis(1, 0));
+        assertEquals(200, policy.getBackoffMillis(2, 0));
+        assertEquals(400, policy.getBackoffMillis(3, 0));
+        assertEquals(1000, policy.getBackoffMillis(5, 0));
+        assertEquals(1000, policy.getBackoffMillis(100, 0));
+    }
+
+    @Test
+    public void jitterSubtractsUpToHalf() {
+        RetryPolicy policy = new RetryPolicy(10, Duration.ofMillis(100), Duration.ofMillis(1000));
+        assertEquals(150, policy.getBackoffMillis(2, 0.5));
+        assertEquals(51, policy.getBackoffMillis(1, 0.99));
+    }
+
+    @Test
+    public void onlyReadsAreRetried() {
+        assertTrue(RetryPolicy.isReadAction("list"));
+        assertTrue(RetryPolicy.isReadAction("searchEntry"));
+        assertFalse(RetryPolicy.isReadAction("add"));
+        assertFalse(RetryPolicy.isReadAction("upload"));
+        assertFalse(RetryPolicy.isReadAction(null), "Multirequests may contain writes");
+    }
+}
@@ -0,0 +1,113 @@
+package dk.kb.kaltura.client;
+
+import com.kaltura.client.enums.MediaType;
+import dk.kb.kaltura.enums.FileExtension;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Uploads against a local {@link KalturaStubServer}, verifying that files are streamed instead of held in memory.
+ */
+public class StreamingUploadTest {
+
+    private static final long GB = 1024L * 1024 * 1024;
+
+    private KalturaStubServer stub;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    public void startStub() throws Exception {
+        stub = new KalturaStubServer();
+    }
+
+    @AfterEach
+    public void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    public void wholeFileIsSent() throws Exception {
+        Path file = createSparseFile(10 * 1024 * 1024 + 17);
+        try (DsKalturaClient client = createClient()) {
+            assertEquals("0_entry", upload(client, file));
+        }
+        assertTrue(stub.getBytesReceived() >= Files.size(file), "The whole file should be sent");
+    }
+
+    /**
+     * Uploads a file larger than the max heap and checks that the old generation does not grow with the file.
+     * <p>
+     * Excluded from the default test run. The {@code slow-tests} execution in {@code pom.xml} runs it in its own JVM
+     * with {@code -Xmx256m}, so that holding the file in memory would fail with an {@link OutOfMemoryError}.
+     */
+    @Test
+    @Tag("slow")
+    public void fileLargerThanHeap() throws Exception {
+        long size = 2 * GB;
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        assertTrue(maxHeap < size / 2, "The max heap is " + maxHeap / (1024 * 1024) + " MB. Run the test with " +
+                "-Xmx256m, as the slow-tests execution in pom.xml does, to upload a file larger than the heap");
+        Path file = createSparseFile(size);
+
+        List<MemoryPoolMXBean> oldPools = getOldGenerationPools();
+        assertFalse(oldPools.isEmpty(), "No old generation memory pool found");
+        oldPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        try (DsKalturaClient client = createClient()) {
+            assertEquals("0_entry", upload(client, file));
+        }
+        long peakOld = oldPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+
+        assertTrue(stub.getBytesReceived() >= size, "The whole file should be sent");
+        assertTrue(peakOld < size / 16, "The old generation peaked at " + peakOld / (1024 * 1024) +
+                " MB while uploading a file of " + size / (1024 * 1024) + " MB");
+    }
+
+    /**
+     * @return the heap memory pools holding long lived objects, e.g. "G1 Old Gen" or "Tenured Gen".
+     */
+    private static List<MemoryPoolMXBean> getOldGenerationPools() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .filter(pool -> pool.getName().contains("Old") || pool.getName().contains("Tenured"))
+                .collect(Collectors.toList());
+    }
+
+    private String upload(DsKalturaClient client, Path file) throws Exception {
+        return client.uploadMedia(file.toString(), "ref", MediaType.VIDEO, "title", "description", "DS-KALTURA",
+                FileExtension.MP4, null);
+    }
+
+    /**
+     * Creates a file without writing its content, so it takes no space on most file systems.
+     */
+    private Path createSparseFile(long size) throws Exception {
+        Path file = tempDir.resolve("stream.mp4");
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(size);
+        }
+        return file;
+    }
+
+    private DsKalturaClient createClient() throws Exception {
+        return new DsKalturaClient(stub.getUrl(), "test@kb.dk", KalturaStubServer.PARTNER_ID, "token", "tokenId",
+                null, 86400, 3600, 100000, 1);
+    }
+}
@@ -0,0 +1,102 @@
+package dk.kb.kaltura.client;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UploadJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void stepsSurviveReopen() throws Exception {
+        Path file = tempDir.resolve("journal.tsv");
+        try (UploadJournal journal = new UploadJournal(file)) {
+            journal.entryCreated("done", "0_t1", "0_e1", true);
+            journal.bytesAcknowledged("done", "0_t1", 100);
+            journal.uploaded("done", "0_t1", "0_e1");
+
+            journal.entryCreated("partial", "0_t2", "0_e2", true);
+            journal.bytesAcknowledged("partial", "0_t2", 50);
+
+            journal.entryCreated("detached", "0_t3", "0_e3", false);
+            journal.tokenCreated("token\tonly", "0_t4");
+        }
+
+        try (UploadJournal journal = new UploadJournal(file)) {
+            assertEquals(4, journal.size());
+            assertTrue(journal.get("done").isUploaded());
+            assertEquals("0_e1", journal.get("done").getEntryId());
+
+            UploadJournal.State partial = journal.get("partial");
+            assertFalse(partial.isUploaded());
+            assertEquals("0_t2", partial.getUploadTokenId());
+            assertEquals(50, partial.getBytesAcknowledged());
+
+            assertFalse(journal.get("detached").isAttached());
+            assertEquals("0_e3", journal.get("detached").getEntryId());
+            assertEquals("0_t4", journal.get("token\tonly").getUploadTokenId());
+            assertNull(journal.get("token\tonly").getEntryId());
+            assertNull(journal.get("unknown"));
+        }
+    }
+
+    @Test
+    public void newTokenStartsOver() throws Exception {
+        try (UploadJournal journal = new UploadJournal(tempDir.resolve("journal.tsv"))) {
+            journal.entryCreated("ref", "0_t1", "0_e1", true);
+            journal.bytesAcknowledged("ref", "0_t1", 100);
+            journal.tokenCreated("ref", "0_t2");
+
+            UploadJournal.State state = journal.get("ref");
+            assertEquals("0_t2", state.getUploadTokenId());
+            assertNull(state.getEntryId());
+            assertEquals(0, state.getBytesAcknowledged());
+        }
+    }
+
+    @Test
+    public void intentWithoutResponseSurvivesReopen() throws Exception {
+        Path file = tempDir.resolve("journal.tsv");
+        try (UploadJournal journal = new UploadJournal(file)) {
+            journal.uploadStarting("sent");
+            journal.uploadStarting("answered");
+            journal.entryCreated("answered", "0_t1", "0_e1", true);
+        }
+
+        try (UploadJournal journal = new UploadJournal(file)) {
+            assertTrue(journal.get("sent").hasOnlyIntent(), "Kaltura should be checked for the referenceId");
+            assertNull(journal.get("sent").getUploadTokenId());
+            assertFalse(journal.get("answered").hasOnlyIntent());
+            assertEquals("0_t1", journal.get("answered").getUploadTokenId());
+        }
+    }
+
+    @Test
+    public void incompleteLastLineIsIgnored() throws Exception {
+        Path file = tempDir.resolve("journal.tsv");
+        try (UploadJournal journal = new UploadJournal(file)) {
+            journal.entryCreated("ref1", "0_t1", "0_e1", true);
+        }
+        Files.write(file, "1700000000000\tUPLOADED\tref1\t0_".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        try (UploadJournal journal = new UploadJournal(file)) {
+            assertFalse(journal.get("ref1").isUploaded(), "The torn line should be ignored");
+            journal.uploaded("ref2", "0_t2", "0_e2");
+        }
+        try (UploadJournal journal = new UploadJournal(file)) {
+            assertTrue(journal.get("ref2").isUploaded(), "Steps after a torn line should be readable");
+        }
+    }
+}
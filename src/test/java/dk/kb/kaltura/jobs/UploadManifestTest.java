@@ -0,0 +1,64 @@
+package dk.kb.kaltura.jobs;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class UploadManifestTest {
+
+    @Test
+    public void csv() throws Exception {
+        UploadManifest manifest = open(UploadManifest.Format.CSV,
+                "filePath,referenceId,title,description\n" +
+                "/data/a.mp4,ref1,Title 1,\"Comma, \"\"quote\"\" and\nline break\"\n" +
+                "\n" +
+                "/data/b.mp3,ref2,Title 2\n");
+
+        UploadManifest.Row row = manifest.next();
+        assertEquals(2, row.getLineNumber());
+        assertEquals("ref1", row.get("referenceId"));
+        assertEquals("Comma, \"quote\" and\nline break", row.get("description"));
+
+        row = manifest.next();
+        assertEquals(5, row.getLineNumber());
+        assertEquals("/data/b.mp3", row.get("filePath"));
+        assertNull(row.get("description"), "Missing trailing values should be null");
+        assertNull(manifest.next());
+    }
+
+    @Test
+    public void jsonl() throws Exception {
+        UploadManifest manifest = open(UploadManifest.Format.JSONL,
+                "{\"filePath\": \"/data/a.mp4\", \"referenceId\": \"ref\\\"1\", \"conversionProfileId\": 42}\n" +
+                "{\"filePath\":\"/data/b.mp3\",\"tag\":null}\n");
+
+        UploadManifest.Row row = manifest.next();
+        assertEquals("ref\"1", row.get("referenceId"));
+        assertEquals("42", row.get("conversionProfileId"));
+
+        UploadManifest.Row second = manifest.next();
+        assertEquals(2, second.getLineNumber());
+        assertNull(second.get("tag"));
+        assertThrows(IllegalArgumentException.class, () -> second.getRequired("referenceId"));
+        assertNull(manifest.next());
+    }
+
+    @Test
+    public void malformedRowIsSkipped() throws Exception {
+        UploadManifest manifest = open(UploadManifest.Format.JSONL,
+                "{\"referenceId\": \"ref1\"\n" +
+                "{\"referenceId\": \"ref2\"}\n");
+
+        assertThrows(IllegalArgumentException.class, manifest::next);
+        assertEquals("ref2", manifest.next().get("referenceId"));
+    }
+
+    private UploadManifest open(UploadManifest.Format format, String content) {
+        return new UploadManifest(new BufferedReader(new StringReader(content)), format);
+    }
+}